@@ -0,0 +1,143 @@
+package com.example.shaketosave;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+
+public class AdaptiveSampler implements SensorEventListener {
+
+    private static final int IDLE_PERIOD_US = 100_000;
+    // FallDetector needs MIN_FREE_FALL_NANOS (150 ms) below 0.5 g. At 10 Hz that is one or two
+    // samples and the measured duration is off by up to 100 ms, and the boost lands after the fall
+    // is over. At 25 Hz the error is 40 ms, so free falls from about 190 ms up are seen in idle.
+    private static final int FALL_IDLE_PERIOD_US = 40_000;
+    private static final int BOOST_PERIOD_US = SensorManager.SENSOR_DELAY_GAME;
+    private static final float PRE_THRESHOLD_GRAVITY = 1.8F;
+    private static final float FREE_FALL_PRE_THRESHOLD_GRAVITY = 0.6F;
+    private static final long CONFIRMATION_WINDOW_MS = 4000;
+
+    private final SensorManager sensorManager;
+    private final Sensor accelerometer;
+    private final ShakeDetector shakeDetector;
+    private FallDetector fallDetector;
+    private GestureMatcher gestureMatcher;
+    private SensorTiming timing;
+    private Clock clock = AndroidClock.INSTANCE;
+
+    private boolean running;
+    private boolean boosted;
+    private long boostUntilNanos;
+    private int periodUs;
+
+    private final Runnable applyBoost = () -> register(BOOST_PERIOD_US);
+    private final Runnable applyIdle = () -> register(idlePeriodUs());
+
+    public AdaptiveSampler(SensorManager sensorManager, Sensor accelerometer, ShakeDetector shakeDetector) {
+        this.sensorManager = sensorManager;
+        this.accelerometer = accelerometer;
+        this.shakeDetector = shakeDetector;
+    }
+
+    public void setFallDetector(FallDetector fallDetector) {
+        this.fallDetector = fallDetector;
+    }
+
+    public void setGestureMatcher(GestureMatcher gestureMatcher) {
+        this.gestureMatcher = gestureMatcher;
+    }
+
+    public void setTiming(SensorTiming timing) {
+        this.timing = timing;
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public void requestBoost(long durationMs) {
+        if (!running) return;
+        boostUntilNanos = clock.elapsedRealtimeNanos() + durationMs * 1_000_000L;
+        if (!boosted) {
+            boosted = true;
+            clock.removeCallbacks(applyIdle);
+            clock.postAtTime(applyBoost, clock.uptimeMillis());
+        }
+    }
+
+    public void start() {
+        if (running || accelerometer == null) return;
+        running = true;
+        boosted = false;
+        register(idlePeriodUs());
+    }
+
+    public void stop() {
+        if (!running) return;
+        running = false;
+        clock.removeCallbacks(applyBoost);
+        clock.removeCallbacks(applyIdle);
+        sensorManager.unregisterListener(this);
+        periodUs = 0;
+    }
+
+    public boolean isBoosted() {
+        return boosted;
+    }
+
+    // The period the accelerometer is registered at (0 when stopped); a boost or its end takes
+    // effect one main-looper turn after the sample that caused it.
+    int getPeriodUs() {
+        return periodUs;
+    }
+
+    private int idlePeriodUs() {
+        return fallDetector != null ? FALL_IDLE_PERIOD_US : IDLE_PERIOD_US;
+    }
+
+    private void register(int periodUs) {
+        if (!running) return;
+        if (timing != null) timing.setMode(periodUs == BOOST_PERIOD_US ? SensorTiming.MODE_BOOST : SensorTiming.MODE_IDLE);
+        sensorManager.unregisterListener(this);
+        sensorManager.registerListener(this, accelerometer, periodUs);
+        this.periodUs = periodUs;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        shakeDetector.onSensorChanged(event);
+        onDetectorSample(event.timestamp);
+    }
+
+    void onSample(long timestampNanos, float x, float y, float z) {
+        shakeDetector.onSample(timestampNanos, x, y, z);
+        onDetectorSample(timestampNanos);
+    }
+
+    private void onDetectorSample(long timestampNanos) {
+        float gForce = shakeDetector.getLastGForce();
+        if (fallDetector != null) fallDetector.onSample(timestampNanos, gForce);
+        if (gestureMatcher != null) gestureMatcher.onSample(timestampNanos, gForce);
+        if (!running) return;
+
+        boolean interesting = gForce > PRE_THRESHOLD_GRAVITY
+                || (fallDetector != null && (gForce < FREE_FALL_PRE_THRESHOLD_GRAVITY || fallDetector.isTracking()));
+        if (interesting) {
+            boostUntilNanos = timestampNanos + CONFIRMATION_WINDOW_MS * 1_000_000L;
+            if (!boosted) {
+                boosted = true;
+                clock.removeCallbacks(applyIdle);
+                clock.postAtTime(applyBoost, clock.uptimeMillis());
+            }
+        } else if (boosted && timestampNanos > boostUntilNanos) {
+            boosted = false;
+            clock.removeCallbacks(applyBoost);
+            clock.postAtTime(applyIdle, clock.uptimeMillis());
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        shakeDetector.onAccuracyChanged(sensor, accuracy);
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.shaketosave;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+public class AndroidClock implements Clock {
+
+    public static final AndroidClock INSTANCE = new AndroidClock();
+
+    // Created on first post so merely constructing a detector never touches the main looper.
+    private Handler handler;
+
+    @Override
+    public long elapsedRealtimeNanos() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    @Override
+    public long uptimeMillis() {
+        return SystemClock.uptimeMillis();
+    }
+
+    @Override
+    public void postAtTime(Runnable task, long uptimeMillis) {
+        if (handler == null) handler = new Handler(Looper.getMainLooper());
+        handler.postAtTime(task, uptimeMillis);
+    }
+
+    @Override
+    public void removeCallbacks(Runnable task) {
+        if (handler != null) handler.removeCallbacks(task);
+    }
+
+    // Tests only: Robolectric gives each test a fresh main looper; the next post binds to it.
+    void resetForTest() {
+        handler = null;
+    }
+}
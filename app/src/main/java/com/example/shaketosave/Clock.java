@@ -0,0 +1,14 @@
+package com.example.shaketosave;
+
+// Time source plus main-thread scheduling. Detection, countdown and dispatch take one of these
+// instead of calling SystemClock/Handler directly, so a test can drive them on a virtual clock.
+public interface Clock {
+
+    long elapsedRealtimeNanos();
+
+    long uptimeMillis();
+
+    void postAtTime(Runnable task, long uptimeMillis);
+
+    void removeCallbacks(Runnable task);
+}
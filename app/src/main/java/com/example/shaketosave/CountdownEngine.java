@@ -0,0 +1,67 @@
+package com.example.shaketosave;
+
+// Fixed-rate countdown on the uptime clock (the Handler's monotonic time base). Tick n is posted
+// for start + n seconds, so a late tick does not push the remaining ones back the way chained
+// CountDownTimer delays do, and nothing is allocated per tick.
+public class CountdownEngine {
+
+    private static final long TICK_MS = 1000;
+
+    public interface Listener {
+        void onTick(int secondsLeft);
+        void onFinish();
+    }
+
+    private final Clock clock;
+    private final Listener listener;
+    private final Runnable tick = this::onTickDue;
+    private long startUptimeMs;
+    private int totalSeconds;
+    private int nextTick;
+    private int tickCount;
+    private boolean running;
+
+    public CountdownEngine(Clock clock, Listener listener) {
+        this.clock = clock;
+        this.listener = listener;
+    }
+
+    public void start(int seconds) {
+        cancel();
+        totalSeconds = seconds;
+        nextTick = 0;
+        tickCount = 0;
+        running = true;
+        startUptimeMs = clock.uptimeMillis();
+        onTickDue();
+    }
+
+    private void onTickDue() {
+        if (!running) return;
+        // After a long main-thread stall, skip the ticks already missed instead of replaying them.
+        int due = (int) ((clock.uptimeMillis() - startUptimeMs) / TICK_MS);
+        if (due > nextTick) nextTick = due;
+        if (nextTick >= totalSeconds) {
+            running = false;
+            listener.onFinish();
+            return;
+        }
+        tickCount++;
+        listener.onTick(totalSeconds - nextTick);
+        nextTick++;
+        clock.postAtTime(tick, startUptimeMs + nextTick * TICK_MS);
+    }
+
+    public void cancel() {
+        running = false;
+        clock.removeCallbacks(tick);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getTickCount() {
+        return tickCount;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.shaketosave;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Optional offline data (the place index, updates to the bundled motion model) is served next to
+// the upload endpoint: GET <endpoint directory>/<file name>. Requests are conditional on the local
+// copy's timestamp, so the daily check is a bodyless 304 when nothing changed. A download lands in a temp file that
+// has to open as the real format before it is renamed over the current copy; a truncated or wrong
+// body never replaces a working file.
+public class DataFiles {
+
+    public static final int FETCH_FAILED = 0;
+    public static final int FETCH_UNCHANGED = 1;
+    public static final int FETCH_UPDATED = 2;
+
+    public interface Validator {
+        void check(File file) throws IOException;
+    }
+
+    private static final String PREFS_NAME = "SafeShakeData";
+    private static final String KEY_NEXT_CHECK = "next_check";
+    private static final long CHECK_INTERVAL_MS = 24 * 60 * 60 * 1000L;
+    private static final long RETRY_INTERVAL_MS = 60 * 60 * 1000L;
+    private static final int CONNECT_TIMEOUT_MS = 15_000;
+    private static final int READ_TIMEOUT_MS = 30_000;
+    private static final long MAX_FILE_BYTES = 64L * 1024 * 1024;
+
+    // Runs on the upload job's thread, at most once a day; a failed check is retried on the first
+    // upload job an hour or more later.
+    public static void refresh(Context context, String endpoint, AtomicBoolean stopped) {
+        if (endpoint.isEmpty() || !isCheckDue(context)) return;
+        int places = fetch(endpoint, new File(context.getFilesDir(), PlaceIndex.FILE_NAME),
+                file -> PlaceIndex.open(file), stopped);
+        int model = fetch(endpoint, new File(context.getFilesDir(), MotionClassifier.FILE_NAME),
+                file -> MotionClassifier.load(file), stopped);
+        boolean failed = places == FETCH_FAILED || model == FETCH_FAILED;
+        prefs(context).edit()
+                .putLong(KEY_NEXT_CHECK, System.currentTimeMillis() + (failed ? RETRY_INTERVAL_MS : CHECK_INTERVAL_MS))
+                .apply();
+    }
+
+    // Whether the next upload job would fetch. The outcome of the last check (updated, 304, nothing
+    // published, failed) is remembered, so a missing file alone is no reason to schedule a job.
+    public static boolean isCheckDue(Context context) {
+        return System.currentTimeMillis() >= prefs(context).getLong(KEY_NEXT_CHECK, 0);
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    static String urlFor(String endpoint, String name) throws IOException {
+        return new URL(new URL(endpoint), name).toString();
+    }
+
+    static int fetch(String endpoint, File target, Validator validator, AtomicBoolean stopped) {
+        File temp = new File(target.getParentFile(), target.getName() + ".download");
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(urlFor(endpoint, target.getName())).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            if (target.exists()) connection.setIfModifiedSince(target.lastModified());
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) return FETCH_UNCHANGED;
+            // No file published for this deployment is not an error worth retrying today.
+            if (code == HttpURLConnection.HTTP_NOT_FOUND) return FETCH_UNCHANGED;
+            if (code != HttpURLConnection.HTTP_OK) return FETCH_FAILED;
+            if (connection.getContentLengthLong() > MAX_FILE_BYTES) return FETCH_FAILED;
+
+            long total = 0;
+            try (InputStream in = connection.getInputStream();
+                 OutputStream out = new FileOutputStream(temp)) {
+                byte[] buffer = new byte[16 * 1024];
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    if (stopped.get()) return FETCH_FAILED;
+                    total += n;
+                    if (total > MAX_FILE_BYTES) return FETCH_FAILED;
+                    out.write(buffer, 0, n);
+                }
+            }
+            validator.check(temp);
+            long modified = connection.getLastModified();
+            if (modified > 0) temp.setLastModified(modified);
+            if (!temp.renameTo(target)) return FETCH_FAILED;
+            return FETCH_UPDATED;
+        } catch (IOException e) {
+            return FETCH_FAILED;
+        } finally {
+            if (connection != null) connection.disconnect();
+            temp.delete();
+        }
+    }
+}
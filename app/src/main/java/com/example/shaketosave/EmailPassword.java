@@ -0,0 +1,62 @@
+package com.example.shaketosave;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+// The SMTP password for the evidence email. It lives in its own file under getNoBackupFilesDir(),
+// which neither cloud backup nor device transfer copies, instead of in SafeShakePrefs next to the
+// settings. Only the UI writes it; the detector process reads the file when it sends, so the password
+// never travels in an intent and a SharedPreferences cache in the other process cannot go stale.
+public class EmailPassword {
+
+    private static final String FILE_NAME = "email_password";
+    private static final String LEGACY_PREFS_NAME = "SafeShakePrefs";
+    private static final String LEGACY_KEY = "email_password";
+
+    public static String load(Context context) {
+        File file = file(context);
+        if (!file.exists()) return "";
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    // An empty password removes the file.
+    public static void save(Context context, String password) {
+        File file = file(context);
+        if (password == null || password.isEmpty()) {
+            file.delete();
+            return;
+        }
+        File tmp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(password.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) tmp.delete();
+    }
+
+    // Earlier versions kept the password in SafeShakePrefs, which is backed up.
+    public static void migrate(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE);
+        if (!prefs.contains(LEGACY_KEY)) return;
+        String legacy = prefs.getString(LEGACY_KEY, "");
+        if (!legacy.isEmpty() && load(context).isEmpty()) save(context, legacy);
+        prefs.edit().remove(LEGACY_KEY).commit();
+    }
+
+    private static File file(Context context) {
+        return new File(context.getNoBackupFilesDir(), FILE_NAME);
+    }
+}
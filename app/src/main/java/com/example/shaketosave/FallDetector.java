@@ -0,0 +1,89 @@
+package com.example.shaketosave;
+
+// Free fall -> impact spike -> post-impact stillness. Fed the magnitude already computed by the
+// shake detector, so it adds no sensor registration and no allocation per sample.
+public class FallDetector {
+
+    private static final float FREE_FALL_GRAVITY = 0.5F;
+    private static final long MIN_FREE_FALL_NANOS = 150_000_000L;
+    private static final float IMPACT_GRAVITY = 2.5F;
+    private static final long IMPACT_WINDOW_NANOS = 1_000_000_000L;
+    private static final long SETTLE_NANOS = 500_000_000L;
+    private static final long STILLNESS_NANOS = 2_000_000_000L;
+    private static final float STILLNESS_TOLERANCE_GRAVITY = 0.3F;
+
+    static final int STATE_IDLE = 0;
+    static final int STATE_FREE_FALL = 1;
+    static final int STATE_AWAIT_IMPACT = 2;
+    static final int STATE_SETTLING = 3;
+    static final int STATE_STILLNESS = 4;
+
+    public interface OnFallListener {
+        void onFall(long impactTimestampNanos);
+    }
+
+    private OnFallListener listener;
+    private int state = STATE_IDLE;
+    private long freeFallStartNanos;
+    private long freeFallEndNanos;
+    private long impactNanos;
+
+    public void setOnFallListener(OnFallListener listener) {
+        this.listener = listener;
+    }
+
+    public void onSample(long timestampNanos, float gForce) {
+        switch (state) {
+            case STATE_IDLE:
+                if (gForce < FREE_FALL_GRAVITY) {
+                    freeFallStartNanos = timestampNanos;
+                    state = STATE_FREE_FALL;
+                }
+                break;
+            case STATE_FREE_FALL:
+                if (gForce >= FREE_FALL_GRAVITY) {
+                    freeFallEndNanos = timestampNanos;
+                    if (freeFallEndNanos - freeFallStartNanos < MIN_FREE_FALL_NANOS) {
+                        state = STATE_IDLE;
+                    } else if (gForce > IMPACT_GRAVITY) {
+                        enterSettling(timestampNanos);
+                    } else {
+                        state = STATE_AWAIT_IMPACT;
+                    }
+                }
+                break;
+            case STATE_AWAIT_IMPACT:
+                if (gForce > IMPACT_GRAVITY) {
+                    enterSettling(timestampNanos);
+                } else if (timestampNanos - freeFallEndNanos > IMPACT_WINDOW_NANOS) {
+                    state = STATE_IDLE;
+                }
+                break;
+            case STATE_SETTLING:
+                if (timestampNanos - impactNanos >= SETTLE_NANOS) state = STATE_STILLNESS;
+                break;
+            case STATE_STILLNESS:
+                if (Math.abs(gForce - 1F) > STILLNESS_TOLERANCE_GRAVITY) {
+                    // Picked up or still moving: a dropped phone, not a fallen person.
+                    state = STATE_IDLE;
+                } else if (timestampNanos - impactNanos >= SETTLE_NANOS + STILLNESS_NANOS) {
+                    state = STATE_IDLE;
+                    if (listener != null) listener.onFall(impactNanos);
+                }
+                break;
+        }
+    }
+
+    private void enterSettling(long timestampNanos) {
+        impactNanos = timestampNanos;
+        state = STATE_SETTLING;
+    }
+
+    public boolean isTracking() {
+        return state != STATE_IDLE;
+    }
+
+    public void reset() {
+        state = STATE_IDLE;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.shaketosave;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Decides when a post-SOS location update is worth an SMS: the interval shrinks with speed and
+// distance moved, a stationary sender only gets an occasional heartbeat, and every recipient
+// is rate limited independently. A session only ends on its timeout or when the user stops
+// sharing; alerts raised or cancelled while it runs leave it alone.
+public class FollowUpPolicy {
+
+    public static final long SESSION_DURATION_MS = 30 * 60 * 1000L;
+
+    private static final float STATIONARY_SPEED_MPS = 0.5F;
+    private static final float WALKING_SPEED_MPS = 3.0F;
+    private static final long STATIONARY_INTERVAL_MS = 5 * 60 * 1000L;
+    private static final long WALKING_INTERVAL_MS = 2 * 60 * 1000L;
+    private static final long VEHICLE_INTERVAL_MS = 60 * 1000L;
+    private static final long HEARTBEAT_INTERVAL_MS = 10 * 60 * 1000L;
+    private static final double MIN_MOVE_METERS = 25;
+    private static final double FAR_MOVE_METERS = 200;
+    private static final long MIN_RECIPIENT_GAP_MS = 30 * 1000L;
+    private static final int MAX_MESSAGES_PER_RECIPIENT = 40;
+
+    private static class RecipientState {
+        long lastSentMs;
+        double lastLat;
+        double lastLng;
+        int sent;
+    }
+
+    private final Map<String, RecipientState> recipients = new HashMap<>();
+    private long sessionStartMs;
+    // Read from the status thread.
+    private volatile long sessionEndMs;
+
+    public void start(long nowMs, double lat, double lng, Iterable<String> alreadyNotified) {
+        recipients.clear();
+        sessionStartMs = nowMs;
+        sessionEndMs = nowMs + SESSION_DURATION_MS;
+        for (String recipient : alreadyNotified) onSent(recipient, nowMs, lat, lng);
+    }
+
+    // The user stopped sharing: ends whichever session is running.
+    public void stop() {
+        sessionEndMs = 0;
+        recipients.clear();
+    }
+
+    public boolean isActive(long nowMs) {
+        return nowMs < sessionEndMs;
+    }
+
+    public long getSessionStartMs() {
+        return sessionStartMs;
+    }
+
+    public boolean shouldSend(String recipient, long nowMs, double lat, double lng, float speedMps, boolean hasSpeed) {
+        if (!isActive(nowMs)) return false;
+        RecipientState state = recipients.get(recipient);
+        if (state == null) return true;
+        if (state.sent >= MAX_MESSAGES_PER_RECIPIENT) return false;
+
+        long elapsed = nowMs - state.lastSentMs;
+        if (elapsed < MIN_RECIPIENT_GAP_MS) return false;
+
+        double moved = distanceMeters(state.lastLat, state.lastLng, lat, lng);
+        if (moved < MIN_MOVE_METERS) {
+            // Delta suppression: nothing new to tell beyond an occasional "still here".
+            return elapsed >= HEARTBEAT_INTERVAL_MS;
+        }
+        if (moved >= FAR_MOVE_METERS) return true;
+
+        float speed = hasSpeed ? speedMps : (float) (moved / (elapsed / 1000.0));
+        long interval;
+        if (speed < STATIONARY_SPEED_MPS) {
+            interval = STATIONARY_INTERVAL_MS;
+        } else if (speed < WALKING_SPEED_MPS) {
+            interval = WALKING_INTERVAL_MS;
+        } else {
+            interval = VEHICLE_INTERVAL_MS;
+        }
+        return elapsed >= interval;
+    }
+
+    public void onSent(String recipient, long nowMs, double lat, double lng) {
+        RecipientState state = recipients.get(recipient);
+        if (state == null) {
+            state = new RecipientState();
+            recipients.put(recipient, state);
+        }
+        state.lastSentMs = nowMs;
+        state.lastLat = lat;
+        state.lastLng = lng;
+        state.sent++;
+    }
+
+    static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 6371000.0 * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
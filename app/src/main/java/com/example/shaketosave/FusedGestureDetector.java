@@ -0,0 +1,181 @@
+package com.example.shaketosave;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+
+// Scores shakes on linear acceleration and angular rate together. A deliberate shake swings
+// the phone (high rotation rate), running or a dropped bag mostly does not.
+public class FusedGestureDetector implements SensorEventListener {
+
+    private static final int SHAKE_SLOP_TIME_MS = 500;
+    private static final int SHAKE_COUNT_RESET_TIME_MS = 3000;
+
+    private static final float LINEAR_MIN_GRAVITY = 1.2F;
+    private static final float ANGULAR_MIN_RAD_S = 3.0F;
+    private static final float LINEAR_SCALE_GRAVITY = 1.7F;
+    private static final float ANGULAR_SCALE_RAD_S = 6.0F;
+    private static final float SCORE_THRESHOLD = 1.5F;
+    // A gyro sample older than this is not paired with an accelerometer sample.
+    private static final long PAIRING_WINDOW_NANOS = 60_000_000L;
+
+    private static final int BUFFER_SIZE = 16;
+    private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+    private final long[] accelTimes = new long[BUFFER_SIZE];
+    private final float[] accelValues = new float[BUFFER_SIZE];
+    private int accelHead, accelSize;
+    private final long[] gyroTimes = new long[BUFFER_SIZE];
+    private final float[] gyroValues = new float[BUFFER_SIZE];
+    private int gyroHead, gyroSize;
+
+    private long pairedGyroTime;
+    private float pairedGyroRate;
+
+    private ShakeDetector.OnShakeListener listener;
+    private PowerStats powerStats;
+    private SensorWatchdog watchdog;
+    private SensorTiming timing;
+    private FallDetector fallDetector;
+    private GestureMatcher gestureMatcher;
+    private Clock clock = AndroidClock.INSTANCE;
+    private long shakeTimestamp;
+    private int shakeCount;
+    private float lastScore;
+    private long lastShakeSampleNanos;
+    private long lastShakeFiredNanos;
+
+    public void setOnShakeListener(ShakeDetector.OnShakeListener listener) {
+        this.listener = listener;
+    }
+
+    public void setPowerStats(PowerStats powerStats) {
+        this.powerStats = powerStats;
+    }
+
+    public void setWatchdog(SensorWatchdog watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    public void setTiming(SensorTiming timing) {
+        this.timing = timing;
+    }
+
+    public void setFallDetector(FallDetector fallDetector) {
+        this.fallDetector = fallDetector;
+    }
+
+    public void setGestureMatcher(GestureMatcher gestureMatcher) {
+        this.gestureMatcher = gestureMatcher;
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        long arrivalNanos = clock.elapsedRealtimeNanos();
+        if (powerStats != null) powerStats.onSensorEvent(arrivalNanos);
+        float x = event.values[0];
+        float y = event.values[1];
+        float z = event.values[2];
+        float magnitude = (float) Math.sqrt(x * x + y * y + z * z);
+        int type = event.sensor.getType();
+        if (type == Sensor.TYPE_ACCELEROMETER) {
+            if (watchdog != null) watchdog.onSample();
+            if (timing != null) timing.onSample(event.timestamp, arrivalNanos);
+            float gForce = magnitude / SensorManager.GRAVITY_EARTH;
+            if (fallDetector != null) fallDetector.onSample(event.timestamp, gForce);
+            if (gestureMatcher != null) gestureMatcher.onSample(event.timestamp, gForce);
+            onAccelSample(event.timestamp, gForce);
+        } else if (type == Sensor.TYPE_GYROSCOPE) {
+            onGyroSample(event.timestamp, magnitude);
+        }
+    }
+
+    void onAccelSample(long timestampNanos, float gForce) {
+        if (accelSize == BUFFER_SIZE) {
+            // Gyro stream stalled: process the oldest accelerometer sample with what we have.
+            processAccel(accelTimes[accelHead], accelValues[accelHead]);
+            accelHead = (accelHead + 1) & BUFFER_MASK;
+            accelSize--;
+        }
+        int tail = (accelHead + accelSize) & BUFFER_MASK;
+        accelTimes[tail] = timestampNanos;
+        accelValues[tail] = gForce;
+        accelSize++;
+        drain();
+    }
+
+    void onGyroSample(long timestampNanos, float rateRadS) {
+        if (gyroSize == BUFFER_SIZE) {
+            consumeGyro();
+        }
+        int tail = (gyroHead + gyroSize) & BUFFER_MASK;
+        gyroTimes[tail] = timestampNanos;
+        gyroValues[tail] = rateRadS;
+        gyroSize++;
+        drain();
+    }
+
+    // Merges both queues in timestamp order; each accelerometer sample is paired with the
+    // latest gyro sample at or before it.
+    private void drain() {
+        while (accelSize > 0 && gyroSize > 0) {
+            if (gyroTimes[gyroHead] <= accelTimes[accelHead]) {
+                consumeGyro();
+            } else {
+                processAccel(accelTimes[accelHead], accelValues[accelHead]);
+                accelHead = (accelHead + 1) & BUFFER_MASK;
+                accelSize--;
+            }
+        }
+    }
+
+    private void consumeGyro() {
+        pairedGyroTime = gyroTimes[gyroHead];
+        pairedGyroRate = gyroValues[gyroHead];
+        gyroHead = (gyroHead + 1) & BUFFER_MASK;
+        gyroSize--;
+    }
+
+    private void processAccel(long timestampNanos, float gForce) {
+        float angular = timestampNanos - pairedGyroTime <= PAIRING_WINDOW_NANOS ? pairedGyroRate : 0F;
+        float linear = Math.abs(gForce - 1F);
+        lastScore = linear / LINEAR_SCALE_GRAVITY + angular / ANGULAR_SCALE_RAD_S;
+        if (listener == null) return;
+        if (linear < LINEAR_MIN_GRAVITY || angular < ANGULAR_MIN_RAD_S || lastScore < SCORE_THRESHOLD) return;
+
+        final long now = timestampNanos / 1_000_000L;
+        if (shakeTimestamp + SHAKE_SLOP_TIME_MS > now) {
+            return;
+        }
+        if (shakeTimestamp + SHAKE_COUNT_RESET_TIME_MS < now) {
+            shakeCount = 0;
+        }
+        shakeTimestamp = now;
+        shakeCount++;
+        lastShakeSampleNanos = timestampNanos;
+        lastShakeFiredNanos = clock.elapsedRealtimeNanos();
+        listener.onShake(shakeCount);
+    }
+
+    public float getLastScore() {
+        return lastScore;
+    }
+
+    public long getLastShakeSampleNanos() {
+        return lastShakeSampleNanos;
+    }
+
+    public long getLastShakeFiredNanos() {
+        return lastShakeFiredNanos;
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        // Not used
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.shaketosave;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+// Streaming subsequence DTW (SPRING, Sakurai et al. 2007) against user-recorded templates.
+// Input is resampled onto a fixed 50 Hz grid so the adaptive sensor rate does not warp templates.
+// Cells over the template's tolerance are abandoned, and a column whose every cell is provably
+// over tolerance (envelope lower bound) is skipped without touching the per-cell arrays.
+public class GestureMatcher {
+
+    public static final int MAX_TEMPLATES = 4;
+    public static final int MAX_TEMPLATE_LENGTH = 150;
+    private static final long GRID_NANOS = 20_000_000L;
+    private static final float TOLERANCE = 0.35F;
+    private static final float MOTION_GRAVITY = 0.3F;
+    private static final float INF = Float.MAX_VALUE;
+    private static final int FILE_MAGIC = 0x53534754;
+
+    private final Template[] templates = new Template[MAX_TEMPLATES];
+    private int templateCount;
+    private ShakeDetector.OnShakeListener listener;
+
+    private long nextGridNanos;
+    private float lastValue;
+
+    private final float[] recordBuffer = new float[MAX_TEMPLATE_LENGTH];
+    private int recordLength;
+    private long recordUntilNanos;
+    private OnRecordedListener recordListener;
+
+    public interface OnRecordedListener {
+        void onRecorded(boolean saved);
+    }
+
+    static class Template {
+        final float[] values;
+        final float epsilon;
+        final float min;
+        final float max;
+        float[] cost;
+        long[] start;
+        float[] nextCost;
+        long[] nextStart;
+        int activeUntil = -1;
+        float minActiveCost = INF;
+        float bestCost = INF;
+        long bestEnd;
+
+        Template(float[] values, float epsilon) {
+            this.values = values;
+            this.epsilon = epsilon;
+            float lo = INF, hi = -INF;
+            for (float v : values) {
+                lo = Math.min(lo, v);
+                hi = Math.max(hi, v);
+            }
+            min = lo;
+            max = hi;
+            cost = new float[values.length];
+            start = new long[values.length];
+            nextCost = new float[values.length];
+            nextStart = new long[values.length];
+        }
+    }
+
+    public void setOnShakeListener(ShakeDetector.OnShakeListener listener) {
+        this.listener = listener;
+    }
+
+    public int getTemplateCount() {
+        return templateCount;
+    }
+
+    public void addTemplate(float[] values) {
+        float sum = 0;
+        for (float v : values) sum += Math.abs(v);
+        Template template = new Template(values, TOLERANCE * sum);
+        if (templateCount < MAX_TEMPLATES) {
+            templates[templateCount++] = template;
+        } else {
+            System.arraycopy(templates, 1, templates, 0, MAX_TEMPLATES - 1);
+            templates[MAX_TEMPLATES - 1] = template;
+        }
+    }
+
+    public void clearTemplates() {
+        for (int i = 0; i < templateCount; i++) templates[i] = null;
+        templateCount = 0;
+    }
+
+    public void startRecording(long nowNanos, long durationMs, OnRecordedListener listener) {
+        recordLength = 0;
+        recordUntilNanos = nowNanos + durationMs * 1_000_000L;
+        recordListener = listener;
+    }
+
+    public void onSample(long timestampNanos, float gForce) {
+        float value = gForce - 1F;
+        if (nextGridNanos == 0) nextGridNanos = timestampNanos;
+        // Sample-and-hold onto the grid; bounded so a long gap does not replay seconds of data.
+        int steps = 0;
+        while (nextGridNanos <= timestampNanos && steps < 10) {
+            onGridSample(nextGridNanos, steps == 0 ? value : lastValue);
+            nextGridNanos += GRID_NANOS;
+            steps++;
+        }
+        if (nextGridNanos <= timestampNanos) nextGridNanos = timestampNanos + GRID_NANOS;
+        lastValue = value;
+    }
+
+    private void onGridSample(long t, float x) {
+        if (recordListener != null) {
+            if (recordLength < MAX_TEMPLATE_LENGTH) recordBuffer[recordLength++] = x;
+            if (t >= recordUntilNanos || recordLength == MAX_TEMPLATE_LENGTH) finishRecording();
+            return;
+        }
+        for (int k = 0; k < templateCount; k++) {
+            step(k, templates[k], t, x);
+        }
+    }
+
+    private void step(int index, Template tpl, long t, float x) {
+        float[] y = tpl.values;
+        int m = y.length;
+        float eps = tpl.epsilon;
+
+        float envelope = x < tpl.min ? tpl.min - x : (x > tpl.max ? x - tpl.max : 0F);
+        float first = Math.abs(x - y[0]);
+        if (first > eps && (tpl.activeUntil < 0 || tpl.minActiveCost + envelope > eps)) {
+            tpl.activeUntil = -1;
+            tpl.minActiveCost = INF;
+            reportIfSettled(index, tpl);
+            return;
+        }
+
+        float[] prev = tpl.cost;
+        long[] prevStart = tpl.start;
+        float[] cur = tpl.nextCost;
+        long[] curStart = tpl.nextStart;
+        int prevActive = tpl.activeUntil;
+        int lastFinite = -1;
+        float minCost = INF;
+
+        for (int i = 0; i < m; i++) {
+            float best;
+            long bestStart;
+            if (i == 0) {
+                // Star padding: a match may start at any time with zero prior cost.
+                best = 0F;
+                bestStart = t;
+            } else {
+                best = cur[i - 1];
+                bestStart = curStart[i - 1];
+                if (i - 1 <= prevActive && prev[i - 1] < best) {
+                    best = prev[i - 1];
+                    bestStart = prevStart[i - 1];
+                }
+                if (i <= prevActive && prev[i] < best) {
+                    best = prev[i];
+                    bestStart = prevStart[i];
+                }
+            }
+            float c = best == INF ? INF : best + Math.abs(x - y[i]);
+            if (c > eps) c = INF;
+            cur[i] = c;
+            curStart[i] = bestStart;
+            if (c != INF) {
+                lastFinite = i;
+                if (c < minCost) minCost = c;
+            } else if (i > prevActive) {
+                // Nothing further right is reachable: the previous column is dead there and
+                // the vertical chain just broke.
+                break;
+            }
+        }
+
+        tpl.cost = cur;
+        tpl.start = curStart;
+        tpl.nextCost = prev;
+        tpl.nextStart = prevStart;
+        tpl.activeUntil = lastFinite;
+        tpl.minActiveCost = minCost;
+
+        if (lastFinite == m - 1 && cur[m - 1] < tpl.bestCost) {
+            tpl.bestCost = cur[m - 1];
+            tpl.bestEnd = t;
+        }
+        reportIfSettled(index, tpl);
+    }
+
+    // SPRING's report condition: no live cell can still beat the candidate with an overlapping start.
+    private void reportIfSettled(int index, Template tpl) {
+        if (tpl.bestCost == INF) return;
+        for (int i = 0; i <= tpl.activeUntil; i++) {
+            if (tpl.cost[i] < tpl.bestCost && tpl.start[i] <= tpl.bestEnd) return;
+        }
+        float distance = tpl.bestCost / tpl.epsilon;
+        for (int i = 0; i <= tpl.activeUntil; i++) {
+            if (tpl.start[i] <= tpl.bestEnd) tpl.cost[i] = INF;
+        }
+        tpl.bestCost = INF;
+        if (listener != null) listener.onGesture(index, distance);
+    }
+
+    private void finishRecording() {
+        OnRecordedListener callback = recordListener;
+        recordListener = null;
+        int from = 0, to = recordLength - 1;
+        while (from < recordLength && Math.abs(recordBuffer[from]) < MOTION_GRAVITY) from++;
+        while (to > from && Math.abs(recordBuffer[to]) < MOTION_GRAVITY) to--;
+        boolean saved = to - from >= 10;
+        if (saved) {
+            float[] values = new float[to - from + 1];
+            System.arraycopy(recordBuffer, from, values, 0, values.length);
+            addTemplate(values);
+        }
+        callback.onRecorded(saved);
+    }
+
+    public void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(templateCount);
+            for (int k = 0; k < templateCount; k++) {
+                float[] values = templates[k].values;
+                out.writeShort(values.length);
+                for (float v : values) out.writeFloat(v);
+            }
+        }
+    }
+
+    public void load(File file) throws IOException {
+        clearTemplates();
+        if (!file.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC) return;
+            int count = Math.min(in.readInt(), MAX_TEMPLATES);
+            for (int k = 0; k < count; k++) {
+                int length = in.readShort();
+                if (length <= 0 || length > MAX_TEMPLATE_LENGTH) return;
+                float[] values = new float[length];
+                for (int i = 0; i < length; i++) values[i] = in.readFloat();
+                addTemplate(values);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.shaketosave;
+
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.activity.EdgeToEdge;
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.graphics.Insets;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.WindowInsetsCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+public class HistoryActivity extends AppCompatActivity {
+
+    private static final int PAGE_SIZE = 50;
+    // Start fetching the next page this many rows before the end is visible.
+    private static final int PREFETCH_DISTANCE = 20;
+
+    private static final String[] SOURCE_NAMES = {"Shake", "Voice", "Gesture", "Fall", "Manual"};
+    private static final String[] OUTCOME_NAMES = {"Sent", "Failed", "Cancelled"};
+    private static final String[] DELIVERY_NAMES = {"", "sent", "delivered", "SMS error"};
+
+    private IncidentStore incidentStore;
+    private IncidentAdapter adapter;
+    private LinearLayoutManager layoutManager;
+    private TextView summaryText, emptyText;
+    private boolean loading;
+    private boolean endReached;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        EdgeToEdge.enable(this);
+        setContentView(R.layout.activity_history);
+
+        ViewCompat.setOnApplyWindowInsetsListener(findViewById(android.R.id.content), (v, insets) -> {
+            Insets systemBars = insets.getInsets(WindowInsetsCompat.Type.systemBars());
+            v.setPadding(systemBars.left, systemBars.top, systemBars.right, systemBars.bottom);
+            return insets;
+        });
+
+        incidentStore = IncidentStore.get(this);
+        summaryText = findViewById(R.id.historySummary);
+        emptyText = findViewById(R.id.historyEmpty);
+
+        RecyclerView list = findViewById(R.id.historyList);
+        layoutManager = new LinearLayoutManager(this);
+        adapter = new IncidentAdapter();
+        list.setLayoutManager(layoutManager);
+        list.setHasFixedSize(true);
+        list.setAdapter(adapter);
+        list.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
+
+        loadNextPage();
+    }
+
+    private void loadNextPage() {
+        if (loading || endReached) return;
+        loading = true;
+        IncidentStore.Incident after = adapter.getLast();
+        incidentStore.loadPage(after, PAGE_SIZE, (incidents, outcomeCounts) -> runOnUiThread(() -> {
+            if (isDestroyed()) return;
+            loading = false;
+            if (incidents.size() < PAGE_SIZE) endReached = true;
+            if (outcomeCounts != null) {
+                summaryText.setText(getString(R.string.history_summary,
+                        outcomeCounts[IncidentStore.OUTCOME_SENT],
+                        outcomeCounts[IncidentStore.OUTCOME_FAILED],
+                        outcomeCounts[IncidentStore.OUTCOME_CANCELLED]));
+            }
+            adapter.append(incidents);
+            emptyText.setVisibility(adapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+        }));
+    }
+
+    private static class IncidentAdapter extends RecyclerView.Adapter<IncidentAdapter.Holder> {
+
+        private final List<IncidentStore.Incident> items = new ArrayList<>();
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd MMM yyyy, HH:mm:ss", Locale.getDefault());
+        private final Date date = new Date();
+
+        static class Holder extends RecyclerView.ViewHolder {
+            final TextView title;
+            final TextView detail;
+
+            Holder(View itemView) {
+                super(itemView);
+                title = itemView.findViewById(R.id.incidentTitle);
+                detail = itemView.findViewById(R.id.incidentDetail);
+            }
+        }
+
+        IncidentStore.Incident getLast() {
+            return items.isEmpty() ? null : items.get(items.size() - 1);
+        }
+
+        void append(List<IncidentStore.Incident> incidents) {
+            int start = items.size();
+            items.addAll(incidents);
+            notifyItemRangeInserted(start, incidents.size());
+        }
+
+        @NonNull
+        @Override
+        public Holder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_incident, parent, false);
+            return new Holder(view);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull Holder holder, int position) {
+            IncidentStore.Incident incident = items.get(position);
+            date.setTime(incident.startedAt);
+            holder.title.setText(String.format(Locale.US, "%s · %s · %s",
+                    OUTCOME_NAMES[incident.outcome], SOURCE_NAMES[incident.source], dateFormat.format(date)));
+
+            StringBuilder detail = new StringBuilder();
+            if (incident.place != null) {
+                detail.append(incident.place);
+            } else if (incident.hasLocation) {
+                detail.append(String.format(Locale.US, "%.5f, %.5f", incident.latitude, incident.longitude));
+            } else {
+                detail.append("No location");
+            }
+            if (incident.outcome == IncidentStore.OUTCOME_SENT) {
+                detail.append(" · ").append(LatencyTracker.formatMicros(incident.latencyMicros));
+                if (incident.smsParts > 1) detail.append(" · ").append(incident.smsParts).append(" parts");
+                if (incident.delivery != IncidentStore.DELIVERY_UNKNOWN) {
+                    detail.append(" · ").append(DELIVERY_NAMES[incident.delivery]);
+                }
+            }
+            if (incident.detail != null) detail.append(" · ").append(incident.detail);
+            holder.detail.setText(detail);
+        }
+
+        @Override
+        public int getItemCount() {
+            return items.size();
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.example.shaketosave;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Incident history in SQLite (WAL). Writes are queued and flushed in one transaction on a
+// single background thread; reads go through the same thread so they always see queued writes.
+public class IncidentStore extends SQLiteOpenHelper {
+
+    public static final int OUTCOME_SENT = 0;
+    public static final int OUTCOME_FAILED = 1;
+    public static final int OUTCOME_CANCELLED = 2;
+    static final int OUTCOME_COUNT = 3;
+
+    public static final int DELIVERY_UNKNOWN = 0;
+    public static final int DELIVERY_SENT = 1;
+    public static final int DELIVERY_DELIVERED = 2;
+    public static final int DELIVERY_ERROR = 3;
+
+    private static final String DB_NAME = "incidents.db";
+    private static final int DB_VERSION = 2;
+    private static final long FLUSH_DELAY_MS = 500;
+    private static final int RECENT_TOKENS = 32;
+
+    private static final String TABLE = "incidents";
+    private static final String COLUMNS = "_id, started_at, source, has_location, latitude, longitude, place, "
+            + "outcome, delivery, sms_parts, latency_us, detail, token";
+
+    public static class Incident {
+        public long id;
+        public final long startedAt;
+        public final int source;
+        public boolean hasLocation;
+        public double latitude;
+        public double longitude;
+        public String place;
+        public int outcome;
+        public int delivery;
+        public int smsParts;
+        public long latencyMicros;
+        public String detail;
+        // Random per incident; travels with the SMS status intents so their updates find the row.
+        public long token;
+
+        public Incident(long startedAt, int source) {
+            this.startedAt = startedAt;
+            this.source = source;
+        }
+    }
+
+    public interface PageCallback {
+        // Called on the store's worker thread.
+        void onPage(List<Incident> incidents, int[] outcomeCounts);
+    }
+
+    private static IncidentStore instance;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Object lock = new Object();
+    private ArrayList<Incident> pendingInserts = new ArrayList<>();
+    private ArrayList<long[]> pendingDeliveries = new ArrayList<>();
+    private boolean flushScheduled;
+    // token -> _id of rows inserted by this process; worker thread only.
+    private final Map<Long, Long> recentIds = new LinkedHashMap<Long, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > RECENT_TOKENS;
+        }
+    };
+
+    public static synchronized IncidentStore get(Context context) {
+        if (instance == null) instance = new IncidentStore(context.getApplicationContext());
+        return instance;
+    }
+
+    // Tests only: each Robolectric test has its own application and files directory.
+    static synchronized void resetForTest() {
+        if (instance != null) {
+            instance.flushNow(1000);
+            instance.executor.shutdown();
+            instance.close();
+        }
+        instance = null;
+    }
+
+    private IncidentStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "started_at INTEGER NOT NULL, "
+                + "source INTEGER NOT NULL, "
+                + "has_location INTEGER NOT NULL, "
+                + "latitude REAL, "
+                + "longitude REAL, "
+                + "place TEXT, "
+                + "outcome INTEGER NOT NULL, "
+                + "delivery INTEGER NOT NULL DEFAULT 0, "
+                + "sms_parts INTEGER NOT NULL DEFAULT 0, "
+                + "latency_us INTEGER NOT NULL DEFAULT 0, "
+                + "detail TEXT, "
+                + "token INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX idx_incidents_started ON " + TABLE + " (started_at)");
+        db.execSQL("CREATE INDEX idx_incidents_outcome ON " + TABLE + " (outcome, started_at)");
+        db.execSQL("CREATE INDEX idx_incidents_token ON " + TABLE + " (token)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN token INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("CREATE INDEX idx_incidents_token ON " + TABLE + " (token)");
+        }
+    }
+
+    public void record(Incident incident) {
+        synchronized (lock) {
+            pendingInserts.add(incident);
+            scheduleFlushLocked();
+        }
+    }
+
+    // SMS status can arrive before or long after the incident row is written; the incident's token
+    // is resolved to its _id when the update is flushed.
+    public void updateDelivery(long token, int delivery) {
+        if (token == 0) return;
+        synchronized (lock) {
+            pendingDeliveries.add(new long[]{token, delivery});
+            scheduleFlushLocked();
+        }
+    }
+
+    // Writes whatever is queued without waiting out the batching delay, and waits up to timeoutMs
+    // for it (0: don't wait). For onTrimMemory and onDestroy, where the process may not survive
+    // until the delayed flush.
+    public void flushNow(long timeoutMs) {
+        Future<?> flushed = executor.submit(this::flush);
+        if (timeoutMs <= 0) return;
+        try {
+            flushed.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ignored) {
+        }
+    }
+
+    private void scheduleFlushLocked() {
+        if (flushScheduled) return;
+        flushScheduled = true;
+        executor.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        ArrayList<Incident> inserts;
+        ArrayList<long[]> deliveries;
+        synchronized (lock) {
+            flushScheduled = false;
+            if (pendingInserts.isEmpty() && pendingDeliveries.isEmpty()) return;
+            inserts = pendingInserts;
+            deliveries = pendingDeliveries;
+            pendingInserts = new ArrayList<>();
+            pendingDeliveries = new ArrayList<>();
+        }
+
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try {
+            if (!inserts.isEmpty()) insert(db, inserts);
+            if (!deliveries.isEmpty()) updateDeliveries(db, deliveries);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void insert(SQLiteDatabase db, List<Incident> inserts) {
+        try (SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE
+                + " (started_at, source, has_location, latitude, longitude, place, outcome, delivery, sms_parts, latency_us, detail, token)"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (Incident incident : inserts) {
+                insert.clearBindings();
+                insert.bindLong(1, incident.startedAt);
+                insert.bindLong(2, incident.source);
+                insert.bindLong(3, incident.hasLocation ? 1 : 0);
+                insert.bindDouble(4, incident.latitude);
+                insert.bindDouble(5, incident.longitude);
+                if (incident.place != null) insert.bindString(6, incident.place);
+                insert.bindLong(7, incident.outcome);
+                insert.bindLong(8, incident.delivery);
+                insert.bindLong(9, incident.smsParts);
+                insert.bindLong(10, incident.latencyMicros);
+                if (incident.detail != null) insert.bindString(11, incident.detail);
+                insert.bindLong(12, incident.token);
+                incident.id = insert.executeInsert();
+                if (incident.token != 0) recentIds.put(incident.token, incident.id);
+            }
+        }
+    }
+
+    private void updateDeliveries(SQLiteDatabase db, List<long[]> deliveries) {
+        // Never downgrade: a late "sent" callback must not overwrite "delivered".
+        try (SQLiteStatement update = db.compileStatement("UPDATE " + TABLE
+                + " SET delivery = ? WHERE _id = ? AND delivery < ?")) {
+            for (long[] delivery : deliveries) {
+                long id = idForToken(db, delivery[0]);
+                if (id < 0) continue;
+                update.bindLong(1, delivery[1]);
+                update.bindLong(2, id);
+                update.bindLong(3, delivery[1]);
+                update.executeUpdateDelete();
+            }
+        }
+    }
+
+    // Rows from before a restart are looked up once through the token index.
+    private long idForToken(SQLiteDatabase db, long token) {
+        Long id = recentIds.get(token);
+        if (id != null) return id;
+        try (Cursor cursor = db.rawQuery("SELECT _id FROM " + TABLE + " WHERE token = ? LIMIT 1",
+                new String[]{String.valueOf(token)})) {
+            if (!cursor.moveToFirst()) return -1;
+            long found = cursor.getLong(0);
+            recentIds.put(token, found);
+            return found;
+        }
+    }
+
+    // Keyset paging, newest first: pass the last incident of the previous page, or null for the
+    // first page. Cost stays flat however deep the user scrolls, unlike OFFSET.
+    public void loadPage(Incident after, int limit, PageCallback callback) {
+        executor.execute(() -> {
+            flush();
+            SQLiteDatabase db = getReadableDatabase();
+            List<Incident> page = new ArrayList<>(limit);
+            String limitArg = String.valueOf(limit);
+            String sql;
+            String[] args;
+            if (after == null) {
+                sql = "SELECT " + COLUMNS + " FROM " + TABLE + " ORDER BY started_at DESC, _id DESC LIMIT ?";
+                args = new String[]{limitArg};
+            } else {
+                String time = String.valueOf(after.startedAt);
+                sql = "SELECT " + COLUMNS + " FROM " + TABLE
+                        + " WHERE started_at <= ? AND (started_at < ? OR _id < ?)"
+                        + " ORDER BY started_at DESC, _id DESC LIMIT ?";
+                args = new String[]{time, time, String.valueOf(after.id), limitArg};
+            }
+            try (Cursor cursor = db.rawQuery(sql, args)) {
+                while (cursor.moveToNext()) page.add(readIncident(cursor));
+            }
+            callback.onPage(page, after == null ? countByOutcome(db) : null);
+        });
+    }
+
+    private static int[] countByOutcome(SQLiteDatabase db) {
+        int[] counts = new int[OUTCOME_COUNT];
+        try (Cursor cursor = db.rawQuery("SELECT outcome, COUNT(*) FROM " + TABLE + " GROUP BY outcome", null)) {
+            while (cursor.moveToNext()) {
+                int outcome = cursor.getInt(0);
+                if (outcome >= 0 && outcome < OUTCOME_COUNT) counts[outcome] = cursor.getInt(1);
+            }
+        }
+        return counts;
+    }
+
+    // Writes the whole history, newest first, as CSV for an SOS email. Runs on the store's thread
+    // after any queued writes and blocks the caller until done, so call it from a worker.
+    public void exportLog(File file) throws IOException {
+        Future<?> exported = executor.submit(() -> {
+            flush();
+            writeLog(getReadableDatabase(), file);
+            return null;
+        });
+        try {
+            exported.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted exporting incidents");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static void writeLog(SQLiteDatabase db, File file) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+             Cursor cursor = db.rawQuery("SELECT " + COLUMNS + " FROM " + TABLE + " ORDER BY started_at DESC, _id DESC", null)) {
+            out.write("started_at,source,outcome,delivery,sms_parts,latency_us,latitude,longitude,place,detail\n");
+            while (cursor.moveToNext()) {
+                Incident incident = readIncident(cursor);
+                out.write(String.format(Locale.US, "%d,%d,%d,%d,%d,%d,%s,%s,%s,%s\n",
+                        incident.startedAt, incident.source, incident.outcome, incident.delivery,
+                        incident.smsParts, incident.latencyMicros,
+                        incident.hasLocation ? String.format(Locale.US, "%.6f", incident.latitude) : "",
+                        incident.hasLocation ? String.format(Locale.US, "%.6f", incident.longitude) : "",
+                        csv(incident.place), csv(incident.detail)));
+            }
+        }
+    }
+
+    private static String csv(String value) {
+        if (value == null) return "";
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static Incident readIncident(Cursor cursor) {
+        Incident incident = new Incident(cursor.getLong(1), cursor.getInt(2));
+        incident.id = cursor.getLong(0);
+        incident.hasLocation = cursor.getInt(3) != 0;
+        incident.latitude = cursor.getDouble(4);
+        incident.longitude = cursor.getDouble(5);
+        incident.place = cursor.isNull(6) ? null : cursor.getString(6);
+        incident.outcome = cursor.getInt(7);
+        incident.delivery = cursor.getInt(8);
+        incident.smsParts = cursor.getInt(9);
+        incident.latencyMicros = cursor.getLong(10);
+        incident.detail = cursor.isNull(11) ? null : cursor.getString(11);
+        incident.token = cursor.getLong(12);
+        return incident;
+    }
+}
@@ -0,0 +1,396 @@
+package com.example.shaketosave;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Spools incident records and hourly metrics to disk and uploads them in batches. Records are
+// appended to a pending file as they happen (on a background thread); when an upload runs, the
+// pending records are sealed into delta-encoded, gzipped batch files (see UploadBatch) and sent
+// oldest first in chunks. The committed offset of the batch in flight is persisted after every
+// chunk, so a batch interrupted by a network change resumes where it stopped instead of starting over.
+//
+// Per chunk: POST <endpoint>, body = batch bytes [offset, offset + n), headers X-Device-Id,
+// X-Upload-Id (batch name), X-Upload-Offset, X-Upload-Length. A 2xx reply may carry
+// X-Upload-Offset with the server's committed length; 409 means the server holds a different
+// offset, given in X-Upload-Offset, and the client continues from there. Other 4xx drop the
+// batch; 5xx and I/O errors stop the run so the job is retried with backoff. So do replies that
+// leave the offset where it was MAX_STALLED_CHUNKS times in a row, so a misbehaving server cannot
+// keep the job spinning on one chunk.
+public class IncidentUploader {
+
+    public static final String PREFS_NAME = "SafeShakeUpload";
+    public static final String KEY_ENDPOINT = "endpoint";
+
+    static final String HEADER_DEVICE = "X-Device-Id";
+    static final String HEADER_UPLOAD = "X-Upload-Id";
+    static final String HEADER_OFFSET = "X-Upload-Offset";
+    static final String HEADER_LENGTH = "X-Upload-Length";
+
+    private static final String DIR_NAME = "uploads";
+    private static final String PENDING_FILE = "pending.bin";
+    private static final String STATE_FILE = "state.bin";
+    private static final String SEQUENCE_FILE = "sequence.bin";
+    private static final String DEVICE_FILE = "device.id";
+    private static final String BATCH_PREFIX = "batch-";
+    private static final String BATCH_SUFFIX = ".bin";
+
+    static final int CHUNK_BYTES = 16 * 1024;
+    static final int MAX_BATCH_RECORDS = 500;
+    static final int MAX_STALLED_CHUNKS = 3;
+    // About a month of hourly metrics plus incidents; older batches are dropped first.
+    private static final int MAX_BATCHES = 64;
+    private static final int CONNECT_TIMEOUT_MS = 15_000;
+    private static final int READ_TIMEOUT_MS = 30_000;
+
+    private static IncidentUploader instance;
+
+    private final File dir;
+    private final int chunkBytes;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile String endpoint = "";
+    private int pendingCount = -1;
+
+    // Written by the upload thread, read for the status summary.
+    private volatile long uploadedBatches;
+    private volatile long uploadedBytes;
+
+    public static synchronized IncidentUploader get(Context context) {
+        if (instance == null) {
+            Context app = context.getApplicationContext();
+            instance = new IncidentUploader(new File(app.getFilesDir(), DIR_NAME), CHUNK_BYTES);
+            instance.endpoint = loadEndpoint(app);
+        }
+        return instance;
+    }
+
+    // Tests only: the instance holds the previous test's files directory and its executor thread.
+    static synchronized void resetForTest() {
+        if (instance != null) instance.executor.shutdown();
+        instance = null;
+    }
+
+    public static String loadEndpoint(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getString(KEY_ENDPOINT, "");
+    }
+
+    IncidentUploader(File dir, int chunkBytes) {
+        this.dir = dir;
+        this.chunkBytes = chunkBytes;
+    }
+
+    // Only the detector process writes this file, so its SharedPreferences cache stays current.
+    public void setEndpoint(Context context, String endpoint) {
+        String value = endpoint == null ? "" : endpoint.trim();
+        if (value.equals(this.endpoint)) return;
+        this.endpoint = value;
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putString(KEY_ENDPOINT, value)
+                .apply();
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    // Nothing is spooled while no endpoint is configured.
+    public void enqueue(UploadBatch.Record record) {
+        if (endpoint.isEmpty()) return;
+        executor.execute(() -> append(record));
+    }
+
+    // Runs once every record enqueued before it has reached the pending file.
+    public void afterEnqueued(Runnable runnable) {
+        executor.execute(runnable);
+    }
+
+    private void append(UploadBatch.Record record) {
+        if (!dir.isDirectory() && !dir.mkdirs()) return;
+        if (pendingCount < 0) pendingCount = readPending().size();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(dir, PENDING_FILE), true)))) {
+            UploadBatch.writeRaw(out, record);
+        } catch (IOException e) {
+            return;
+        }
+        if (++pendingCount >= MAX_BATCH_RECORDS) seal();
+    }
+
+    private List<UploadBatch.Record> readPending() {
+        List<UploadBatch.Record> records = new ArrayList<>();
+        File file = new File(dir, PENDING_FILE);
+        if (!file.exists()) return records;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            UploadBatch.Record record;
+            while ((record = UploadBatch.readRaw(in)) != null) records.add(record);
+        } catch (IOException ignored) {
+        }
+        return records;
+    }
+
+    // Runs on the executor, after every enqueue() that came before it.
+    private void seal() {
+        List<UploadBatch.Record> records = readPending();
+        pendingCount = 0;
+        if (records.isEmpty()) return;
+        long seq = lastBatchSeq() + 1;
+        try {
+            // Reserved before any batch exists under the new names: a crash leaves a gap, never a reuse.
+            writeSequence(seq + (records.size() - 1) / MAX_BATCH_RECORDS);
+            for (int from = 0; from < records.size(); from += MAX_BATCH_RECORDS) {
+                int to = Math.min(records.size(), from + MAX_BATCH_RECORDS);
+                File tmp = new File(dir, "sealing.tmp");
+                writeFile(tmp, UploadBatch.encode(records.subList(from, to)));
+                if (!tmp.renameTo(new File(dir, batchName(seq++)))) throw new IOException("rename failed");
+                // Each sealed batch leaves the pending file right away, so a failure on a later
+                // one does not seal (and upload) these records a second time.
+                commitPending(records.subList(to, records.size()));
+            }
+        } catch (IOException e) {
+            // Whatever was not sealed stays pending; the next run seals it again.
+            pendingCount = -1;
+            return;
+        }
+        File[] batches = listBatches();
+        for (int i = 0; i < batches.length - MAX_BATCHES; i++) batches[i].delete();
+    }
+
+    private void commitPending(List<UploadBatch.Record> remaining) throws IOException {
+        File file = new File(dir, PENDING_FILE);
+        if (remaining.isEmpty()) {
+            if (file.exists() && !file.delete()) throw new IOException("delete failed");
+            return;
+        }
+        File tmp = new File(dir, PENDING_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            for (UploadBatch.Record record : remaining) UploadBatch.writeRaw(out, record);
+        }
+        if (!tmp.renameTo(file)) throw new IOException("rename failed");
+    }
+
+    // Seals whatever is pending and uploads every batch. Returns true when nothing is left to send;
+    // false means retry later. Call from a worker thread.
+    public boolean upload(AtomicBoolean stopped) {
+        String target = endpoint;
+        if (target.isEmpty()) return true;
+        try {
+            executor.submit(this::seal).get();
+        } catch (Exception e) {
+            return false;
+        }
+        String device = deviceId();
+        for (File batch : listBatches()) {
+            if (stopped.get()) return false;
+            try {
+                if (!uploadBatch(target, device, batch, stopped)) return false;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean uploadBatch(String target, String device, File batch, AtomicBoolean stopped) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = readFile(batch);
+        } catch (IOException e) {
+            // Dropped by the size cap while we were listing.
+            return true;
+        }
+        String id = batch.getName();
+        long offset = readOffset(id);
+        if (offset > bytes.length) offset = 0;
+        int stalled = 0;
+        while (offset < bytes.length) {
+            if (stopped.get()) return false;
+            long previous = offset;
+            int length = (int) Math.min(chunkBytes, bytes.length - offset);
+            HttpURLConnection connection = (HttpURLConnection) new URL(target).openConnection();
+            try {
+                connection.setRequestMethod("POST");
+                connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+                connection.setReadTimeout(READ_TIMEOUT_MS);
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(length);
+                connection.setRequestProperty("Content-Type", "application/octet-stream");
+                connection.setRequestProperty(HEADER_DEVICE, device);
+                connection.setRequestProperty(HEADER_UPLOAD, id);
+                connection.setRequestProperty(HEADER_OFFSET, Long.toString(offset));
+                connection.setRequestProperty(HEADER_LENGTH, Integer.toString(bytes.length));
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(bytes, (int) offset, length);
+                }
+                int code = connection.getResponseCode();
+                drain(connection, code);
+                long committed = parseOffset(connection.getHeaderField(HEADER_OFFSET), -1);
+                if (code >= 200 && code < 300) {
+                    uploadedBytes += length;
+                    offset = committed >= 0 ? committed : offset + length;
+                } else if (code == HttpURLConnection.HTTP_CONFLICT && committed >= 0) {
+                    offset = committed;
+                } else if (code >= 400 && code < 500) {
+                    break;
+                } else {
+                    return false;
+                }
+            } finally {
+                connection.disconnect();
+            }
+            offset = Math.max(0, Math.min(offset, bytes.length));
+            writeOffset(id, offset);
+            // A 409 that moves the offset back (the server lost state) is not progress either, but
+            // the chunks that follow it are.
+            if (offset > previous) {
+                stalled = 0;
+            } else if (++stalled >= MAX_STALLED_CHUNKS) {
+                return false;
+            }
+        }
+        batch.delete();
+        new File(dir, STATE_FILE).delete();
+        uploadedBatches++;
+        return true;
+    }
+
+    private static void drain(HttpURLConnection connection, int code) {
+        try (InputStream in = code < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (in == null) return;
+            byte[] skip = new byte[512];
+            while (in.read(skip) >= 0) {
+                // keep-alive needs the body consumed
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static long parseOffset(String value, long fallback) {
+        if (value == null) return fallback;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private long readOffset(String id) {
+        File file = new File(dir, STATE_FILE);
+        if (!file.exists()) return 0;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return id.equals(in.readUTF()) ? in.readLong() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void writeOffset(String id, long offset) throws IOException {
+        File tmp = new File(dir, STATE_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+            out.writeUTF(id);
+            out.writeLong(offset);
+        }
+        if (!tmp.renameTo(new File(dir, STATE_FILE))) throw new IOException("rename failed");
+    }
+
+    // Random per install; ties a device's batches together without sending a hardware identifier.
+    private String deviceId() {
+        File file = new File(dir, DEVICE_FILE);
+        try {
+            if (file.exists()) return new String(readFile(file), StandardCharsets.UTF_8).trim();
+            String id = UUID.randomUUID().toString();
+            if (dir.isDirectory() || dir.mkdirs()) writeFile(file, id.getBytes(StandardCharsets.UTF_8));
+            return id;
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            byte[] bytes = new byte[(int) file.length()];
+            in.readFully(bytes);
+            return bytes;
+        }
+    }
+
+    private static void writeFile(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        }
+    }
+
+    private File[] listBatches() {
+        File[] files = dir.listFiles(f -> f.isFile() && f.getName().startsWith(BATCH_PREFIX) && f.getName().endsWith(BATCH_SUFFIX));
+        if (files == null) return new File[0];
+        // Zero-padded sequence numbers sort by name.
+        Arrays.sort(files);
+        return files;
+    }
+
+    // Batch names are upload ids, so they must never repeat: the server still holds every id it has
+    // seen and answers a reused one with 409 at the old length, which would drop the new batch as
+    // already sent. The last sequence handed out is kept in its own file because the batch files
+    // are deleted once uploaded; the newest batch name covers a missing or unreadable file.
+    private long lastBatchSeq() {
+        long last = 0;
+        File file = new File(dir, SEQUENCE_FILE);
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                last = in.readLong();
+            } catch (IOException ignored) {
+            }
+        }
+        File[] batches = listBatches();
+        if (batches.length == 0) return last;
+        String name = batches[batches.length - 1].getName();
+        try {
+            return Math.max(last, Long.parseLong(name.substring(BATCH_PREFIX.length(), name.length() - BATCH_SUFFIX.length())));
+        } catch (NumberFormatException e) {
+            return last;
+        }
+    }
+
+    private void writeSequence(long seq) throws IOException {
+        File tmp = new File(dir, SEQUENCE_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+            out.writeLong(seq);
+        }
+        if (!tmp.renameTo(new File(dir, SEQUENCE_FILE))) throw new IOException("rename failed");
+    }
+
+    private static String batchName(long seq) {
+        return String.format(Locale.US, "%s%012d%s", BATCH_PREFIX, seq, BATCH_SUFFIX);
+    }
+
+    public long getUploadedBatches() {
+        return uploadedBatches;
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.shaketosave;
+
+// Log-linear buckets (8 sub-buckets per power of two), ~12% relative error, fixed size.
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+    static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long maxValue;
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts[bucketIndex(value)]++;
+        totalCount++;
+        if (value > maxValue) maxValue = value;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMax() {
+        return maxValue;
+    }
+
+    public long getPercentile(double percentile) {
+        if (totalCount == 0) return 0;
+        long rank = (long) Math.ceil(percentile / 100.0 * totalCount);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            // The last bucket also holds everything beyond its nominal range.
+            if (seen >= rank) return i == BUCKET_COUNT - 1 ? maxValue : Math.min(bucketUpperBound(i), maxValue);
+        }
+        return maxValue;
+    }
+
+    public void reset() {
+        java.util.Arrays.fill(counts, 0);
+        totalCount = 0;
+        maxValue = 0;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude > MAX_MAGNITUDE) return BUCKET_COUNT - 1;
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long base = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return base + (1L << shift) - 1;
+    }
+
+    // Sparse "index:count" pairs, compact enough for SharedPreferences.
+    public String encode() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(maxValue);
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (counts[i] == 0) continue;
+            sb.append(',').append(i).append(':').append(counts[i]);
+        }
+        return sb.toString();
+    }
+
+    public void decode(String encoded) {
+        reset();
+        if (encoded == null || encoded.isEmpty()) return;
+        String[] parts = encoded.split(",");
+        try {
+            maxValue = Long.parseLong(parts[0]);
+            for (int i = 1; i < parts.length; i++) {
+                int sep = parts[i].indexOf(':');
+                int index = Integer.parseInt(parts[i].substring(0, sep));
+                long count = Long.parseLong(parts[i].substring(sep + 1));
+                if (index < 0 || index >= BUCKET_COUNT) continue;
+                counts[index] += count;
+                totalCount += count;
+            }
+        } catch (RuntimeException e) {
+            reset();
+        }
+    }
+}
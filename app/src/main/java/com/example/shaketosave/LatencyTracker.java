@@ -0,0 +1,201 @@
+package com.example.shaketosave;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import java.util.Locale;
+
+public class LatencyTracker {
+
+    private static final String PREFS_NAME = "SafeShakeLatency";
+    // The in-app countdown runs in the UI process; it keeps its own file so the two processes
+    // never overwrite each other's histograms.
+    private static final String FOREGROUND_PREFS_NAME = "SafeShakeLatencyForeground";
+    private static final String KEY_COUNTDOWN_TICKS = "countdown_ticks";
+    private static final String KEY_COUNTDOWN_NOTIFIES = "countdown_notifies";
+    private static final String KEY_SEND_NOW = "send_now";
+    private static final String KEY_ACTION_SERVICE = "action_service";
+    private static final String KEY_ACTION_BROADCAST = "action_broadcast";
+
+    public static final int STAGE_DETECT = 0;
+    public static final int STAGE_DISPATCH = 1;
+    public static final int STAGE_COUNTDOWN = 2;
+    public static final int STAGE_BUILD = 3;
+    public static final int STAGE_HANDOFF = 4;
+    public static final int STAGE_SENT = 5;
+    public static final int STAGE_DELIVERED = 6;
+    public static final int STAGE_TOTAL = 7;
+    private static final int STAGE_COUNT = 8;
+
+    private static final String[] STAGE_NAMES = {
+            "detect", "onShake", "countdown", "build", "handoff", "sent", "delivered", "total"
+    };
+
+    private static LatencyTracker instance;
+    private static LatencyTracker foregroundInstance;
+
+    private final SharedPreferences prefs;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGE_COUNT];
+    private final LatencyHistogram sendNow = new LatencyHistogram();
+    private final LatencyHistogram actionService = new LatencyHistogram();
+    private final LatencyHistogram actionBroadcast = new LatencyHistogram();
+
+    private long originNanos;
+    private long lastMarkNanos;
+    private long handoffNanos;
+    private long lastTotalMicros;
+    private long countdownTicks;
+    private long countdownNotifies;
+    private boolean active;
+    private boolean sentRecorded;
+    private boolean deliveredRecorded;
+
+    public static synchronized LatencyTracker get(Context context) {
+        if (instance == null) instance = new LatencyTracker(context.getApplicationContext(), PREFS_NAME);
+        return instance;
+    }
+
+    public static synchronized LatencyTracker getForeground(Context context) {
+        if (foregroundInstance == null) {
+            foregroundInstance = new LatencyTracker(context.getApplicationContext(), FOREGROUND_PREFS_NAME);
+        }
+        return foregroundInstance;
+    }
+
+    // Tests only: histograms would otherwise carry over from the previous test's application.
+    static synchronized void resetForTest() {
+        instance = null;
+        foregroundInstance = null;
+    }
+
+    private LatencyTracker(Context context, String prefsName) {
+        prefs = context.getSharedPreferences(prefsName, Context.MODE_PRIVATE);
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            histograms[i] = new LatencyHistogram();
+            histograms[i].decode(prefs.getString(STAGE_NAMES[i], null));
+        }
+        countdownTicks = prefs.getLong(KEY_COUNTDOWN_TICKS, 0);
+        countdownNotifies = prefs.getLong(KEY_COUNTDOWN_NOTIFIES, 0);
+        sendNow.decode(prefs.getString(KEY_SEND_NOW, null));
+        actionService.decode(prefs.getString(KEY_ACTION_SERVICE, null));
+        actionBroadcast.decode(prefs.getString(KEY_ACTION_BROADCAST, null));
+    }
+
+    // originNanos is the decisive sample's SensorEvent.timestamp (elapsedRealtimeNanos base),
+    // or "now" for triggers that have no sensor sample behind them.
+    public void begin(long originNanos) {
+        this.originNanos = originNanos;
+        lastMarkNanos = originNanos;
+        handoffNanos = 0;
+        active = true;
+        sentRecorded = false;
+        deliveredRecorded = false;
+    }
+
+    public void mark(int stage) {
+        mark(stage, SystemClock.elapsedRealtimeNanos());
+    }
+
+    public void mark(int stage, long nowNanos) {
+        if (!active) return;
+        histograms[stage].record((nowNanos - lastMarkNanos) / 1000);
+        lastMarkNanos = nowNanos;
+        if (stage == STAGE_HANDOFF) {
+            handoffNanos = nowNanos;
+            active = false;
+            lastTotalMicros = (nowNanos - originNanos) / 1000;
+            histograms[STAGE_TOTAL].record(lastTotalMicros);
+            save();
+        }
+    }
+
+    public void markSent() {
+        if (sentRecorded || handoffNanos == 0) return;
+        sentRecorded = true;
+        long now = SystemClock.elapsedRealtimeNanos();
+        histograms[STAGE_SENT].record((now - handoffNanos) / 1000);
+        save();
+    }
+
+    public void markDelivered() {
+        if (deliveredRecorded || handoffNanos == 0) return;
+        deliveredRecorded = true;
+        long now = SystemClock.elapsedRealtimeNanos();
+        histograms[STAGE_DELIVERED].record((now - handoffNanos) / 1000);
+        save();
+    }
+
+    // Binder cost of the countdown UI: notify() calls per one-second tick.
+    public void recordCountdown(int ticks, int notifyCalls) {
+        countdownTicks += ticks;
+        countdownNotifies += notifyCalls;
+        save();
+    }
+
+    // SEND NOW action reaching the service until the SMS is handed to the radio.
+    public void recordSendNow(long micros) {
+        sendNow.record(micros);
+        save();
+    }
+
+    // PendingIntent.send() until the intent arrives: the hop in front of sendNow, as a service start
+    // (what the notification actions use) or as a broadcast (what they used before).
+    public void recordActionDelivery(boolean broadcast, long micros) {
+        (broadcast ? actionBroadcast : actionService).record(micros);
+        save();
+    }
+
+    public boolean isEmpty() {
+        return histograms[STAGE_TOTAL].getCount() == 0;
+    }
+
+    public long getLastTotalMicros() {
+        return lastTotalMicros;
+    }
+
+    public void abort() {
+        active = false;
+    }
+
+    private void save() {
+        SharedPreferences.Editor editor = prefs.edit();
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            editor.putString(STAGE_NAMES[i], histograms[i].encode());
+        }
+        editor.putLong(KEY_COUNTDOWN_TICKS, countdownTicks);
+        editor.putLong(KEY_COUNTDOWN_NOTIFIES, countdownNotifies);
+        editor.putString(KEY_SEND_NOW, sendNow.encode());
+        editor.putString(KEY_ACTION_SERVICE, actionService.encode());
+        editor.putString(KEY_ACTION_BROADCAST, actionBroadcast.encode());
+        editor.apply();
+    }
+
+    public String formatSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < STAGE_COUNT; i++) appendRow(sb, STAGE_NAMES[i], histograms[i]);
+        if (sendNow.getCount() > 0) appendRow(sb, "sendNow", sendNow);
+        if (actionService.getCount() > 0) appendRow(sb, "piService", actionService);
+        if (actionBroadcast.getCount() > 0) appendRow(sb, "piBcast", actionBroadcast);
+        if (countdownTicks > 0) {
+            sb.append(String.format(Locale.US, "\n%-10s ticks=%d notify/tick=%.2f",
+                    "countdown", countdownTicks, countdownNotifies / (double) countdownTicks));
+        }
+        return sb.toString();
+    }
+
+    private static void appendRow(StringBuilder sb, String name, LatencyHistogram h) {
+        if (sb.length() > 0) sb.append('\n');
+        sb.append(String.format(Locale.US, "%-10s n=%-4d p50=%s p95=%s max=%s",
+                name, h.getCount(),
+                formatMicros(h.getPercentile(50)),
+                formatMicros(h.getPercentile(95)),
+                formatMicros(h.getMax())));
+    }
+
+    static String formatMicros(long micros) {
+        if (micros < 1000) return micros + "us";
+        if (micros < 1000000) return String.format(Locale.US, "%.1fms", micros / 1000.0);
+        return String.format(Locale.US, "%.2fs", micros / 1000000.0);
+    }
+}
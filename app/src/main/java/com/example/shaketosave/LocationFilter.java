@@ -0,0 +1,189 @@
+package com.example.shaketosave;
+
+// Constant-velocity Kalman filter over successive location fixes, run as two independent
+// position/velocity axes (east, north) in metres around the first fix. Each fix is weighted by its
+// reported accuracy, speed and bearing (when present) update the velocity, and estimateAt()
+// dead-reckons to the requested time. Every step is a handful of multiplications, no allocation.
+public class LocationFilter {
+
+    private static final double EARTH_RADIUS_M = 6_371_000.0;
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS_M * Math.PI / 180.0;
+    // Android's accuracy is the 68% horizontal radius; for a circular 2D Gaussian that is ~1.51 sigma.
+    private static final double RADIUS_68_PER_SIGMA = 1.51;
+    // Process noise: how hard the carrier can change velocity, in m/s^2 (brisk walking to city driving).
+    private static final double ACCEL_SIGMA = 1.5;
+    private static final double INITIAL_SPEED_SIGMA = 10.0;
+    private static final double SPEED_SIGMA = 1.0;
+    // Beyond this, extrapolating the last velocity does more harm than good.
+    private static final double MAX_DEAD_RECKON_S = 30.0;
+    // Fixes further apart than this start over instead of being fused.
+    private static final double MAX_GAP_S = 10 * 60.0;
+    private static final double RECENTER_M = 50_000.0;
+
+    private boolean initialized;
+    private boolean velocityKnown;
+    private double originLat;
+    private double originLng;
+    private double metersPerDegreeLng;
+    private long lastNanos;
+
+    // Per axis: position, velocity and the 2x2 covariance [p00 p01; p01 p11].
+    private final Axis east = new Axis();
+    private final Axis north = new Axis();
+
+    private double estimateLat;
+    private double estimateLng;
+    private float estimateAccuracy;
+
+    private static final class Axis {
+        double p;
+        double v;
+        double p00;
+        double p01;
+        double p11;
+
+        void reset(double position, double velocity, double positionVar, double velocityVar) {
+            p = position;
+            v = velocity;
+            p00 = positionVar;
+            p01 = 0;
+            p11 = velocityVar;
+        }
+
+        void predict(double dt, double q) {
+            p += v * dt;
+            double dt2 = dt * dt;
+            p00 += dt * (2 * p01 + dt * p11) + q * dt2 * dt2 / 4;
+            p01 += dt * p11 + q * dt2 * dt / 2;
+            p11 += q * dt2;
+        }
+
+        void updatePosition(double z, double r) {
+            double s = p00 + r;
+            double k0 = p00 / s;
+            double k1 = p01 / s;
+            double y = z - p;
+            p += k0 * y;
+            v += k1 * y;
+            p11 -= k1 * p01;
+            p01 *= 1 - k0;
+            p00 *= 1 - k0;
+        }
+
+        void updateVelocity(double z, double r) {
+            double s = p11 + r;
+            double k0 = p01 / s;
+            double k1 = p11 / s;
+            double y = z - v;
+            p += k0 * y;
+            v += k1 * y;
+            p00 -= k0 * p01;
+            p01 *= 1 - k1;
+            p11 *= 1 - k1;
+        }
+    }
+
+    public void reset() {
+        initialized = false;
+    }
+
+    public boolean hasEstimate() {
+        return initialized;
+    }
+
+    // timeNanos is the fix's elapsedRealtimeNanos. Fixes must arrive in time order; older ones are ignored.
+    public void onFix(long timeNanos, double latitude, double longitude, float accuracyMeters,
+                      boolean hasVelocity, float speedMps, float bearingDegrees) {
+        double sigma = Math.max(1.0, accuracyMeters) / RADIUS_68_PER_SIGMA;
+        double r = sigma * sigma;
+        double ve = 0;
+        double vn = 0;
+        if (hasVelocity) {
+            double bearing = Math.toRadians(bearingDegrees);
+            ve = speedMps * Math.sin(bearing);
+            vn = speedMps * Math.cos(bearing);
+        }
+
+        double dt = (timeNanos - lastNanos) / 1e9;
+        if (!initialized || dt > MAX_GAP_S) {
+            start(timeNanos, latitude, longitude, r, ve, vn, hasVelocity);
+            return;
+        }
+        if (dt < 0) return;
+
+        double x = (longitude - originLng) * metersPerDegreeLng;
+        double y = (latitude - originLat) * METERS_PER_DEGREE;
+        if (Math.abs(x) > RECENTER_M || Math.abs(y) > RECENTER_M) {
+            start(timeNanos, latitude, longitude, r, ve, vn, hasVelocity);
+            return;
+        }
+
+        double q = ACCEL_SIGMA * ACCEL_SIGMA;
+        east.predict(dt, q);
+        north.predict(dt, q);
+        east.updatePosition(x, r);
+        north.updatePosition(y, r);
+        if (hasVelocity) {
+            double rv = SPEED_SIGMA * SPEED_SIGMA;
+            east.updateVelocity(ve, rv);
+            north.updateVelocity(vn, rv);
+        }
+        lastNanos = timeNanos;
+        // Two positions are enough to tell a velocity.
+        velocityKnown = true;
+    }
+
+    private void start(long timeNanos, double latitude, double longitude, double r,
+                       double ve, double vn, boolean hasVelocity) {
+        originLat = latitude;
+        originLng = longitude;
+        metersPerDegreeLng = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+        double velocityVar = hasVelocity ? SPEED_SIGMA * SPEED_SIGMA : INITIAL_SPEED_SIGMA * INITIAL_SPEED_SIGMA;
+        east.reset(0, ve, r, velocityVar);
+        north.reset(0, vn, r, velocityVar);
+        lastNanos = timeNanos;
+        initialized = true;
+        velocityKnown = hasVelocity;
+    }
+
+    // Dead-reckons the filtered state to nowNanos without changing it; read the result with the getters.
+    public void estimateAt(long nowNanos) {
+        if (!initialized) return;
+        double dt = Math.max(0, Math.min(MAX_DEAD_RECKON_S, (nowNanos - lastNanos) / 1e9));
+        double q = ACCEL_SIGMA * ACCEL_SIGMA;
+        double dt2 = dt * dt;
+        double x = east.p + east.v * dt;
+        double y = north.p + north.v * dt;
+        double varX = east.p00 + dt * (2 * east.p01 + dt * east.p11) + q * dt2 * dt2 / 4;
+        double varY = north.p00 + dt * (2 * north.p01 + dt * north.p11) + q * dt2 * dt2 / 4;
+        estimateLat = originLat + y / METERS_PER_DEGREE;
+        estimateLng = originLng + x / metersPerDegreeLng;
+        estimateAccuracy = (float) (RADIUS_68_PER_SIGMA * Math.sqrt((varX + varY) / 2));
+    }
+
+    public double getLatitude() {
+        return estimateLat;
+    }
+
+    public double getLongitude() {
+        return estimateLng;
+    }
+
+    // Same meaning as Location.getAccuracy(): 68% horizontal radius in metres.
+    public float getAccuracyMeters() {
+        return estimateAccuracy;
+    }
+
+    // False until a fix reported a velocity or two fixes have been fused.
+    public boolean hasSpeed() {
+        return initialized && velocityKnown;
+    }
+
+    public float getSpeedMps() {
+        return (float) Math.sqrt(east.v * east.v + north.v * north.v);
+    }
+
+    public long getLastFixNanos() {
+        return lastNanos;
+    }
+}
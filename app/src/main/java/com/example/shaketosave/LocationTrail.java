@@ -0,0 +1,76 @@
+package com.example.shaketosave;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+// The last few hundred filtered positions, in fixed arrays so adding one never allocates. An SOS
+// email attaches them as a GPX track: where the sender came from, not just where they are.
+// Not thread-safe: fixes are added on the main thread, which hands a copy() to whoever writes it.
+public class LocationTrail {
+
+    public static final int CAPACITY = 360;
+
+    private final long[] times = new long[CAPACITY];
+    private final double[] lats = new double[CAPACITY];
+    private final double[] lngs = new double[CAPACITY];
+    private final float[] accuracies = new float[CAPACITY];
+    private int next;
+    private int size;
+
+    public void add(long wallMillis, double latitude, double longitude, float accuracyMeters) {
+        times[next] = wallMillis;
+        lats[next] = latitude;
+        lngs[next] = longitude;
+        accuracies[next] = accuracyMeters;
+        next = (next + 1) % CAPACITY;
+        if (size < CAPACITY) size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public LocationTrail copy() {
+        LocationTrail copy = new LocationTrail();
+        System.arraycopy(times, 0, copy.times, 0, CAPACITY);
+        System.arraycopy(lats, 0, copy.lats, 0, CAPACITY);
+        System.arraycopy(lngs, 0, copy.lngs, 0, CAPACITY);
+        System.arraycopy(accuracies, 0, copy.accuracies, 0, CAPACITY);
+        copy.next = next;
+        copy.size = size;
+        return copy;
+    }
+
+    // Oldest first. Returns false when there is nothing to write.
+    public boolean writeGpx(File file, String name) throws IOException {
+        if (size == 0) return false;
+        SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<gpx version=\"1.1\" creator=\"SafeShake\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
+            out.write("<trk><name>" + escape(name) + "</name><trkseg>\n");
+            int first = (next - size + CAPACITY) % CAPACITY;
+            for (int k = 0; k < size; k++) {
+                int i = (first + k) % CAPACITY;
+                out.write(String.format(Locale.US, "<trkpt lat=\"%.6f\" lon=\"%.6f\"><time>%s</time><desc>~%d m</desc></trkpt>\n",
+                        lats[i], lngs[i], iso.format(new Date(times[i])), Math.round(accuracies[i])));
+            }
+            out.write("</trkseg></trk>\n</gpx>\n");
+        }
+        return true;
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.shaketosave;
+
+import java.util.Locale;
+
+// Constant-memory statistics of acceleration magnitude: Welford mean/variance plus
+// P-square quantile estimators (Jain & Chlamtac) for the upper tail.
+public class MagnitudeStats {
+
+    private long count;
+    private double mean;
+    private double m2;
+    private final P2Quantile p99 = new P2Quantile(0.99);
+    private final P2Quantile p999 = new P2Quantile(0.999);
+
+    public void add(double x) {
+        count++;
+        double delta = x - mean;
+        mean += delta / count;
+        m2 += delta * (x - mean);
+        p99.add(x);
+        p999.add(x);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getStdDev() {
+        return count > 1 ? Math.sqrt(m2 / (count - 1)) : 0;
+    }
+
+    public double getP99() {
+        return p99.get();
+    }
+
+    public double getP999() {
+        return p999.get();
+    }
+
+    public String encode() {
+        return String.format(Locale.US, "%d;%s;%s;%s;%s", count, Double.toString(mean), Double.toString(m2),
+                p99.encode(), p999.encode());
+    }
+
+    // All or nothing: everything is parsed into temporaries first, so a bad field never leaves
+    // one estimator restored and the other at its default.
+    public void decode(String encoded) {
+        if (encoded == null || encoded.isEmpty()) return;
+        String[] parts = encoded.split(";");
+        if (parts.length != 5) return;
+        try {
+            long c = Long.parseLong(parts[0]);
+            double mu = Double.parseDouble(parts[1]);
+            double s2 = Double.parseDouble(parts[2]);
+            P2Quantile q99 = new P2Quantile(0.99);
+            P2Quantile q999 = new P2Quantile(0.999);
+            if (!q99.decode(parts[3]) || !q999.decode(parts[4])) return;
+            count = c;
+            mean = mu;
+            m2 = s2;
+            p99.copyFrom(q99);
+            p999.copyFrom(q999);
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    static class P2Quantile {
+
+        private final double p;
+        private final double[] heights = new double[5];
+        private final double[] positions = new double[5];
+        private final double[] desired = new double[5];
+        private final double[] increments;
+        private int seen;
+
+        P2Quantile(double p) {
+            this.p = p;
+            increments = new double[]{0, p / 2, p, (1 + p) / 2, 1};
+            reset();
+        }
+
+        private void reset() {
+            seen = 0;
+            for (int i = 0; i < 5; i++) positions[i] = i + 1;
+            desired[0] = 1;
+            desired[1] = 1 + 2 * p;
+            desired[2] = 1 + 4 * p;
+            desired[3] = 3 + 2 * p;
+            desired[4] = 5;
+        }
+
+        void add(double x) {
+            if (seen < 5) {
+                heights[seen++] = x;
+                if (seen == 5) java.util.Arrays.sort(heights);
+                return;
+            }
+            seen++;
+
+            int k;
+            if (x < heights[0]) {
+                heights[0] = x;
+                k = 0;
+            } else if (x >= heights[4]) {
+                heights[4] = x;
+                k = 3;
+            } else {
+                k = 0;
+                while (k < 3 && x >= heights[k + 1]) k++;
+            }
+
+            for (int i = k + 1; i < 5; i++) positions[i]++;
+            for (int i = 0; i < 5; i++) desired[i] += increments[i];
+
+            for (int i = 1; i < 4; i++) {
+                double d = desired[i] - positions[i];
+                if ((d >= 1 && positions[i + 1] - positions[i] > 1)
+                        || (d <= -1 && positions[i - 1] - positions[i] < -1)) {
+                    int step = d > 0 ? 1 : -1;
+                    double candidate = parabolic(i, step);
+                    if (heights[i - 1] < candidate && candidate < heights[i + 1]) {
+                        heights[i] = candidate;
+                    } else {
+                        heights[i] += step * (heights[i + step] - heights[i]) / (positions[i + step] - positions[i]);
+                    }
+                    positions[i] += step;
+                }
+            }
+        }
+
+        private double parabolic(int i, int d) {
+            return heights[i] + d / (positions[i + 1] - positions[i - 1])
+                    * ((positions[i] - positions[i - 1] + d) * (heights[i + 1] - heights[i]) / (positions[i + 1] - positions[i])
+                    + (positions[i + 1] - positions[i] - d) * (heights[i] - heights[i - 1]) / (positions[i] - positions[i - 1]));
+        }
+
+        double get() {
+            if (seen == 0) return 0;
+            if (seen < 5) {
+                double[] sorted = java.util.Arrays.copyOf(heights, seen);
+                java.util.Arrays.sort(sorted);
+                return sorted[(int) Math.min(seen - 1, Math.floor(p * seen))];
+            }
+            return heights[2];
+        }
+
+        void copyFrom(P2Quantile other) {
+            seen = other.seen;
+            System.arraycopy(other.heights, 0, heights, 0, 5);
+            System.arraycopy(other.positions, 0, positions, 0, 5);
+            System.arraycopy(other.desired, 0, desired, 0, 5);
+        }
+
+        String encode() {
+            StringBuilder sb = new StringBuilder().append(seen);
+            for (int i = 0; i < 5; i++) {
+                sb.append(',').append(heights[i]).append(',').append(positions[i]).append(',').append(desired[i]);
+            }
+            return sb.toString();
+        }
+
+        boolean decode(String encoded) {
+            String[] parts = encoded.split(",");
+            if (parts.length != 16) return false;
+            try {
+                double[] values = new double[15];
+                for (int i = 0; i < 15; i++) values[i] = Double.parseDouble(parts[i + 1]);
+                seen = Integer.parseInt(parts[0]);
+                for (int i = 0; i < 5; i++) {
+                    heights[i] = values[i * 3];
+                    positions[i] = values[i * 3 + 1];
+                    desired[i] = values[i * 3 + 2];
+                }
+                return true;
+            } catch (NumberFormatException e) {
+                reset();
+                return false;
+            }
+        }
+    }
+}
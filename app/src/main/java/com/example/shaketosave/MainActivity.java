@@ -2,8 +2,10 @@ package com.example.shaketosave;
 
 import android.Manifest;
 import android.app.AlertDialog;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.hardware.Sensor;
@@ -11,8 +13,13 @@ import android.hardware.SensorManager;
 import android.location.Location;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.CountDownTimer;
+import android.os.Handler;
+import android.os.IBinder;
 import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.os.SystemClock;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.telephony.SmsManager;
@@ -44,6 +51,8 @@ import com.google.android.material.button.MaterialButton;
 import com.google.android.material.switchmaterial.SwitchMaterial;
 import com.google.android.material.textfield.TextInputEditText;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity implements ShakeDetector.OnShakeListener {
@@ -52,22 +61,35 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
     private static final String KEY_PHONE = "emergency_phone";
     private static final String KEY_NAME = "user_name";
     private static final String KEY_SERVICE_ENABLED = "service_enabled";
+    private static final String KEY_DETECTOR_MODE = "detector_mode";
+    private static final String KEY_FALL_DETECTION = "fall_detection";
+    private static final String KEY_UPLOAD_ENDPOINT = "upload_endpoint";
+    private static final String KEY_EMAIL_TO = "email_to";
+    private static final String KEY_EMAIL_FROM = "email_from";
     private static final int SMS_PERMISSION_REQUEST = 1002;
     private static final int RECORD_AUDIO_PERMISSION_REQUEST = 1004;
     private static final int SHAKE_THRESHOLD = 2;
     private static final int COUNTDOWN_SECONDS = 5;
+    private static final long GESTURE_RECORD_MS = 3000;
+    private static final long[] SHAKE_PATTERN = {0, 200, 100, 200};
+    private static final long[] TICK_PATTERN = {0, 100};
+    private static final long[] SENT_PATTERN = {0, 100, 100, 100, 100, 100};
 
     private SensorManager sensorManager;
     private Sensor accelerometer;
     private ShakeDetector shakeDetector;
+    private AdaptiveSampler adaptiveSampler;
+    private GestureMatcher gestureMatcher;
+    private PlaceIndex placeIndex;
     private Vibrator vibrator;
     private FusedLocationProviderClient fusedLocationClient;
     private LocationCallback locationCallback;
 
-    private TextInputEditText editPhone, editName;
-    private SwitchMaterial switchShake;
-    private MaterialButton btnTestSOS;
-    private TextView statusText, locationText, sosPreview;
+    private TextInputEditText editPhone, editName, editUploadEndpoint;
+    private TextInputEditText editEmailTo, editEmailFrom, editEmailPassword;
+    private SwitchMaterial switchShake, switchFused, switchFall;
+    private MaterialButton btnTestSOS, btnRecordGesture, btnHistory, btnStopSharing;
+    private TextView statusText, locationText, sosPreview, latencyText, powerText, sensorText, memoryText, thresholdText;
     private View statusIndicator;
     private ImageView shakeIcon;
 
@@ -76,8 +98,44 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
     private double currentLongitude = 0.0;
     private boolean hasLocation = false;
     private boolean isSOSDialogShowing = false;
+    private boolean isRecordingGesture = false;
     private AlertDialog sosDialog;
-    private CountDownTimer countDownTimer;
+    private CountdownEngine countdownEngine;
+    private TextView countdownText;
+    private String[] countdownDigits;
+    private VibrationEffect shakeEffect;
+    private VibrationEffect tickEffect;
+    private VibrationEffect sentEffect;
+    private LatencyTracker latencyTracker;
+    private IncidentStore incidentStore;
+    private IncidentStore.Incident currentIncident;
+    private Messenger detectorService;
+
+    private final Messenger statusReplies = new Messenger(new Handler(Looper.getMainLooper(), msg -> {
+        if (msg.what == ShakeService.MSG_EVENT) {
+            showDetectorEvent(msg.arg1, msg.arg2);
+            return true;
+        }
+        if (msg.what != ShakeService.MSG_STATUS) return false;
+        showDetectorStatus(msg.getData());
+        return true;
+    }));
+
+    // Bound without BIND_AUTO_CREATE: connects only while protection is running in ":detector".
+    private final ServiceConnection detectorConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            detectorService = new Messenger(service);
+            sendToDetector(ShakeService.MSG_SUBSCRIBE);
+            requestDetectorStatus();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            detectorService = null;
+            showDetectorNotRunning();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -91,6 +149,8 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
             return insets;
         });
 
+        latencyTracker = LatencyTracker.getForeground(this);
+        incidentStore = IncidentStore.get(this);
         initViews();
         initSensors();
         initLocation();
@@ -141,13 +201,27 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
     private void initViews() {
         editPhone = findViewById(R.id.editPhone);
         editName = findViewById(R.id.editName);
+        editUploadEndpoint = findViewById(R.id.editUploadEndpoint);
+        editEmailTo = findViewById(R.id.editEmailTo);
+        editEmailFrom = findViewById(R.id.editEmailFrom);
+        editEmailPassword = findViewById(R.id.editEmailPassword);
         switchShake = findViewById(R.id.switchShake);
+        switchFused = findViewById(R.id.switchFused);
+        switchFall = findViewById(R.id.switchFall);
         btnTestSOS = findViewById(R.id.btnTestSOS);
+        btnRecordGesture = findViewById(R.id.btnRecordGesture);
+        btnHistory = findViewById(R.id.btnHistory);
+        btnStopSharing = findViewById(R.id.btnStopSharing);
         statusText = findViewById(R.id.statusText);
         statusIndicator = findViewById(R.id.statusIndicator);
         shakeIcon = findViewById(R.id.shakeIcon);
         locationText = findViewById(R.id.locationText);
         sosPreview = findViewById(R.id.sosPreview);
+        latencyText = findViewById(R.id.latencyText);
+        powerText = findViewById(R.id.powerText);
+        sensorText = findViewById(R.id.sensorText);
+        memoryText = findViewById(R.id.memoryText);
+        thresholdText = findViewById(R.id.thresholdText);
     }
 
     private void initSensors() {
@@ -155,10 +229,30 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
         accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
         shakeDetector = new ShakeDetector();
         shakeDetector.setOnShakeListener(this);
+        adaptiveSampler = new AdaptiveSampler(sensorManager, accelerometer, shakeDetector);
+        gestureMatcher = new GestureMatcher();
+        gestureMatcher.setOnShakeListener(this);
+        try {
+            gestureMatcher.load(getGesturesFile());
+        } catch (IOException ignored) {
+        }
+        adaptiveSampler.setGestureMatcher(gestureMatcher);
         vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            shakeEffect = VibrationEffect.createWaveform(SHAKE_PATTERN, -1);
+            tickEffect = VibrationEffect.createOneShot(100, VibrationEffect.DEFAULT_AMPLITUDE);
+            sentEffect = VibrationEffect.createWaveform(SENT_PATTERN, -1);
+        }
     }
 
     private void initLocation() {
+        File placeFile = new File(getFilesDir(), PlaceIndex.FILE_NAME);
+        if (placeFile.exists()) {
+            try {
+                placeIndex = PlaceIndex.open(placeFile);
+            } catch (IOException ignored) {
+            }
+        }
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
         locationCallback = new LocationCallback() {
             @Override
@@ -208,14 +302,97 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
         }
     }
 
+    private void updateDiagnosticsUI() {
+        if (detectorService == null) showDetectorNotRunning();
+        requestDetectorStatus();
+    }
+
+    // Threshold, power and sensor figures belong to the detector process. This process's cached
+    // copy of their prefs is stale, so without a live reply there is nothing current to show.
+    private void showDetectorNotRunning() {
+        String notRunning = getString(R.string.detector_not_running);
+        thresholdText.setText(notRunning);
+        latencyText.setText(latencyTracker.isEmpty() ? notRunning
+                : notRunning + "\n\nin-app countdown\n" + latencyTracker.formatSummary());
+        powerText.setText(notRunning);
+        sensorText.setText(notRunning);
+        memoryText.setText(MemoryStats.snapshot("ui"));
+    }
+
+    private void requestDetectorStatus() {
+        sendToDetector(ShakeService.MSG_GET_STATUS);
+    }
+
+    private void sendToDetector(int what) {
+        if (detectorService == null) return;
+        Message request = Message.obtain(null, what);
+        request.replyTo = statusReplies;
+        try {
+            detectorService.send(request);
+        } catch (RemoteException e) {
+            detectorService = null;
+        }
+    }
+
+    // Live SOS state from the detector process's event bus.
+    private void showDetectorEvent(int event, int arg) {
+        switch (event) {
+            case SosEventBus.EVENT_TRIGGERED:
+            case SosEventBus.EVENT_COUNTDOWN_TICK:
+                statusText.setText(event == SosEventBus.EVENT_COUNTDOWN_TICK
+                        ? getString(R.string.shake_status_countdown, arg)
+                        : getString(R.string.shake_status_sending));
+                statusText.setTextColor(ContextCompat.getColor(this, R.color.warning));
+                break;
+            case SosEventBus.EVENT_DISPATCHED:
+                statusText.setText(R.string.shake_status_sent);
+                statusText.setTextColor(ContextCompat.getColor(this, R.color.success));
+                btnStopSharing.setVisibility(View.VISIBLE);
+                requestDetectorStatus();
+                break;
+            case SosEventBus.EVENT_SHARING_STOPPED:
+                btnStopSharing.setVisibility(View.GONE);
+                break;
+            case SosEventBus.EVENT_DISPATCH_FAILED:
+                statusText.setText(R.string.shake_status_failed);
+                statusText.setTextColor(ContextCompat.getColor(this, R.color.sos_red));
+                break;
+            case SosEventBus.EVENT_CANCELLED:
+                updateStatusUI();
+                break;
+        }
+    }
+
+    private void showDetectorStatus(Bundle status) {
+        float threshold = status.getFloat(ShakeService.STATUS_THRESHOLD, ShakeCalibrator.DEFAULT_THRESHOLD_GRAVITY);
+        shakeDetector.setThreshold(threshold);
+        thresholdText.setText(String.format(Locale.US, "Shake threshold: %.2f g (%d samples)",
+                threshold, status.getLong(ShakeService.STATUS_THRESHOLD_SAMPLES)));
+        String latency = status.getString(ShakeService.STATUS_LATENCY);
+        if (!latencyTracker.isEmpty()) latency += "\n\nin-app countdown\n" + latencyTracker.formatSummary();
+        latencyText.setText(latency);
+        powerText.setText(status.getString(ShakeService.STATUS_POWER));
+        sensorText.setText(status.getString(ShakeService.STATUS_SENSOR));
+        memoryText.setText(status.getString(ShakeService.STATUS_MEMORY) + "\n" + MemoryStats.snapshot("ui"));
+        btnStopSharing.setVisibility(status.getBoolean(ShakeService.STATUS_SHARING) ? View.VISIBLE : View.GONE);
+    }
+
     private void loadSavedData() {
         SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
         editPhone.setText(prefs.getString(KEY_PHONE, ""));
         editName.setText(prefs.getString(KEY_NAME, ""));
+        editUploadEndpoint.setText(prefs.getString(KEY_UPLOAD_ENDPOINT, ""));
+        editEmailTo.setText(prefs.getString(KEY_EMAIL_TO, ""));
+        editEmailFrom.setText(prefs.getString(KEY_EMAIL_FROM, ""));
+        EmailPassword.migrate(this);
+        editEmailPassword.setText(EmailPassword.load(this));
 
         boolean serviceEnabled = prefs.getBoolean(KEY_SERVICE_ENABLED, false);
         switchShake.setChecked(serviceEnabled);
         isShakeEnabled = serviceEnabled;
+        switchFused.setChecked(ShakeService.DETECTOR_MODE_FUSED.equals(
+                prefs.getString(KEY_DETECTOR_MODE, ShakeService.DETECTOR_MODE_MAGNITUDE)));
+        switchFall.setChecked(prefs.getBoolean(KEY_FALL_DETECTION, false));
 
         updateSOSPreview();
     }
@@ -224,7 +401,11 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
         SharedPreferences.Editor editor = getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit();
         editor.putString(KEY_PHONE, getTextValue(editPhone));
         editor.putString(KEY_NAME, getTextValue(editName));
+        editor.putString(KEY_UPLOAD_ENDPOINT, getTextValue(editUploadEndpoint));
+        editor.putString(KEY_EMAIL_TO, getTextValue(editEmailTo));
+        editor.putString(KEY_EMAIL_FROM, getTextValue(editEmailFrom));
         editor.apply();
+        EmailPassword.save(this, getTextValue(editEmailPassword));
     }
 
     private void setupListeners() {
@@ -247,16 +428,94 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
             }
         });
 
-        btnTestSOS.setOnClickListener(v -> showSOSCountdownDialog());
+        switchFused.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit()
+                    .putString(KEY_DETECTOR_MODE, isChecked ? ShakeService.DETECTOR_MODE_FUSED : ShakeService.DETECTOR_MODE_MAGNITUDE)
+                    .apply();
+            if (isShakeEnabled) startShakeService();
+        });
+
+        switchFall.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit()
+                    .putBoolean(KEY_FALL_DETECTION, isChecked)
+                    .apply();
+            if (isShakeEnabled) startShakeService();
+        });
+
+        btnRecordGesture.setOnClickListener(v -> recordGesture());
+        btnRecordGesture.setOnLongClickListener(v -> {
+            gestureMatcher.clearTemplates();
+            saveGestures();
+            showToast(getString(R.string.gestures_cleared));
+            return true;
+        });
+
+        btnTestSOS.setOnClickListener(v -> {
+            latencyTracker.begin(SystemClock.elapsedRealtimeNanos());
+            showSOSCountdownDialog(TriggerFusion.SOURCE_MANUAL);
+        });
+
+        btnHistory.setOnClickListener(v -> startActivity(new Intent(this, HistoryActivity.class)));
+
+        // Only shown while the detector reports a follow-up session, so the service is running.
+        btnStopSharing.setOnClickListener(v -> startService(
+                new Intent(this, ShakeService.class).setAction(ShakeService.ACTION_STOP_SHARING)));
 
         editName.setOnFocusChangeListener((v, hasFocus) -> {
             if (!hasFocus) updateSOSPreview();
         });
     }
 
+    private File getGesturesFile() {
+        return new File(getFilesDir(), ShakeService.GESTURES_FILE);
+    }
+
+    private void recordGesture() {
+        registerShakeListener();
+        adaptiveSampler.requestBoost(GESTURE_RECORD_MS);
+        btnRecordGesture.setEnabled(false);
+        isRecordingGesture = true;
+        showToast(getString(R.string.gesture_recording));
+        gestureMatcher.startRecording(SystemClock.elapsedRealtimeNanos(), GESTURE_RECORD_MS, saved -> {
+            btnRecordGesture.setEnabled(true);
+            isRecordingGesture = false;
+            if (!isShakeEnabled) unregisterShakeListener();
+            if (!saved) {
+                showToast(getString(R.string.gesture_not_saved));
+                return;
+            }
+            saveGestures();
+            showToast(getString(R.string.gesture_saved, gestureMatcher.getTemplateCount()));
+        });
+    }
+
+    private void saveGestures() {
+        try {
+            gestureMatcher.save(getGesturesFile());
+        } catch (IOException e) {
+            showToast("Failed to save gesture: " + e.getMessage());
+        }
+        if (isShakeEnabled) startShakeService(true);
+    }
+
     private void startShakeService() {
+        startShakeService(false);
+    }
+
+    // Every start carries the current settings; the detector process applies them in place.
+    private void startShakeService(boolean reloadGestures) {
         saveData();
-        Intent serviceIntent = new Intent(this, ShakeService.class);
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        Intent serviceIntent = new Intent(this, ShakeService.class)
+                .putExtra(ShakeService.EXTRA_PHONE, prefs.getString(KEY_PHONE, ""))
+                .putExtra(ShakeService.EXTRA_NAME, prefs.getString(KEY_NAME, ""))
+                .putExtra(ShakeService.EXTRA_UPLOAD_ENDPOINT, prefs.getString(KEY_UPLOAD_ENDPOINT, ""))
+                .putExtra(ShakeService.EXTRA_EMAIL_TO, prefs.getString(KEY_EMAIL_TO, ""))
+                .putExtra(ShakeService.EXTRA_EMAIL_FROM, prefs.getString(KEY_EMAIL_FROM, ""))
+                .putExtra(ShakeService.EXTRA_DETECTOR_MODE,
+                        prefs.getString(KEY_DETECTOR_MODE, ShakeService.DETECTOR_MODE_MAGNITUDE))
+                .putExtra(ShakeService.EXTRA_FALL_DETECTION, prefs.getBoolean(KEY_FALL_DETECTION, false))
+                .putExtra(ShakeService.EXTRA_RELOAD_GESTURES, reloadGestures);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             startForegroundService(serviceIntent);
         } else {
@@ -298,32 +557,51 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
     }
 
     @Override
-    public void onShake(int count) {
+    public void onGesture(int templateIndex, float distance) {
         if (!isShakeEnabled || isSOSDialogShowing) return;
+        latencyTracker.begin(SystemClock.elapsedRealtimeNanos());
+        runOnUiThread(() -> showSOSCountdownDialog(TriggerFusion.SOURCE_GESTURE));
+    }
+
+    @Override
+    public void onShake(int count) {
+        if (!isShakeEnabled || isSOSDialogShowing || isRecordingGesture) return;
         if (count < SHAKE_THRESHOLD) return;
 
-        if (vibrator != null && vibrator.hasVibrator()) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                vibrator.vibrate(VibrationEffect.createWaveform(new long[]{0, 200, 100, 200}, -1));
-            } else {
-                vibrator.vibrate(new long[]{0, 200, 100, 200}, -1);
-            }
-        }
+        latencyTracker.begin(shakeDetector.getLastShakeSampleNanos());
+        latencyTracker.mark(LatencyTracker.STAGE_DETECT, shakeDetector.getLastShakeFiredNanos());
+        latencyTracker.mark(LatencyTracker.STAGE_DISPATCH);
+
+        vibrate(shakeEffect, SHAKE_PATTERN);
 
         Animation shake = AnimationUtils.loadAnimation(this, R.anim.shake);
         shakeIcon.startAnimation(shake);
 
-        runOnUiThread(this::showSOSCountdownDialog);
+        runOnUiThread(() -> showSOSCountdownDialog(TriggerFusion.SOURCE_SHAKE));
     }
 
-    private void showSOSCountdownDialog() {
+    private void showSOSCountdownDialog(int source) {
         if (isSOSDialogShowing) return;
-        if (!validateInputs()) return;
+        if (!validateInputs()) {
+            latencyTracker.abort();
+            return;
+        }
 
         isSOSDialogShowing = true;
+        currentIncident = new IncidentStore.Incident(System.currentTimeMillis(), source);
 
+        ensureSOSDialog();
+        countdownText.setText(countdownDigits[COUNTDOWN_SECONDS]);
+        sosDialog.show();
+        countdownEngine.start(COUNTDOWN_SECONDS);
+    }
+
+    // The dialog, its listeners and the countdown are built on first use and reused for every
+    // later trigger; a tick only swaps the preformatted digit.
+    private void ensureSOSDialog() {
+        if (sosDialog != null) return;
         View dialogView = LayoutInflater.from(this).inflate(R.layout.dialog_sos_countdown, null);
-        TextView countdownText = dialogView.findViewById(R.id.countdownText);
+        countdownText = dialogView.findViewById(R.id.countdownText);
         MaterialButton btnCancel = dialogView.findViewById(R.id.btnCancel);
         MaterialButton btnSendNow = dialogView.findViewById(R.id.btnSendNow);
 
@@ -335,39 +613,45 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
         btnCancel.setOnClickListener(v -> cancelSOS());
 
         btnSendNow.setOnClickListener(v -> {
-            if (countDownTimer != null) countDownTimer.cancel();
+            countdownEngine.cancel();
+            latencyTracker.mark(LatencyTracker.STAGE_COUNTDOWN);
             sendSOS();
             dismissSOSDialog();
         });
 
-        countDownTimer = new CountDownTimer(COUNTDOWN_SECONDS * 1000L, 1000) {
+        countdownDigits = new String[COUNTDOWN_SECONDS + 1];
+        for (int i = 0; i <= COUNTDOWN_SECONDS; i++) countdownDigits[i] = String.valueOf(i);
+
+        countdownEngine = new CountdownEngine(AndroidClock.INSTANCE, new CountdownEngine.Listener() {
             @Override
-            public void onTick(long millisUntilFinished) {
-                int secondsLeft = (int) (millisUntilFinished / 1000) + 1;
-                countdownText.setText(String.valueOf(secondsLeft));
-                if (vibrator != null && vibrator.hasVibrator()) {
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                        vibrator.vibrate(VibrationEffect.createOneShot(100, VibrationEffect.DEFAULT_AMPLITUDE));
-                    } else {
-                        vibrator.vibrate(100);
-                    }
-                }
+            public void onTick(int secondsLeft) {
+                countdownText.setText(countdownDigits[Math.min(secondsLeft, COUNTDOWN_SECONDS)]);
+                vibrate(tickEffect, TICK_PATTERN);
             }
 
             @Override
             public void onFinish() {
-                countdownText.setText("0");
+                countdownText.setText(countdownDigits[0]);
+                latencyTracker.mark(LatencyTracker.STAGE_COUNTDOWN);
                 sendSOS();
                 dismissSOSDialog();
             }
-        };
+        });
+    }
 
-        sosDialog.show();
-        countDownTimer.start();
+    private void vibrate(VibrationEffect effect, long[] legacyPattern) {
+        if (vibrator == null || !vibrator.hasVibrator()) return;
+        if (effect != null) {
+            vibrator.vibrate(effect);
+        } else {
+            vibrator.vibrate(legacyPattern, -1);
+        }
     }
 
     private void cancelSOS() {
-        if (countDownTimer != null) countDownTimer.cancel();
+        if (countdownEngine != null) countdownEngine.cancel();
+        latencyTracker.abort();
+        finishIncident(IncidentStore.OUTCOME_CANCELLED, null, 0, null);
         dismissSOSDialog();
         showToast(getString(R.string.sos_cancelled));
         updateStatusUI();
@@ -426,8 +710,19 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
             mapsLink = "Location unavailable";
         }
 
+        String place = null;
+        if (hasLocation && placeIndex != null) {
+            try {
+                place = placeIndex.describe(currentLatitude, currentLongitude);
+            } catch (RuntimeException ignored) {
+                // The link alone still gets the alert out.
+            }
+        }
+        if (place != null) mapsLink = place + " " + mapsLink;
+
         // Keep message short for SMS (160 char limit)
         String message = "SOS ALERT! I'm " + name + ", I need HELP! " + mapsLink;
+        latencyTracker.mark(LatencyTracker.STAGE_BUILD);
 
         try {
             SmsManager smsManager = SmsManager.getDefault();
@@ -440,25 +735,41 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
             } else {
                 smsManager.sendTextMessage(phone, null, message, null, null);
             }
+            latencyTracker.mark(LatencyTracker.STAGE_HANDOFF);
+            finishIncident(IncidentStore.OUTCOME_SENT, null, parts.size(), place);
+            updateDiagnosticsUI();
 
             statusText.setText(R.string.shake_status_sent);
             statusText.setTextColor(ContextCompat.getColor(this, R.color.success));
             showToast("SOS SMS sent to " + phone);
 
-            if (vibrator != null && vibrator.hasVibrator()) {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                    vibrator.vibrate(VibrationEffect.createWaveform(new long[]{0, 100, 100, 100, 100, 100}, -1));
-                } else {
-                    vibrator.vibrate(new long[]{0, 100, 100, 100, 100, 100}, -1);
-                }
-            }
+            vibrate(sentEffect, SENT_PATTERN);
         } catch (Exception e) {
+            latencyTracker.abort();
+            finishIncident(IncidentStore.OUTCOME_FAILED, e.getMessage(), 0, place);
             statusText.setText(R.string.shake_status_failed);
             statusText.setTextColor(ContextCompat.getColor(this, R.color.sos_red));
             showToast("Failed to send SMS: " + e.getMessage());
         }
     }
 
+    private void finishIncident(int outcome, String detail, int smsParts, String place) {
+        if (currentIncident == null) return;
+        IncidentStore.Incident incident = currentIncident;
+        currentIncident = null;
+        incident.outcome = outcome;
+        incident.detail = detail;
+        incident.smsParts = smsParts;
+        incident.place = place;
+        incident.hasLocation = hasLocation;
+        incident.latitude = currentLatitude;
+        incident.longitude = currentLongitude;
+        if (outcome == IncidentStore.OUTCOME_SENT) incident.latencyMicros = latencyTracker.getLastTotalMicros();
+        incidentStore.record(incident);
+        // The upload spool belongs to :detector; the record is handed over rather than written here.
+        UploadReceiver.enqueue(this, UploadBatch.incident(incident));
+    }
+
     private String getTextValue(TextInputEditText editText) {
         return editText.getText() != null ? editText.getText().toString().trim() : "";
     }
@@ -468,13 +779,11 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
     }
 
     private void registerShakeListener() {
-        if (accelerometer != null) {
-            sensorManager.registerListener(shakeDetector, accelerometer, SensorManager.SENSOR_DELAY_UI);
-        }
+        adaptiveSampler.start();
     }
 
     private void unregisterShakeListener() {
-        sensorManager.unregisterListener(shakeDetector);
+        adaptiveSampler.stop();
     }
 
     @Override
@@ -517,8 +826,10 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
     @Override
     protected void onResume() {
         super.onResume();
+        bindService(new Intent(this, ShakeService.class), detectorConnection, 0);
         if (isShakeEnabled) registerShakeListener();
         updateStatusUI();
+        updateDiagnosticsUI();
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION)
                 == PackageManager.PERMISSION_GRANTED) {
             startLocationUpdates();
@@ -528,6 +839,9 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
     @Override
     protected void onPause() {
         super.onPause();
+        sendToDetector(ShakeService.MSG_UNSUBSCRIBE);
+        unbindService(detectorConnection);
+        detectorService = null;
         unregisterShakeListener();
         saveData();
         if (isShakeEnabled) startShakeService();
@@ -536,7 +850,9 @@ public class MainActivity extends AppCompatActivity implements ShakeDetector.OnS
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (countDownTimer != null) countDownTimer.cancel();
+        incidentStore.flushNow(0);
+        if (countdownEngine != null) countdownEngine.cancel();
+        if (sosDialog != null) sosDialog.dismiss();
         fusedLocationClient.removeLocationUpdates(locationCallback);
     }
 }
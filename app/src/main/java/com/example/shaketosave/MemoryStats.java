@@ -0,0 +1,24 @@
+package com.example.shaketosave;
+
+import android.os.Debug;
+
+import java.util.Locale;
+
+// Resident size and ART GC counters of the calling process, so the detector and UI processes can
+// be compared side by side. Debug.getPss() walks the process maps; call it on demand only.
+public class MemoryStats {
+
+    public static String snapshot(String label) {
+        Runtime runtime = Runtime.getRuntime();
+        long usedBytes = runtime.totalMemory() - runtime.freeMemory();
+        return String.format(Locale.US, "%-8s pss=%.1fMB heap=%.1f/%.0fMB gc=%s (%sms) blocking=%s (%sms)",
+                label, Debug.getPss() / 1024.0, usedBytes / 1048576.0, runtime.maxMemory() / 1048576.0,
+                runtimeStat("art.gc.gc-count"), runtimeStat("art.gc.gc-time"),
+                runtimeStat("art.gc.blocking-gc-count"), runtimeStat("art.gc.blocking-gc-time"));
+    }
+
+    private static String runtimeStat(String name) {
+        String value = Debug.getRuntimeStat(name);
+        return value != null ? value : "?";
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.shaketosave;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Quantized MLP that confirms or rejects a shake candidate from the last second of accelerometer
+// samples. The detector feeds every sample into a fixed ring; features and inference run only when
+// a candidate fires. Weights are int8 with one float scale per layer, activations are int8,
+// accumulators int32, and every buffer is allocated at load time.
+//
+// File (big-endian): magic, version, featureCount, layerCount, feature means[], feature scales[],
+// inputScale, then per layer: in, out, weightScale, outputScale, int8 weights[out][in], int32 bias[out].
+// The APK ships the model MotionModelTrainer produces as assets/motion_model.bin; a file of the same
+// name downloaded by DataFiles replaces it.
+public class MotionClassifier {
+
+    public static final String FILE_NAME = "motion_model.bin";
+    static final int FILE_MAGIC = 0x53534d43;
+    static final int FILE_VERSION = 1;
+
+    static final int FEATURE_COUNT = 8;
+    static final int CLASS_REJECT = 0;
+    static final int CLASS_CONFIRM = 1;
+    private static final int WINDOW_CAPACITY = 128;
+    static final long WINDOW_NANOS = 1_000_000_000L;
+    private static final int MIN_WINDOW_SAMPLES = 8;
+
+    private final long[] times = new long[WINDOW_CAPACITY];
+    private final float[] xs = new float[WINDOW_CAPACITY];
+    private final float[] ys = new float[WINDOW_CAPACITY];
+    private final float[] zs = new float[WINDOW_CAPACITY];
+    private final float[] magnitudes = new float[WINDOW_CAPACITY];
+    private int head;
+    private int size;
+
+    private final float[] features = new float[FEATURE_COUNT];
+    private final float[] featureMeans;
+    private final float[] featureScales;
+    private final float inputScale;
+    private final Layer[] layers;
+    private final byte[][] activations;
+    private final float[] logits = new float[2];
+
+    private long evaluations;
+    private long rejections;
+
+    static final class Layer {
+        final int in;
+        final int out;
+        final float weightScale;
+        final float outputScale;
+        final byte[] weights;
+        final int[] bias;
+
+        Layer(int in, int out, float weightScale, float outputScale, byte[] weights, int[] bias) {
+            this.in = in;
+            this.out = out;
+            this.weightScale = weightScale;
+            this.outputScale = outputScale;
+            this.weights = weights;
+            this.bias = bias;
+        }
+    }
+
+    public static MotionClassifier load(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return load(in);
+        }
+    }
+
+    // Does not close the stream.
+    public static MotionClassifier load(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) throw new IOException("not a motion model");
+        int featureCount = in.readInt();
+        int layerCount = in.readInt();
+        if (featureCount != FEATURE_COUNT || layerCount < 1 || layerCount > 8) throw new IOException("bad model shape");
+        float[] means = new float[featureCount];
+        float[] scales = new float[featureCount];
+        for (int i = 0; i < featureCount; i++) means[i] = in.readFloat();
+        for (int i = 0; i < featureCount; i++) scales[i] = in.readFloat();
+        float inputScale = in.readFloat();
+        Layer[] layers = new Layer[layerCount];
+        int expectedIn = featureCount;
+        for (int l = 0; l < layerCount; l++) {
+            int layerIn = in.readInt();
+            int layerOut = in.readInt();
+            if (layerIn != expectedIn || layerOut < 1 || layerOut > 256) throw new IOException("bad layer shape");
+            float weightScale = in.readFloat();
+            float outputScale = in.readFloat();
+            byte[] weights = new byte[layerIn * layerOut];
+            in.readFully(weights);
+            int[] bias = new int[layerOut];
+            for (int o = 0; o < layerOut; o++) bias[o] = in.readInt();
+            layers[l] = new Layer(layerIn, layerOut, weightScale, outputScale, weights, bias);
+            expectedIn = layerOut;
+        }
+        if (expectedIn != 2) throw new IOException("model must output 2 classes");
+        return new MotionClassifier(means, scales, inputScale, layers);
+    }
+
+    public static void write(File file, float[] means, float[] scales, float inputScale, Layer[] layers) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(means.length);
+            out.writeInt(layers.length);
+            for (float v : means) out.writeFloat(v);
+            for (float v : scales) out.writeFloat(v);
+            out.writeFloat(inputScale);
+            for (Layer layer : layers) {
+                out.writeInt(layer.in);
+                out.writeInt(layer.out);
+                out.writeFloat(layer.weightScale);
+                out.writeFloat(layer.outputScale);
+                out.write(layer.weights);
+                for (int b : layer.bias) out.writeInt(b);
+            }
+        }
+    }
+
+    MotionClassifier(float[] featureMeans, float[] featureScales, float inputScale, Layer[] layers) {
+        this.featureMeans = featureMeans;
+        this.featureScales = featureScales;
+        this.inputScale = inputScale;
+        this.layers = layers;
+        activations = new byte[Math.max(1, layers.length)][];
+        activations[0] = new byte[FEATURE_COUNT];
+        for (int l = 1; l < layers.length; l++) activations[l] = new byte[layers[l].in];
+    }
+
+    // Feature extraction only, for collecting training windows before a model exists.
+    MotionClassifier() {
+        this(null, null, 0, new Layer[0]);
+    }
+
+    // Values in g.
+    public void onSample(long timestampNanos, float x, float y, float z) {
+        times[head] = timestampNanos;
+        xs[head] = x;
+        ys[head] = y;
+        zs[head] = z;
+        magnitudes[head] = (float) Math.sqrt(x * x + y * y + z * z);
+        head = (head + 1) % WINDOW_CAPACITY;
+        if (size < WINDOW_CAPACITY) size++;
+    }
+
+    // True when the window looks like a deliberate shake. With too little data it confirms:
+    // a missed SOS costs more than a countdown the user cancels.
+    public boolean confirm(long nowNanos) {
+        evaluations++;
+        if (layers.length == 0 || !extractFeatures(nowNanos, features)) return true;
+        classify(features);
+        boolean confirmed = logits[CLASS_CONFIRM] >= logits[CLASS_REJECT];
+        if (!confirmed) rejections++;
+        return confirmed;
+    }
+
+    void classify(float[] input) {
+        byte[] x = activations[0];
+        for (int i = 0; i < FEATURE_COUNT; i++) {
+            x[i] = quantize((input[i] - featureMeans[i]) / featureScales[i] / inputScale);
+        }
+        float xScale = inputScale;
+        for (int l = 0; l < layers.length; l++) {
+            Layer layer = layers[l];
+            byte[] weights = layer.weights;
+            boolean last = l == layers.length - 1;
+            byte[] next = last ? null : activations[l + 1];
+            // int32 accumulator -> real value -> next layer's int8 scale (ReLU folded into the clamp).
+            float toReal = layer.weightScale * xScale;
+            float requantize = last ? 0 : toReal / layer.outputScale;
+            for (int o = 0, row = 0; o < layer.out; o++, row += layer.in) {
+                int acc = layer.bias[o];
+                for (int i = 0; i < layer.in; i++) acc += weights[row + i] * x[i];
+                if (last) {
+                    logits[o] = acc * toReal;
+                } else {
+                    int q = Math.round(acc * requantize);
+                    next[o] = (byte) (q < 0 ? 0 : Math.min(q, 127));
+                }
+            }
+            if (!last) {
+                x = next;
+                xScale = layer.outputScale;
+            }
+        }
+    }
+
+    private static byte quantize(float value) {
+        int q = Math.round(value);
+        return (byte) (q < -127 ? -127 : Math.min(q, 127));
+    }
+
+    // Over the samples of the last WINDOW_NANOS: magnitude mean, spread, peak, share above 2 g,
+    // share below 0.5 g, crossing rate around the mean, mean jerk, and the share of motion energy
+    // along gravity (heel strikes and drops are vertical, a deliberate shake mostly is not).
+    boolean extractFeatures(long nowNanos, float[] out) {
+        int count = 0;
+        double sum = 0, sumSq = 0, max = 0;
+        double sx = 0, sy = 0, sz = 0;
+        int above = 0, below = 0;
+        long first = 0;
+        for (int n = 0, i = (head - 1 + WINDOW_CAPACITY) % WINDOW_CAPACITY; n < size;
+             n++, i = (i - 1 + WINDOW_CAPACITY) % WINDOW_CAPACITY) {
+            if (nowNanos - times[i] > WINDOW_NANOS) break;
+            float m = magnitudes[i];
+            sum += m;
+            sumSq += m * m;
+            if (m > max) max = m;
+            if (m > 2F) above++;
+            if (m < 0.5F) below++;
+            sx += xs[i];
+            sy += ys[i];
+            sz += zs[i];
+            first = times[i];
+            count++;
+        }
+        if (count < MIN_WINDOW_SAMPLES) return false;
+        double mean = sum / count;
+        double std = Math.sqrt(Math.max(0, sumSq / count - mean * mean));
+        // The window's mean vector approximates gravity.
+        double meanX = sx / count, meanY = sy / count, meanZ = sz / count;
+        double gNorm = Math.max(1e-6, Math.sqrt(meanX * meanX + meanY * meanY + meanZ * meanZ));
+        double gx = meanX / gNorm, gy = meanY / gNorm, gz = meanZ / gNorm;
+
+        int crossings = 0;
+        double jerk = 0;
+        double along = 0, total = 0;
+        int start = (head - count + WINDOW_CAPACITY) % WINDOW_CAPACITY;
+        for (int n = 0, i = start; n < count; n++, i = (i + 1) % WINDOW_CAPACITY) {
+            double dx = xs[i] - meanX, dy = ys[i] - meanY, dz = zs[i] - meanZ;
+            double projected = dx * gx + dy * gy + dz * gz;
+            along += projected * projected;
+            total += dx * dx + dy * dy + dz * dz;
+            if (n > 0) {
+                int prev = (i - 1 + WINDOW_CAPACITY) % WINDOW_CAPACITY;
+                if ((magnitudes[prev] - mean) * (magnitudes[i] - mean) < 0) crossings++;
+                long dt = times[i] - times[prev];
+                if (dt > 0) jerk += Math.abs(magnitudes[i] - magnitudes[prev]) * 1e9 / dt;
+            }
+        }
+        double spanSeconds = Math.max(1e-3, (nowNanos - first) / 1e9);
+        out[0] = (float) mean;
+        out[1] = (float) std;
+        out[2] = (float) max;
+        out[3] = above / (float) count;
+        out[4] = below / (float) count;
+        out[5] = (float) (crossings / spanSeconds);
+        out[6] = (float) (jerk / Math.max(1, count - 1));
+        out[7] = total > 0 ? (float) (along / total) : 0F;
+        return true;
+    }
+
+    float[] getLogits() {
+        return logits;
+    }
+
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    public long getRejections() {
+        return rejections;
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.shaketosave;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Offline reverse geocoder over a memory-mapped file of street points sorted by 30-bit geohash
+// cell (~600 m x 1.2 km at the equator). A lookup binary-searches the cells around the query, so it
+// touches a few pages of the file and never needs the network. Cells narrow towards the poles, so
+// the ring of longitude cells widens with 1/cos(latitude) to still cover the search radius.
+//
+// File layout (big-endian):
+//   int magic, int version, int recordCount, int namesOffset
+//   recordCount x { int cell, int latE6, int lngE6, int streetName, int districtName }
+//   names: { short byteLength, UTF-8 bytes }...
+public class PlaceIndex {
+
+    public static final String FILE_NAME = "places.idx";
+
+    private static final int MAGIC = 0x53535049;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 20;
+    private static final int CELL_BITS = 15;
+    private static final double CELL_LAT_DEGREES = 180.0 / (1 << CELL_BITS);
+    private static final double CELL_LNG_DEGREES = 360.0 / (1 << CELL_BITS);
+    private static final double MAX_DISTANCE_METERS = 500;
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * 6371000.0;
+    // Beyond ~89.5 degrees the ring is capped; the index holds street points, not polar stations.
+    private static final int MAX_LNG_RING = 64;
+
+    private final ByteBuffer buffer;
+    private final int recordCount;
+    private final int namesOffset;
+
+    public static class Place {
+        public final double latitude;
+        public final double longitude;
+        public final String street;
+        public final String district;
+
+        public Place(double latitude, double longitude, String street, String district) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.street = street;
+            this.district = district;
+        }
+    }
+
+    private PlaceIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a place index");
+        }
+        recordCount = buffer.getInt(8);
+        namesOffset = buffer.getInt(12);
+        if (recordCount < 0 || (long) HEADER_SIZE + (long) recordCount * RECORD_SIZE > namesOffset
+                || namesOffset > buffer.capacity()) {
+            throw new IOException("Corrupt place index");
+        }
+        checkRecords();
+    }
+
+    // describe() trusts the file: it binary-searches the cells and follows name offsets without
+    // bounds checks. One pass here makes a damaged or truncated file fail to open (and so never
+    // replace a working copy in DataFiles) instead of throwing in the middle of an SOS.
+    private void checkRecords() throws IOException {
+        int previousCell = Integer.MIN_VALUE;
+        for (int i = 0; i < recordCount; i++) {
+            int offset = HEADER_SIZE + i * RECORD_SIZE;
+            int cell = buffer.getInt(offset);
+            if (cell < previousCell) throw new IOException("Place index not sorted at record " + i);
+            previousCell = cell;
+            if (!isName(buffer.getInt(offset + 12)) || !isName(buffer.getInt(offset + 16))) {
+                throw new IOException("Bad name offset at record " + i);
+            }
+        }
+    }
+
+    private boolean isName(int offset) {
+        long position = (long) namesOffset + offset;
+        if (offset < 0 || position + 2 > buffer.capacity()) return false;
+        return position + 2 + (buffer.getShort((int) position) & 0xFFFF) <= buffer.capacity();
+    }
+
+    public static PlaceIndex open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new PlaceIndex(mapped);
+        }
+    }
+
+    public int size() {
+        return recordCount;
+    }
+
+    // Returns "near <street>, <district>" or null when nothing is indexed close enough.
+    public String describe(double latitude, double longitude) {
+        int best = -1;
+        // Compare squared equirectangular distances in micro-degrees; exact enough at this range.
+        double metersPerMicroDegree = Math.toRadians(1e-6) * 6371000.0;
+        double limit = MAX_DISTANCE_METERS / metersPerMicroDegree;
+        double bestDistance = limit * limit;
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        double queryLat = latitude * 1e6;
+        double queryLng = longitude * 1e6;
+        int lngRing = lngRing(cosLat);
+        for (int dLat = -1; dLat <= 1; dLat++) {
+            for (int dLng = -lngRing; dLng <= lngRing; dLng++) {
+                int cell = cellOf(latitude + dLat * CELL_LAT_DEGREES, longitude + dLng * CELL_LNG_DEGREES);
+                for (int i = lowerBound(cell); i < recordCount && cellAt(i) == cell; i++) {
+                    int offset = HEADER_SIZE + i * RECORD_SIZE;
+                    double y = buffer.getInt(offset + 4) - queryLat;
+                    double x = (buffer.getInt(offset + 8) - queryLng) * cosLat;
+                    double distance = x * x + y * y;
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = i;
+                    }
+                }
+            }
+        }
+        if (best < 0) return null;
+        int offset = HEADER_SIZE + best * RECORD_SIZE;
+        String street = readName(buffer.getInt(offset + 12));
+        String district = readName(buffer.getInt(offset + 16));
+        if (district.isEmpty()) return "near " + street;
+        return "near " + street + ", " + district;
+    }
+
+    static int lngRing(double cosLat) {
+        double cellWidth = CELL_LNG_DEGREES * METERS_PER_DEGREE * cosLat;
+        if (cellWidth * MAX_LNG_RING <= MAX_DISTANCE_METERS) return MAX_LNG_RING;
+        return Math.max(1, (int) Math.ceil(MAX_DISTANCE_METERS / cellWidth));
+    }
+
+    private int cellAt(int index) {
+        return buffer.getInt(HEADER_SIZE + index * RECORD_SIZE);
+    }
+
+    private int lowerBound(int cell) {
+        int lo = 0, hi = recordCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cellAt(mid) < cell) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private String readName(int offset) {
+        int position = namesOffset + offset;
+        int length = buffer.getShort(position) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) bytes[i] = buffer.get(position + 2 + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Interleaved (longitude first) geohash bits, as a non-negative int.
+    static int cellOf(double latitude, double longitude) {
+        int latBits = (int) Math.floor((latitude + 90.0) / CELL_LAT_DEGREES);
+        int lngBits = (int) Math.floor((longitude + 180.0) / CELL_LNG_DEGREES);
+        latBits = Math.max(0, Math.min((1 << CELL_BITS) - 1, latBits));
+        lngBits = ((lngBits % (1 << CELL_BITS)) + (1 << CELL_BITS)) % (1 << CELL_BITS);
+        int cell = 0;
+        for (int bit = CELL_BITS - 1; bit >= 0; bit--) {
+            cell = (cell << 1) | ((lngBits >>> bit) & 1);
+            cell = (cell << 1) | ((latBits >>> bit) & 1);
+        }
+        return cell;
+    }
+
+    public static void write(List<Place> places, File file) throws IOException {
+        List<Place> sorted = new ArrayList<>(places);
+        Collections.sort(sorted, (a, b) -> Integer.compare(cellOf(a.latitude, a.longitude), cellOf(b.latitude, b.longitude)));
+
+        Map<String, Integer> nameOffsets = new HashMap<>();
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        DataOutputStream namesOut = new DataOutputStream(names);
+        int[] streetOffsets = new int[sorted.size()];
+        int[] districtOffsets = new int[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            streetOffsets[i] = internName(sorted.get(i).street, nameOffsets, namesOut);
+            districtOffsets[i] = internName(sorted.get(i).district, nameOffsets, namesOut);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            out.writeInt(HEADER_SIZE + sorted.size() * RECORD_SIZE);
+            for (int i = 0; i < sorted.size(); i++) {
+                Place place = sorted.get(i);
+                out.writeInt(cellOf(place.latitude, place.longitude));
+                out.writeInt((int) Math.round(place.latitude * 1e6));
+                out.writeInt((int) Math.round(place.longitude * 1e6));
+                out.writeInt(streetOffsets[i]);
+                out.writeInt(districtOffsets[i]);
+            }
+            names.writeTo(out);
+        }
+    }
+
+    private static int internName(String name, Map<String, Integer> offsets, DataOutputStream out) throws IOException {
+        String value = name == null ? "" : name;
+        Integer existing = offsets.get(value);
+        if (existing != null) return existing;
+        int offset = out.size();
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) throw new IOException(String.format(Locale.US, "Name too long: %d bytes", bytes.length));
+        out.writeShort(bytes.length);
+        out.write(bytes);
+        offsets.put(value, offset);
+        return offset;
+    }
+}
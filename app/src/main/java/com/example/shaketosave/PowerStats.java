@@ -0,0 +1,281 @@
+package com.example.shaketosave;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Locale;
+
+public class PowerStats {
+
+    private static final String FILE_NAME = "power_stats.bin";
+    private static final int HOURS_KEPT = 24 * 7;
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+
+    public static final int SENSOR_EVENTS = 0;
+    public static final int SENSOR_BATCHES = 1;
+    public static final int LOCATION_REQUESTS_HIGH = 2;
+    public static final int LOCATION_REQUESTS_BALANCED = 3;
+    public static final int LOCATION_FIXES_HIGH = 4;
+    public static final int LOCATION_FIXES_BALANCED = 5;
+    public static final int RECOGNIZER_RESTARTS = 6;
+    public static final int WAKE_LOCKS = 7;
+    public static final int WAKE_LOCK_MS = 8;
+    // Wall time the (detector, location) mode was in effect during the hour.
+    public static final int ACTIVE_MS = 9;
+    static final int COUNTER_COUNT = 10;
+
+    private static final String[] COUNTER_NAMES = {
+            "sensorEvents", "batches", "locReqHigh", "locReqBal",
+            "fixHigh", "fixBal", "recogRestarts", "wakeLocks", "wakeLockMs", "activeMs"
+    };
+
+    public static final int MODE_DETECTOR_MAGNITUDE = 0;
+    public static final int MODE_DETECTOR_FUSED = 1;
+    public static final int MODE_LOCATION_HIGH = 0;
+    public static final int MODE_LOCATION_BALANCED = 1;
+
+    // Modes in effect for less than this are too short to extrapolate to an hourly rate.
+    private static final long MIN_REPORTED_MS = 60 * 1000L;
+
+    private static final String[] DETECTOR_MODE_NAMES = {"magnitude", "fused"};
+    private static final int MODE_SLOTS = 4 * 2;
+
+    // int hour, byte detectorMode, byte locationMode, then one int per counter
+    private static final int RECORD_SIZE = 4 + 1 + 1 + 4 * COUNTER_COUNT;
+
+    // Events arriving closer together than this are treated as one delivered batch.
+    private static final long BATCH_GAP_NANOS = 2_000_000L;
+
+    private static PowerStats instance;
+
+    private final File file;
+    // One counter set per mode for the running hour. Only modes that were in effect at some point
+    // in the hour are written, one record each, so an hour split between modes is split in the
+    // file too instead of being charged to whichever mode was active last.
+    private final long[][] counters = new long[MODE_SLOTS][COUNTER_COUNT];
+    private final boolean[] used = new boolean[MODE_SLOTS];
+    private int currentHour;
+    private int detectorMode = MODE_DETECTOR_MAGNITUDE;
+    private int locationMode = MODE_LOCATION_HIGH;
+    private int mode;
+    private long modeSinceMillis;
+    // Written only by the sensor thread, without the lock: running totals since construction.
+    // They are folded into the current mode's counters as deltas, under the lock, whenever the
+    // mode or hour changes or someone reads the counters.
+    private volatile long sensorEvents;
+    private volatile long sensorBatches;
+    private long lastSensorArrivalNanos;
+    private long foldedSensorEvents;
+    private long foldedSensorBatches;
+    private IncidentUploader uploader;
+
+    public static synchronized PowerStats get(Context context) {
+        if (instance == null) instance = new PowerStats(new File(context.getFilesDir(), FILE_NAME));
+        return instance;
+    }
+
+    // Tests only: the instance holds the previous test's files directory and uploader.
+    static synchronized void resetForTest() {
+        instance = null;
+    }
+
+    PowerStats(File file) {
+        this(file, System.currentTimeMillis());
+    }
+
+    PowerStats(File file, long nowMillis) {
+        this.file = file;
+        currentHour = hourOf(nowMillis);
+        modeSinceMillis = nowMillis;
+        used[mode] = true;
+        readHour();
+    }
+
+    // A restart within the hour picks up what the previous process checkpointed for it, so the
+    // next writeHour() adds to those slots instead of overwriting them. Time between the last
+    // checkpoint and the restart is lost, as for any hour without a checkpoint.
+    private void readHour() {
+        byte[] record = new byte[RECORD_SIZE];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            for (int m = 0; m < MODE_SLOTS; m++) {
+                long offset = ((long) (currentHour % HOURS_KEPT) * MODE_SLOTS + m) * RECORD_SIZE;
+                if (offset + RECORD_SIZE > raf.length()) break;
+                raf.seek(offset);
+                raf.readFully(record);
+                if (getInt(record, 0) != currentHour || slotOf(record[4] & 3, record[5] & 1) != m) continue;
+                for (int i = 0; i < COUNTER_COUNT; i++) counters[m][i] = getInt(record, 6 + i * 4);
+                used[m] = true;
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    // Each finished hour is also queued for upload.
+    public synchronized void setUploader(IncidentUploader uploader) {
+        this.uploader = uploader;
+    }
+
+    public synchronized void increment(int counter) {
+        counters[mode][counter]++;
+    }
+
+    public synchronized void add(int counter, long amount) {
+        counters[mode][counter] += amount;
+    }
+
+    // Sensor thread only; no lock per sample.
+    public void onSensorEvent(long arrivalNanos) {
+        sensorEvents++;
+        if (arrivalNanos - lastSensorArrivalNanos > BATCH_GAP_NANOS) sensorBatches++;
+        lastSensorArrivalNanos = arrivalNanos;
+    }
+
+    // Events since the last fold go to the mode in effect now, which is the mode they arrived in
+    // as long as mode changes are made on the sensor thread.
+    private void foldSensorEvents() {
+        long events = sensorEvents;
+        long batches = sensorBatches;
+        counters[mode][SENSOR_EVENTS] += events - foldedSensorEvents;
+        counters[mode][SENSOR_BATCHES] += batches - foldedSensorBatches;
+        foldedSensorEvents = events;
+        foldedSensorBatches = batches;
+    }
+
+    public void setModes(int detectorMode, int locationMode) {
+        setModes(detectorMode, locationMode, System.currentTimeMillis());
+    }
+
+    synchronized void setModes(int detectorMode, int locationMode, long nowMillis) {
+        if (detectorMode == this.detectorMode && locationMode == this.locationMode) return;
+        advance(nowMillis);
+        this.detectorMode = detectorMode;
+        this.locationMode = locationMode;
+        mode = slotOf(detectorMode, locationMode);
+        used[mode] = true;
+    }
+
+    public void checkpoint() {
+        checkpoint(System.currentTimeMillis());
+    }
+
+    // Writes the running hour into its slots of the ring file; rolls over when the hour changes.
+    synchronized void checkpoint(long nowMillis) {
+        advance(nowMillis);
+        writeHour();
+    }
+
+    // Charges the active time up to now to the current mode, rolling over at each hour boundary.
+    private void advance(long nowMillis) {
+        foldSensorEvents();
+        int hour = hourOf(nowMillis);
+        while (hour > currentHour) {
+            long hourEnd = (currentHour + 1) * HOUR_MS;
+            counters[mode][ACTIVE_MS] += Math.max(0, hourEnd - modeSinceMillis);
+            modeSinceMillis = hourEnd;
+            writeHour();
+            if (uploader != null) {
+                for (int m = 0; m < MODE_SLOTS; m++) {
+                    if (!used[m]) continue;
+                    uploader.enqueue(UploadBatch.metrics(currentHour * HOUR_MS, m / 2, m & 1, counters[m].clone()));
+                }
+            }
+            for (long[] c : counters) java.util.Arrays.fill(c, 0);
+            java.util.Arrays.fill(used, false);
+            used[mode] = true;
+            // Hours without a checkpoint (process dead, device asleep) are skipped, not guessed at.
+            currentHour = hour;
+            modeSinceMillis = Math.max(modeSinceMillis, hour * HOUR_MS);
+        }
+        counters[mode][ACTIVE_MS] += Math.max(0, nowMillis - modeSinceMillis);
+        modeSinceMillis = Math.max(modeSinceMillis, nowMillis);
+    }
+
+    private void writeHour() {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            for (int m = 0; m < MODE_SLOTS; m++) {
+                if (!used[m]) continue;
+                raf.seek(((long) (currentHour % HOURS_KEPT) * MODE_SLOTS + m) * RECORD_SIZE);
+                raf.write(record(currentHour, m, counters[m]));
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static byte[] record(int hour, int mode, long[] values) {
+        byte[] record = new byte[RECORD_SIZE];
+        putInt(record, 0, hour);
+        record[4] = (byte) (mode / 2);
+        record[5] = (byte) (mode & 1);
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            putInt(record, 6 + i * 4, (int) Math.min(Integer.MAX_VALUE, values[i]));
+        }
+        return record;
+    }
+
+    // Rates are per hour the mode was actually in effect, so modes used for minutes compare fairly
+    // with modes used all day.
+    public String formatSummary(int hours) {
+        return formatSummary(hours, System.currentTimeMillis());
+    }
+
+    synchronized String formatSummary(int hours, long now) {
+        advance(now);
+        int nowHour = hourOf(now);
+        long[][] totals = new long[MODE_SLOTS][COUNTER_COUNT];
+        byte[] record = new byte[RECORD_SIZE];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long slots = raf.length() / RECORD_SIZE;
+            for (int slot = 0; slot < slots; slot++) {
+                raf.seek((long) slot * RECORD_SIZE);
+                raf.readFully(record);
+                int hour = getInt(record, 0);
+                if (hour == currentHour || nowHour - hour >= hours || hour > nowHour) continue;
+                int m = slotOf(record[4] & 3, record[5] & 1);
+                for (int i = 0; i < COUNTER_COUNT; i++) totals[m][i] += getInt(record, 6 + i * 4);
+            }
+        } catch (IOException ignored) {
+        }
+        for (int m = 0; m < MODE_SLOTS; m++) {
+            if (!used[m]) continue;
+            for (int i = 0; i < COUNTER_COUNT; i++) totals[m][i] += counters[m][i];
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int m = 0; m < MODE_SLOTS; m++) {
+            long activeMs = totals[m][ACTIVE_MS];
+            if (activeMs < MIN_REPORTED_MS) continue;
+            int detector = m / 2;
+            double activeHours = activeMs / (double) HOUR_MS;
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(String.format(Locale.US, "detector=%s location=%s hours=%.2f",
+                    detector < DETECTOR_MODE_NAMES.length ? DETECTOR_MODE_NAMES[detector] : String.valueOf(detector),
+                    (m & 1) == MODE_LOCATION_HIGH ? "high" : "balanced", activeHours));
+            for (int i = 0; i < ACTIVE_MS; i++) {
+                sb.append(String.format(Locale.US, "\n  %-13s %.0f/h", COUNTER_NAMES[i], totals[m][i] / activeHours));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int slotOf(int detectorMode, int locationMode) {
+        return (detectorMode & 3) * 2 + (locationMode & 1);
+    }
+
+    private static int hourOf(long millis) {
+        return (int) (millis / HOUR_MS);
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static int getInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+}
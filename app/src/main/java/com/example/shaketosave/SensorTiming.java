@@ -0,0 +1,117 @@
+package com.example.shaketosave;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import java.util.Locale;
+
+// How late accelerometer samples reach us (arrival elapsedRealtimeNanos minus the event's own
+// timestamp, i.e. FIFO batching plus dispatch) and how unevenly they are spaced (change between
+// consecutive sample intervals), per sampling mode. Histograms are preallocated, so recording a
+// sample allocates nothing. Stats are tied to the device model and reset if it changes.
+public class SensorTiming {
+
+    private static final String PREFS_NAME = "SafeShakeSensorTiming";
+    private static final String KEY_MODEL = "model";
+
+    public static final int MODE_IDLE = 0;
+    public static final int MODE_BOOST = 1;
+    public static final int MODE_FUSED = 2;
+    static final int MODE_COUNT = 3;
+
+    private static final String[] MODE_NAMES = {"idle", "boost", "fused"};
+
+    private static SensorTiming instance;
+
+    private final SharedPreferences prefs;
+    private final String model;
+    private final LatencyHistogram[] latency = new LatencyHistogram[MODE_COUNT];
+    private final LatencyHistogram[] jitter = new LatencyHistogram[MODE_COUNT];
+    private int mode = MODE_IDLE;
+    private long lastTimestampNanos;
+    private long lastIntervalNanos;
+
+    public static synchronized SensorTiming get(Context context) {
+        if (instance == null) {
+            instance = new SensorTiming(context.getApplicationContext()
+                    .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE), Build.MANUFACTURER + " " + Build.MODEL);
+        }
+        return instance;
+    }
+
+    // Tests only: the instance holds the previous test's preferences.
+    static synchronized void resetForTest() {
+        instance = null;
+    }
+
+    SensorTiming(SharedPreferences prefs, String model) {
+        this.prefs = prefs;
+        this.model = model;
+        for (int i = 0; i < MODE_COUNT; i++) {
+            latency[i] = new LatencyHistogram();
+            jitter[i] = new LatencyHistogram();
+        }
+        if (prefs != null && model.equals(prefs.getString(KEY_MODEL, null))) {
+            for (int i = 0; i < MODE_COUNT; i++) {
+                latency[i].decode(prefs.getString(MODE_NAMES[i] + "_latency", null));
+                jitter[i].decode(prefs.getString(MODE_NAMES[i] + "_jitter", null));
+            }
+        }
+    }
+
+    // Intervals are not compared across a rate change.
+    public void setMode(int mode) {
+        if (mode == this.mode) return;
+        this.mode = mode;
+        lastTimestampNanos = 0;
+        lastIntervalNanos = 0;
+    }
+
+    public void onSample(long eventTimestampNanos, long arrivalNanos) {
+        latency[mode].record((arrivalNanos - eventTimestampNanos) / 1000);
+        if (lastTimestampNanos != 0) {
+            long interval = eventTimestampNanos - lastTimestampNanos;
+            if (lastIntervalNanos != 0) jitter[mode].record(Math.abs(interval - lastIntervalNanos) / 1000);
+            lastIntervalNanos = interval;
+        }
+        lastTimestampNanos = eventTimestampNanos;
+    }
+
+    LatencyHistogram getLatency(int mode) {
+        return latency[mode];
+    }
+
+    LatencyHistogram getJitter(int mode) {
+        return jitter[mode];
+    }
+
+    public void save() {
+        if (prefs == null) return;
+        SharedPreferences.Editor editor = prefs.edit();
+        editor.putString(KEY_MODEL, model);
+        for (int i = 0; i < MODE_COUNT; i++) {
+            editor.putString(MODE_NAMES[i] + "_latency", latency[i].encode());
+            editor.putString(MODE_NAMES[i] + "_jitter", jitter[i].encode());
+        }
+        editor.apply();
+    }
+
+    public String formatSummary() {
+        StringBuilder sb = new StringBuilder(model);
+        for (int i = 0; i < MODE_COUNT; i++) {
+            if (latency[i].getCount() == 0) continue;
+            append(sb, MODE_NAMES[i] + " lat", latency[i]);
+            append(sb, MODE_NAMES[i] + " jit", jitter[i]);
+        }
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String name, LatencyHistogram h) {
+        sb.append(String.format(Locale.US, "\n%-10s n=%-4d p50=%s p95=%s p99=%s",
+                name, h.getCount(),
+                LatencyTracker.formatMicros(h.getPercentile(50)),
+                LatencyTracker.formatMicros(h.getPercentile(95)),
+                LatencyTracker.formatMicros(h.getPercentile(99))));
+    }
+}
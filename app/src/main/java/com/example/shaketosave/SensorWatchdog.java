@@ -0,0 +1,168 @@
+package com.example.shaketosave;
+
+import java.util.Locale;
+
+// Detects when accelerometer events silently stop arriving (OEM power managers do this to
+// foreground services) and tries to bring them back: re-register the listener first, then rebuild
+// the whole detector, with the check interval backing off while the stream stays dead.
+// Silence is measured on the uptime clock so time spent in deep sleep is not counted as a stall.
+public class SensorWatchdog {
+
+    public static final String PREFS_NAME = "SafeShakeWatchdog";
+    public static final String KEY_METRICS = "metrics";
+    static final long CHECK_INTERVAL_MS = 5000;
+    static final long STALL_MS = 5000;
+    static final long MAX_BACKOFF_MS = 5 * 60 * 1000L;
+    static final int REARMS_BEFORE_RESTART = 2;
+
+    public interface Host {
+        // Unregister and register the sensor listener again.
+        void rearm();
+
+        // Tear down and rebuild the detector pipeline.
+        void restart();
+
+        void onStallChanged(boolean stalled);
+    }
+
+    private final Clock clock;
+    private final Host host;
+    private final Runnable check = this::check;
+    private final LatencyHistogram gaps = new LatencyHistogram();
+    private long lastSampleMs;
+    private long gapStartMs;
+    private boolean running;
+    private boolean stalled;
+    private int attempts;
+    private long stalls;
+    private long rearms;
+    private long restarts;
+    private long silentMs;
+
+    public SensorWatchdog(Clock clock, Host host) {
+        this.clock = clock;
+        this.host = host;
+    }
+
+    public void start() {
+        if (running) return;
+        running = true;
+        lastSampleMs = clock.uptimeMillis();
+        schedule(CHECK_INTERVAL_MS);
+    }
+
+    // A stall still open at shutdown is counted up to now.
+    public void stop() {
+        running = false;
+        clock.removeCallbacks(check);
+        if (stalled) {
+            stalled = false;
+            recordGap(clock.uptimeMillis());
+        }
+    }
+
+    // Called for every accelerometer event, so it only stores a timestamp unless a stall just ended.
+    public void onSample() {
+        lastSampleMs = clock.uptimeMillis();
+        if (stalled) onRecovered();
+    }
+
+    private void onRecovered() {
+        recordGap(lastSampleMs);
+        stalled = false;
+        attempts = 0;
+        host.onStallChanged(false);
+        if (running) {
+            clock.removeCallbacks(check);
+            schedule(CHECK_INTERVAL_MS);
+        }
+    }
+
+    private void recordGap(long endMs) {
+        long gapMs = endMs - gapStartMs;
+        gaps.record(gapMs * 1000);
+        silentMs += gapMs;
+    }
+
+    private void check() {
+        if (!running) return;
+        long now = clock.uptimeMillis();
+        long silence = now - lastSampleMs;
+        if (silence < STALL_MS) {
+            schedule(CHECK_INTERVAL_MS);
+            return;
+        }
+        if (!stalled) {
+            stalled = true;
+            stalls++;
+            gapStartMs = lastSampleMs;
+            host.onStallChanged(true);
+        }
+        if (attempts % (REARMS_BEFORE_RESTART + 1) < REARMS_BEFORE_RESTART) {
+            rearms++;
+            host.rearm();
+        } else {
+            restarts++;
+            host.restart();
+        }
+        attempts++;
+        schedule(getBackoffMs(attempts));
+    }
+
+    static long getBackoffMs(int attempts) {
+        return Math.min(MAX_BACKOFF_MS, CHECK_INTERVAL_MS << Math.min(attempts, 16));
+    }
+
+    private void schedule(long delayMs) {
+        clock.postAtTime(check, clock.uptimeMillis() + delayMs);
+    }
+
+    public boolean isStalled() {
+        return stalled;
+    }
+
+    public long getStallCount() {
+        return stalls;
+    }
+
+    public long getRearmCount() {
+        return rearms;
+    }
+
+    public long getRestartCount() {
+        return restarts;
+    }
+
+    public LatencyHistogram getGaps() {
+        return gaps;
+    }
+
+    public String encode() {
+        return stalls + ";" + rearms + ";" + restarts + ";" + silentMs + ";" + gaps.encode();
+    }
+
+    public void decode(String encoded) {
+        if (encoded == null) return;
+        String[] parts = encoded.split(";", 5);
+        if (parts.length < 5) return;
+        try {
+            stalls = Long.parseLong(parts[0]);
+            rearms = Long.parseLong(parts[1]);
+            restarts = Long.parseLong(parts[2]);
+            silentMs = Long.parseLong(parts[3]);
+            gaps.decode(parts[4]);
+        } catch (NumberFormatException e) {
+            stalls = rearms = restarts = silentMs = 0;
+            gaps.reset();
+        }
+    }
+
+    public String formatSummary() {
+        return String.format(Locale.US, "stalls=%d rearms=%d restarts=%d silent=%s\n%-10s n=%-4d p50=%s p95=%s max=%s",
+                stalls, rearms, restarts, LatencyTracker.formatMicros(silentMs * 1000),
+                "gap", gaps.getCount(),
+                LatencyTracker.formatMicros(gaps.getPercentile(50)),
+                LatencyTracker.formatMicros(gaps.getPercentile(95)),
+                LatencyTracker.formatMicros(gaps.getMax()));
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.shaketosave;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+public class ShakeCalibrator {
+
+    private static final String PREFS_NAME = "SafeShakeCalibration";
+    private static final String KEY_STATS = "magnitude_stats";
+    private static final String KEY_THRESHOLD = "shake_threshold";
+
+    public static final float DEFAULT_THRESHOLD_GRAVITY = 2.7F;
+    private static final float MIN_THRESHOLD_GRAVITY = 2.2F;
+    private static final float MAX_THRESHOLD_GRAVITY = 3.5F;
+    // Headroom above the 99.9th percentile of everyday motion.
+    private static final double TAIL_MARGIN = 1.25;
+    private static final double SIGMA_MARGIN = 8.0;
+    // The detector delivers 10-25 Hz idle and 50 Hz or more during boosts. Counting every event
+    // would let the 4 s boost windows, which follow exactly the unusual motion, dominate the
+    // background statistics; sampling on a fixed 10 Hz grid weights every second the same.
+    static final long SAMPLE_PERIOD_NANOS = 100_000_000L;
+    // About 1.5 hours of samples before the default is replaced.
+    static final long MIN_SAMPLES = 50_000;
+    private static final int RECOMPUTE_EVERY = 1024;
+
+    private final SharedPreferences prefs;
+    private final MagnitudeStats stats = new MagnitudeStats();
+    private float threshold;
+    private int sinceRecompute;
+    private long nextSampleNanos;
+
+    public ShakeCalibrator(Context context) {
+        this(context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+    }
+
+    ShakeCalibrator(SharedPreferences prefs) {
+        this.prefs = prefs;
+        if (prefs != null) {
+            stats.decode(prefs.getString(KEY_STATS, null));
+            threshold = prefs.getFloat(KEY_THRESHOLD, DEFAULT_THRESHOLD_GRAVITY);
+        } else {
+            threshold = DEFAULT_THRESHOLD_GRAVITY;
+        }
+    }
+
+    // Samples between grid points are skipped; after a gap (sensor off, device asleep) the grid
+    // restarts at the next sample instead of catching up.
+    public void addSample(long timestampNanos, float gForce) {
+        if (timestampNanos < nextSampleNanos) return;
+        nextSampleNanos = timestampNanos - nextSampleNanos > SAMPLE_PERIOD_NANOS
+                ? timestampNanos + SAMPLE_PERIOD_NANOS : nextSampleNanos + SAMPLE_PERIOD_NANOS;
+        stats.add(gForce);
+        if (++sinceRecompute >= RECOMPUTE_EVERY) {
+            sinceRecompute = 0;
+            threshold = computeThreshold(stats);
+        }
+    }
+
+    public float getThreshold() {
+        return threshold;
+    }
+
+    public long getSampleCount() {
+        return stats.getCount();
+    }
+
+    MagnitudeStats getStats() {
+        return stats;
+    }
+
+    public void save() {
+        if (prefs == null) return;
+        prefs.edit()
+                .putString(KEY_STATS, stats.encode())
+                .putFloat(KEY_THRESHOLD, threshold)
+                .apply();
+    }
+
+    static float computeThreshold(MagnitudeStats stats) {
+        if (stats.getCount() < MIN_SAMPLES) return DEFAULT_THRESHOLD_GRAVITY;
+        double tail = stats.getP999() * TAIL_MARGIN;
+        double spread = stats.getMean() + SIGMA_MARGIN * stats.getStdDev();
+        double candidate = Math.max(tail, spread);
+        return (float) Math.max(MIN_THRESHOLD_GRAVITY, Math.min(MAX_THRESHOLD_GRAVITY, candidate));
+    }
+}
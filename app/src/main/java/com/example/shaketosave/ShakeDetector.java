@@ -7,38 +7,95 @@ import android.hardware.SensorManager;
 
 public class ShakeDetector implements SensorEventListener {
 
-    private static final float SHAKE_THRESHOLD_GRAVITY = 2.7F;
     private static final int SHAKE_SLOP_TIME_MS = 500;
     private static final int SHAKE_COUNT_RESET_TIME_MS = 3000;
 
     private OnShakeListener listener;
+    private PowerStats powerStats;
+    private SensorWatchdog watchdog;
+    private SensorTiming timing;
+    private MotionClassifier classifier;
+    private ShakeCalibrator calibrator;
+    private Clock clock = AndroidClock.INSTANCE;
+    private float shakeThresholdGravity = ShakeCalibrator.DEFAULT_THRESHOLD_GRAVITY;
     private long shakeTimestamp;
     private int shakeCount;
+    private float lastGForce;
+    private long lastShakeSampleNanos;
+    private long lastShakeFiredNanos;
 
     public interface OnShakeListener {
         void onShake(int count);
+
+        default void onGesture(int templateIndex, float distance) {
+        }
     }
 
     public void setOnShakeListener(OnShakeListener listener) {
         this.listener = listener;
     }
 
+    public void setPowerStats(PowerStats powerStats) {
+        this.powerStats = powerStats;
+    }
+
+    public void setWatchdog(SensorWatchdog watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    public void setTiming(SensorTiming timing) {
+        this.timing = timing;
+    }
+
+    public void setClassifier(MotionClassifier classifier) {
+        this.classifier = classifier;
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public void setThreshold(float thresholdGravity) {
+        this.shakeThresholdGravity = thresholdGravity;
+    }
+
+    public float getThreshold() {
+        return shakeThresholdGravity;
+    }
+
+    public void setCalibrator(ShakeCalibrator calibrator) {
+        this.calibrator = calibrator;
+        if (calibrator != null) shakeThresholdGravity = calibrator.getThreshold();
+    }
+
     @Override
     public void onSensorChanged(SensorEvent event) {
-        if (listener == null) return;
-
-        float x = event.values[0];
-        float y = event.values[1];
-        float z = event.values[2];
+        long arrivalNanos = clock.elapsedRealtimeNanos();
+        if (powerStats != null) powerStats.onSensorEvent(arrivalNanos);
+        if (timing != null) timing.onSample(event.timestamp, arrivalNanos);
+        if (watchdog != null) watchdog.onSample();
+        onSample(event.timestamp, event.values[0], event.values[1], event.values[2]);
+    }
 
+    // Timing uses the sample's own timestamp, so slop/reset windows hold across sampling-rate changes.
+    void onSample(long timestampNanos, float x, float y, float z) {
         float gX = x / SensorManager.GRAVITY_EARTH;
         float gY = y / SensorManager.GRAVITY_EARTH;
         float gZ = z / SensorManager.GRAVITY_EARTH;
 
         float gForce = (float) Math.sqrt(gX * gX + gY * gY + gZ * gZ);
+        lastGForce = gForce;
+        final long now = timestampNanos / 1_000_000L;
+        if (classifier != null) classifier.onSample(timestampNanos, gX, gY, gZ);
+
+        // Background statistics exclude the samples of a shake sequence in progress.
+        if (calibrator != null && shakeTimestamp + SHAKE_COUNT_RESET_TIME_MS < now) {
+            calibrator.addSample(timestampNanos, gForce);
+            shakeThresholdGravity = calibrator.getThreshold();
+        }
+        if (listener == null) return;
 
-        if (gForce > SHAKE_THRESHOLD_GRAVITY) {
-            final long now = System.currentTimeMillis();
+        if (gForce > shakeThresholdGravity) {
             if (shakeTimestamp + SHAKE_SLOP_TIME_MS > now) {
                 return;
             }
@@ -47,10 +104,29 @@ public class ShakeDetector implements SensorEventListener {
             }
             shakeTimestamp = now;
             shakeCount++;
+            // A candidate trigger must look like a deliberate shake; otherwise this peak starts a new count.
+            if (shakeCount >= SosDispatcher.MIN_SHAKE_COUNT && classifier != null && !classifier.confirm(timestampNanos)) {
+                shakeCount = 1;
+                return;
+            }
+            lastShakeSampleNanos = timestampNanos;
+            lastShakeFiredNanos = clock.elapsedRealtimeNanos();
             listener.onShake(shakeCount);
         }
     }
 
+    public float getLastGForce() {
+        return lastGForce;
+    }
+
+    public long getLastShakeSampleNanos() {
+        return lastShakeSampleNanos;
+    }
+
+    public long getLastShakeFiredNanos() {
+        return lastShakeFiredNanos;
+    }
+
     @Override
     public void onAccuracyChanged(Sensor sensor, int accuracy) {
         // Not used
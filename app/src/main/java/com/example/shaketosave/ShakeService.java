@@ -1,6 +1,7 @@
 package com.example.shaketosave;
 
 import android.Manifest;
+import android.app.Activity;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
@@ -16,10 +17,17 @@ import android.hardware.Sensor;
 import android.hardware.SensorManager;
 import android.location.Location;
 import android.os.Build;
-import android.os.CountDownTimer;
+import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.telephony.SmsManager;
@@ -35,48 +43,183 @@ import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.location.Priority;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class ShakeService extends Service implements ShakeDetector.OnShakeListener {
+import javax.mail.MessagingException;
+
+public class ShakeService extends Service implements ShakeDetector.OnShakeListener, FallDetector.OnFallListener {
 
     private static final String CHANNEL_ID = "SafeShakeChannel";
     private static final String SOS_CHANNEL_ID = "SOSAlertChannel";
     private static final int NOTIFICATION_ID = 1001;
     private static final int SOS_NOTIFICATION_ID = 1002;
     private static final String PREFS_NAME = "SafeShakePrefs";
-    private static final int SHAKE_THRESHOLD = 2;
-    private static final int COUNTDOWN_SECONDS = 5;
+    private static final String KEY_DETECTOR_MODE = "detector_mode";
+    public static final String DETECTOR_MODE_MAGNITUDE = "magnitude";
+    public static final String DETECTOR_MODE_FUSED = "fused";
+    private static final String KEY_FALL_DETECTION = "fall_detection";
+    private static final String KEY_PHONE = "emergency_phone";
+    private static final String KEY_NAME = "user_name";
+    private static final String KEY_UPLOAD_ENDPOINT = "upload_endpoint";
+    private static final String KEY_EMAIL_TO = "email_to";
+    private static final String KEY_EMAIL_FROM = "email_from";
+    public static final String GESTURES_FILE = "gestures.bin";
+    private static final int COUNTDOWN_SECONDS = SosDispatcher.COUNTDOWN_SECONDS;
+
+    // The service runs in the ":detector" process. The UI passes settings as start-intent extras
+    // (its SharedPreferences writes are not visible to this process's cached copy) and reads
+    // status over a Messenger binding.
+    public static final String EXTRA_PHONE = "com.example.shaketosave.extra.PHONE";
+    public static final String EXTRA_NAME = "com.example.shaketosave.extra.NAME";
+    public static final String EXTRA_DETECTOR_MODE = "com.example.shaketosave.extra.DETECTOR_MODE";
+    public static final String EXTRA_FALL_DETECTION = "com.example.shaketosave.extra.FALL_DETECTION";
+    public static final String EXTRA_UPLOAD_ENDPOINT = "com.example.shaketosave.extra.UPLOAD_ENDPOINT";
+    public static final String EXTRA_EMAIL_TO = "com.example.shaketosave.extra.EMAIL_TO";
+    public static final String EXTRA_EMAIL_FROM = "com.example.shaketosave.extra.EMAIL_FROM";
+    public static final String EXTRA_RELOAD_GESTURES = "com.example.shaketosave.extra.RELOAD_GESTURES";
+    public static final int MSG_GET_STATUS = 1;
+    public static final int MSG_STATUS = 2;
+    // replyTo receives MSG_EVENT (arg1 = SosEventBus event, arg2 = its argument) until unsubscribed.
+    public static final int MSG_SUBSCRIBE = 3;
+    public static final int MSG_UNSUBSCRIBE = 4;
+    public static final int MSG_EVENT = 5;
+    public static final String STATUS_THRESHOLD = "threshold";
+    public static final String STATUS_THRESHOLD_SAMPLES = "threshold_samples";
+    public static final String STATUS_LATENCY = "latency";
+    public static final String STATUS_POWER = "power";
+    public static final String STATUS_SENSOR = "sensor";
+    public static final String STATUS_MEMORY = "memory";
+    public static final String STATUS_SHARING = "sharing";
+    private static final long STATS_CHECKPOINT_MS = 10 * 60 * 1000L;
+    private static final long INCIDENT_FLUSH_TIMEOUT_MS = 1000;
+    private static final long IDLE_LOCATION_INTERVAL_MS = 30000;
+    private static final long TRACKING_LOCATION_INTERVAL_MS = 5000;
+    private static final long SOS_WAKE_LOCK_TIMEOUT_MS = (COUNTDOWN_SECONDS + 30) * 1000L;
 
     public static final String ACTION_SEND_NOW = "com.example.shaketosave.SEND_NOW";
     public static final String ACTION_CANCEL_SOS = "com.example.shaketosave.CANCEL_SOS";
+    public static final String ACTION_VOICE_TRIGGER = "com.example.shaketosave.VOICE_TRIGGER";
+    public static final String ACTION_STOP_SHARING = "com.example.shaketosave.STOP_SHARING";
+    private static final String ACTION_PROBE_ACTION = "com.example.shaketosave.PROBE_ACTION";
+    private static final String ACTION_SMS_SENT = "com.example.shaketosave.SMS_SENT";
+    private static final String ACTION_SMS_DELIVERED = "com.example.shaketosave.SMS_DELIVERED";
+    private static final String EXTRA_INCIDENT_TOKEN = "com.example.shaketosave.extra.INCIDENT_TOKEN";
+    private static final String EXTRA_INCIDENT_STARTED_AT = "com.example.shaketosave.extra.INCIDENT_STARTED_AT";
 
     private SensorManager sensorManager;
     private Sensor accelerometer;
+    private Sensor gyroscope;
     private ShakeDetector shakeDetector;
+    private FusedGestureDetector fusedDetector;
+    private FallDetector fallDetector;
+    private GestureMatcher gestureMatcher;
+    private AdaptiveSampler adaptiveSampler;
+    private ShakeCalibrator shakeCalibrator;
+    private SensorWatchdog sensorWatchdog;
+    private SensorTiming sensorTiming;
     private Vibrator vibrator;
     private FusedLocationProviderClient fusedLocationClient;
     private LocationCallback locationCallback;
     private NotificationManager notificationManager;
-    private CountDownTimer countDownTimer;
+    private SosDispatcher dispatcher;
+    private NotificationCompat.Builder countdownBuilder;
+    private PendingIntent stopSharingPendingIntent;
+    private PendingIntent probeServiceIntent;
+    private PendingIntent probeBroadcastIntent;
+    private long probeServiceSentNanos;
+    private long probeBroadcastSentNanos;
+    private String[] countdownTitles;
+    private int countdownNotifyCalls;
+    private VibrationEffect triggerEffect;
+    private VibrationEffect tickEffect;
+    private VibrationEffect sentEffect;
     private Handler handler;
+    private LatencyTracker latencyTracker;
+    private final FollowUpPolicy followUpPolicy = new FollowUpPolicy();
+    private final LocationFilter locationFilter = new LocationFilter();
+    private final LocationTrail locationTrail = new LocationTrail();
+    // SMTP can take tens of seconds; it must not hold up the dispatcher or the main thread.
+    private final ExecutorService emailExecutor = Executors.newSingleThreadExecutor();
+    private PowerStats powerStats;
+    private PowerManager.WakeLock sosWakeLock;
+    private PlaceIndex placeIndex;
+    private long placeIndexModified;
+    private MotionClassifier motionClassifier;
+    private long motionClassifierModified;
+    private IncidentStore incidentStore;
+    private IncidentUploader uploader;
+    private final SosEventBus eventBus = SosEventBus.get();
+    private final CopyOnWriteArrayList<Messenger> eventClients = new CopyOnWriteArrayList<>();
+    private long sendNowNanos;
+    private boolean started;
+    private IncidentStore.Incident currentIncident;
+    private final Random incidentTokens = new Random();
+    private long sosWakeLockAcquiredAt;
 
     private double currentLatitude = 0.0;
     private double currentLongitude = 0.0;
+    private float currentAccuracy;
     private boolean hasLocation = false;
-    private boolean isSendingSOS = false;
-    private boolean isCountingDown = false;
+    private boolean locationRequested = false;
+    private boolean highAccuracyLocation = false;
+    private int detectorPowerMode = PowerStats.MODE_DETECTOR_MAGNITUDE;
+    private String followUpPhone;
+    private String followUpName;
+    private String outgoingName;
+    private String outgoingPlace;
+    private String configPhone;
+    private String configName;
+    private String configDetectorMode;
+    private boolean configFallDetection;
+    private String configEmailTo;
+    private String configEmailFrom;
+
+    private HandlerThread ipcThread;
+    private Messenger messenger;
+
+    private final Runnable statsCheckpoint = new Runnable() {
+        @Override
+        public void run() {
+            powerStats.checkpoint();
+            shakeCalibrator.save();
+            saveWatchdogMetrics();
+            sensorTiming.save();
+            initPlaceIndex();
+            initMotionClassifier();
+            handler.postDelayed(this, STATS_CHECKPOINT_MS);
+        }
+    };
 
     private BroadcastReceiver sosActionReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
             String action = intent.getAction();
-            if (ACTION_SEND_NOW.equals(action)) {
-                cancelCountdown();
-                sendSOS();
-            } else if (ACTION_CANCEL_SOS.equals(action)) {
-                cancelSOS();
+            if (ACTION_PROBE_ACTION.equals(action)) {
+                if (probeBroadcastSentNanos != 0) {
+                    latencyTracker.recordActionDelivery(true, (SystemClock.elapsedRealtimeNanos() - probeBroadcastSentNanos) / 1000);
+                    probeBroadcastSentNanos = 0;
+                }
+            } else if (ACTION_SMS_SENT.equals(action)) {
+                if (getResultCode() == Activity.RESULT_OK) {
+                    latencyTracker.markSent();
+                    updateDelivery(intent, IncidentStore.DELIVERY_SENT);
+                } else {
+                    updateDelivery(intent, IncidentStore.DELIVERY_ERROR);
+                }
+            } else if (ACTION_SMS_DELIVERED.equals(action)) {
+                if (getResultCode() == Activity.RESULT_OK) {
+                    latencyTracker.markDelivered();
+                    updateDelivery(intent, IncidentStore.DELIVERY_DELIVERED);
+                }
             }
         }
     };
@@ -85,17 +228,96 @@ public class ShakeService extends Service implements ShakeDetector.OnShakeListen
     public void onCreate() {
         super.onCreate();
         handler = new Handler(Looper.getMainLooper());
+        latencyTracker = LatencyTracker.get(this);
+        powerStats = PowerStats.get(this);
+        sensorTiming = SensorTiming.get(this);
+        incidentStore = IncidentStore.get(this);
+        uploader = IncidentUploader.get(this);
+        powerStats.setUploader(uploader);
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        sosWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "SafeShake:sos");
+        sosWakeLock.setReferenceCounted(false);
+        handler.postDelayed(statsCheckpoint, STATS_CHECKPOINT_MS);
         notificationManager = getSystemService(NotificationManager.class);
         createNotificationChannels();
+        // Status requests are served off the main thread: building them reads files and walks the
+        // process maps, and the main looper is where sensor events arrive. The summaries tolerate
+        // a counter changing while it is being formatted.
+        ipcThread = new HandlerThread("SafeShake:ipc", Process.THREAD_PRIORITY_BACKGROUND);
+        ipcThread.start();
+        messenger = new Messenger(new Handler(ipcThread.getLooper(), this::handleIpcMessage));
+        loadConfig();
+        initCountdown();
+        initWatchdog();
         initSensors();
         initLocation();
+        initPlaceIndex();
         registerSOSReceiver();
+        eventBus.subscribe(busSubscriber);
+    }
+
+    // The index is downloaded by the upload job (DataFiles); until then SOS messages carry only the link.
+    // A missing file asks for a job only while DataFiles has a check due, so a deployment that
+    // publishes no index (or a failing fetch) costs one job per check interval, not one per checkpoint.
+    private void initPlaceIndex() {
+        File file = new File(getFilesDir(), PlaceIndex.FILE_NAME);
+        if (!file.exists()) {
+            if (DataFiles.isCheckDue(this)) UploadJobService.schedule(this);
+            return;
+        }
+        long modified = file.lastModified();
+        if (placeIndex != null && modified == placeIndexModified) return;
+        try {
+            placeIndex = PlaceIndex.open(file);
+            placeIndexModified = modified;
+        } catch (IOException e) {
+            placeIndex = null;
+        }
+    }
+
+    // The place is a nicety on top of the link; nothing about the index may stop the alert.
+    private String describePlace() {
+        if (!hasLocation || placeIndex == null) return null;
+        try {
+            return placeIndex.describe(currentLatitude, currentLongitude);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // The APK bundles a model; one downloaded next to the place index (DataFiles) is an update that
+    // replaces it, also in the running detector. Only if neither loads is every threshold candidate
+    // trusted as before.
+    private void initMotionClassifier() {
+        File file = new File(getFilesDir(), MotionClassifier.FILE_NAME);
+        long modified = file.exists() ? file.lastModified() : 0;
+        if (motionClassifier != null && modified == motionClassifierModified) return;
+        MotionClassifier loaded = null;
+        if (modified != 0) {
+            try {
+                loaded = MotionClassifier.load(file);
+            } catch (IOException ignored) {
+                // Keep what is running, or fall back to the bundled model below.
+            }
+        }
+        if (loaded == null && motionClassifier != null) return;
+        if (loaded == null) {
+            try (InputStream in = getAssets().open(MotionClassifier.FILE_NAME)) {
+                loaded = MotionClassifier.load(in);
+            } catch (IOException e) {
+                return;
+            }
+        }
+        motionClassifier = loaded;
+        motionClassifierModified = modified;
+        if (shakeDetector != null) shakeDetector.setClassifier(motionClassifier);
     }
 
     private void registerSOSReceiver() {
         IntentFilter filter = new IntentFilter();
-        filter.addAction(ACTION_SEND_NOW);
-        filter.addAction(ACTION_CANCEL_SOS);
+        filter.addAction(ACTION_PROBE_ACTION);
+        filter.addAction(ACTION_SMS_SENT);
+        filter.addAction(ACTION_SMS_DELIVERED);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
             registerReceiver(sosActionReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
         } else {
@@ -103,11 +325,104 @@ public class ShakeService extends Service implements ShakeDetector.OnShakeListen
         }
     }
 
+    // SEND NOW / CANCEL from the countdown notification arrive here straight from the PendingIntent
+    // and go onto the bus without touching configuration, sensors or location.
+    private boolean publishAction(@Nullable Intent intent) {
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_SEND_NOW.equals(action)) {
+            eventBus.publish(SosEventBus.EVENT_SEND_NOW, 0);
+            return true;
+        }
+        if (ACTION_CANCEL_SOS.equals(action)) {
+            eventBus.publish(SosEventBus.EVENT_CANCEL, 0);
+            return true;
+        }
+        if (ACTION_STOP_SHARING.equals(action)) {
+            eventBus.publish(SosEventBus.EVENT_STOP_SHARING, 0);
+            return true;
+        }
+        if (ACTION_PROBE_ACTION.equals(action)) {
+            if (probeServiceSentNanos != 0) {
+                latencyTracker.recordActionDelivery(false, (SystemClock.elapsedRealtimeNanos() - probeServiceSentNanos) / 1000);
+                probeServiceSentNanos = 0;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // The click itself happens in SystemUI and carries no timestamp (the action intents are
+    // immutable), so the sendNow histogram starts in onStartCommand. What it leaves out is the
+    // PendingIntent hop, measured here: when a countdown starts, the same kind of PendingIntent
+    // the SEND NOW action holds is sent once to this service, and once the old way as a package
+    // broadcast for comparison. Both land on the main thread, like the real action. A probe that
+    // never arrived is simply overwritten by the next countdown's.
+    private void probeActionDelivery() {
+        try {
+            probeServiceSentNanos = SystemClock.elapsedRealtimeNanos();
+            probeServiceIntent.send();
+            probeBroadcastSentNanos = SystemClock.elapsedRealtimeNanos();
+            probeBroadcastIntent.send();
+        } catch (PendingIntent.CanceledException e) {
+            probeServiceSentNanos = 0;
+            probeBroadcastSentNanos = 0;
+        }
+    }
+
+    private final SosEventBus.Subscriber busSubscriber = (event, arg, timeNanos) -> {
+        switch (event) {
+            case SosEventBus.EVENT_SEND_NOW:
+                sendNowNanos = timeNanos;
+                dispatcher.onTrigger(TriggerFusion.SOURCE_MANUAL, timeNanos, 0);
+                break;
+            case SosEventBus.EVENT_CANCEL:
+                dispatcher.cancel();
+                break;
+            case SosEventBus.EVENT_STOP_SHARING:
+                if (followUpPolicy.isActive(System.currentTimeMillis())) {
+                    stopFollowUpSession();
+                    // The result notification still offers the action; a countdown notification is left alone.
+                    if (!dispatcher.isCountingDown()) dismissSOSNotification();
+                }
+                break;
+            case SosEventBus.EVENT_DISPATCHED:
+                if (sendNowNanos != 0) latencyTracker.recordSendNow((timeNanos - sendNowNanos) / 1000);
+                sendNowNanos = 0;
+                break;
+            case SosEventBus.EVENT_DISPATCH_FAILED:
+            case SosEventBus.EVENT_CANCELLED:
+                sendNowNanos = 0;
+                break;
+        }
+        forwardEvent(event, arg);
+    };
+
+    // One-way binder calls to the UI process; a client that died is dropped.
+    private void forwardEvent(int event, long arg) {
+        for (Messenger client : eventClients) {
+            try {
+                client.send(Message.obtain(null, MSG_EVENT, event, (int) arg));
+            } catch (RemoteException e) {
+                eventClients.remove(client);
+            }
+        }
+    }
+
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        if (started && publishAction(intent)) return START_STICKY;
         startForeground(NOTIFICATION_ID, createNotification());
+        if (applyConfig(intent)) rebuildDetector();
         registerShakeListener();
+        if (accelerometer != null) sensorWatchdog.start();
         startLocationUpdates();
+        if (intent != null && ACTION_VOICE_TRIGGER.equals(intent.getAction())) {
+            dispatcher.onTrigger(TriggerFusion.SOURCE_VOICE, SystemClock.elapsedRealtimeNanos(), 0);
+        }
+        if (!started) {
+            started = true;
+            publishAction(intent);
+        }
         return START_STICKY;
     }
 
@@ -135,18 +450,173 @@ public class ShakeService extends Service implements ShakeDetector.OnShakeListen
 
         return new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setContentTitle("SafeShake Active")
-                .setContentText("Protection is running. Shake to send SOS.")
+                .setContentText(sensorWatchdog.isStalled()
+                        ? "Motion sensor stopped responding, restarting it…"
+                        : "Protection is running. Shake to send SOS.")
                 .setSmallIcon(R.drawable.ic_shield)
                 .setContentIntent(pendingIntent)
                 .setOngoing(true)
                 .build();
     }
 
+    private void initWatchdog() {
+        sensorWatchdog = new SensorWatchdog(AndroidClock.INSTANCE, new SensorWatchdog.Host() {
+            @Override
+            public void rearm() {
+                unregisterShakeListener();
+                registerShakeListener();
+            }
+
+            @Override
+            public void restart() {
+                rebuildDetector();
+                registerShakeListener();
+            }
+
+            @Override
+            public void onStallChanged(boolean stalled) {
+                // Don't keep claiming protection is running while no samples arrive.
+                notificationManager.notify(NOTIFICATION_ID, createNotification());
+                if (!stalled) saveWatchdogMetrics();
+            }
+        });
+        sensorWatchdog.decode(getSharedPreferences(SensorWatchdog.PREFS_NAME, MODE_PRIVATE)
+                .getString(SensorWatchdog.KEY_METRICS, null));
+    }
+
+    private void saveWatchdogMetrics() {
+        getSharedPreferences(SensorWatchdog.PREFS_NAME, MODE_PRIVATE).edit()
+                .putString(SensorWatchdog.KEY_METRICS, sensorWatchdog.encode())
+                .apply();
+    }
+
+    private void loadConfig() {
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        configPhone = prefs.getString(KEY_PHONE, "");
+        configName = prefs.getString(KEY_NAME, "");
+        configDetectorMode = prefs.getString(KEY_DETECTOR_MODE, DETECTOR_MODE_MAGNITUDE);
+        configFallDetection = prefs.getBoolean(KEY_FALL_DETECTION, false);
+        uploader.setEndpoint(this, prefs.getString(KEY_UPLOAD_ENDPOINT, ""));
+        configEmailTo = prefs.getString(KEY_EMAIL_TO, "");
+        configEmailFrom = prefs.getString(KEY_EMAIL_FROM, "");
+    }
+
+    // Returns true when a detection setting changed and the detector has to be rebuilt.
+    private boolean applyConfig(@Nullable Intent intent) {
+        if (intent == null || !intent.hasExtra(EXTRA_DETECTOR_MODE)) return false;
+        configPhone = intent.getStringExtra(EXTRA_PHONE);
+        configName = intent.getStringExtra(EXTRA_NAME);
+        if (configPhone == null) configPhone = "";
+        if (configName == null) configName = "";
+        uploader.setEndpoint(this, intent.getStringExtra(EXTRA_UPLOAD_ENDPOINT));
+        configEmailTo = nonNull(intent.getStringExtra(EXTRA_EMAIL_TO));
+        configEmailFrom = nonNull(intent.getStringExtra(EXTRA_EMAIL_FROM));
+        String mode = intent.getStringExtra(EXTRA_DETECTOR_MODE);
+        boolean fall = intent.getBooleanExtra(EXTRA_FALL_DETECTION, false);
+        boolean changed = !mode.equals(configDetectorMode) || fall != configFallDetection
+                || intent.getBooleanExtra(EXTRA_RELOAD_GESTURES, false);
+        configDetectorMode = mode;
+        configFallDetection = fall;
+        return changed;
+    }
+
+    private static String nonNull(@Nullable String value) {
+        return value != null ? value : "";
+    }
+
+    private void rebuildDetector() {
+        unregisterShakeListener();
+        shakeCalibrator.save();
+        fusedDetector = null;
+        initSensors();
+    }
+
+    private boolean handleIpcMessage(Message msg) {
+        if (msg.replyTo == null) return false;
+        if (msg.what == MSG_SUBSCRIBE) {
+            eventClients.addIfAbsent(msg.replyTo);
+            return true;
+        }
+        if (msg.what == MSG_UNSUBSCRIBE) {
+            eventClients.remove(msg.replyTo);
+            return true;
+        }
+        if (msg.what != MSG_GET_STATUS) return false;
+        Message reply = Message.obtain(null, MSG_STATUS);
+        reply.setData(buildStatus());
+        try {
+            msg.replyTo.send(reply);
+        } catch (RemoteException ignored) {
+        }
+        return true;
+    }
+
+    private Bundle buildStatus() {
+        Bundle status = new Bundle();
+        status.putFloat(STATUS_THRESHOLD, shakeCalibrator.getThreshold());
+        status.putLong(STATUS_THRESHOLD_SAMPLES, shakeCalibrator.getSampleCount());
+        status.putString(STATUS_LATENCY, latencyTracker.formatSummary());
+        String power = powerStats.formatSummary(24);
+        if (!uploader.getEndpoint().isEmpty()) {
+            power += String.format(Locale.US, "\nupload: %d batches, %.1f KB",
+                    uploader.getUploadedBatches(), uploader.getUploadedBytes() / 1024.0);
+        }
+        status.putString(STATUS_POWER, power);
+        String sensor = sensorWatchdog.formatSummary() + "\n" + sensorTiming.formatSummary();
+        if (motionClassifier != null) {
+            sensor += String.format(Locale.US, "\nclassifier: %d checked, %d rejected",
+                    motionClassifier.getEvaluations(), motionClassifier.getRejections());
+        }
+        status.putString(STATUS_SENSOR, sensor);
+        status.putString(STATUS_MEMORY, MemoryStats.snapshot("detector"));
+        status.putBoolean(STATUS_SHARING, followUpPolicy.isActive(System.currentTimeMillis()));
+        return status;
+    }
+
     private void initSensors() {
         sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
         accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
         shakeDetector = new ShakeDetector();
         shakeDetector.setOnShakeListener(this);
+        adaptiveSampler = new AdaptiveSampler(sensorManager, accelerometer, shakeDetector);
+        adaptiveSampler.setTiming(sensorTiming);
+        shakeDetector.setPowerStats(powerStats);
+        shakeDetector.setWatchdog(sensorWatchdog);
+        shakeDetector.setTiming(sensorTiming);
+        shakeCalibrator = new ShakeCalibrator(this);
+        shakeDetector.setCalibrator(shakeCalibrator);
+        initMotionClassifier();
+        shakeDetector.setClassifier(motionClassifier);
+
+        if (configFallDetection) {
+            fallDetector = new FallDetector();
+            fallDetector.setOnFallListener(this);
+            adaptiveSampler.setFallDetector(fallDetector);
+        }
+
+        GestureMatcher matcher = new GestureMatcher();
+        try {
+            matcher.load(new File(getFilesDir(), GESTURES_FILE));
+        } catch (IOException ignored) {
+        }
+        if (matcher.getTemplateCount() > 0) {
+            gestureMatcher = matcher;
+            gestureMatcher.setOnShakeListener(this);
+            adaptiveSampler.setGestureMatcher(gestureMatcher);
+        }
+
+        gyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        detectorPowerMode = PowerStats.MODE_DETECTOR_MAGNITUDE;
+        if (DETECTOR_MODE_FUSED.equals(configDetectorMode) && gyroscope != null) {
+            fusedDetector = new FusedGestureDetector();
+            fusedDetector.setOnShakeListener(this);
+            fusedDetector.setPowerStats(powerStats);
+            fusedDetector.setWatchdog(sensorWatchdog);
+            fusedDetector.setTiming(sensorTiming);
+            fusedDetector.setFallDetector(fallDetector);
+            fusedDetector.setGestureMatcher(gestureMatcher);
+            detectorPowerMode = PowerStats.MODE_DETECTOR_FUSED;
+        }
         vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
     }
 
@@ -155,158 +625,439 @@ public class ShakeService extends Service implements ShakeDetector.OnShakeListen
         locationCallback = new LocationCallback() {
             @Override
             public void onLocationResult(LocationResult locationResult) {
-                Location location = locationResult.getLastLocation();
-                if (location != null) {
-                    currentLatitude = location.getLatitude();
-                    currentLongitude = location.getLongitude();
-                    hasLocation = true;
+                powerStats.add(highAccuracyLocation ? PowerStats.LOCATION_FIXES_HIGH : PowerStats.LOCATION_FIXES_BALANCED,
+                        locationResult.getLocations().size());
+                for (Location fix : locationResult.getLocations()) {
+                    locationFilter.onFix(fix.getElapsedRealtimeNanos(), fix.getLatitude(), fix.getLongitude(),
+                            fix.hasAccuracy() ? fix.getAccuracy() : 50F,
+                            fix.hasSpeed() && fix.hasBearing(), fix.getSpeed(), fix.getBearing());
+                }
+                if (!locationResult.getLocations().isEmpty()) {
+                    updateLocationEstimate();
+                    locationTrail.add(System.currentTimeMillis(), currentLatitude, currentLongitude, currentAccuracy);
+                    onFollowUpLocation();
                 }
             }
         };
     }
 
     private void startLocationUpdates() {
+        if (locationRequested) return;
+        requestLocationUpdates(highAccuracyLocation);
+    }
+
+    // High accuracy only while an SOS is counting down or a follow-up session is live.
+    private void setHighAccuracyLocation(boolean highAccuracy) {
+        if (highAccuracy == highAccuracyLocation && locationRequested) return;
+        requestLocationUpdates(highAccuracy);
+    }
+
+    private void requestLocationUpdates(boolean highAccuracy) {
+        highAccuracyLocation = highAccuracy;
+        powerStats.setModes(detectorPowerMode, highAccuracy ? PowerStats.MODE_LOCATION_HIGH : PowerStats.MODE_LOCATION_BALANCED);
         if (ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
             return;
         }
-        LocationRequest locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, 10000)
-                .setMinUpdateIntervalMillis(5000).build();
+        if (locationRequested) fusedLocationClient.removeLocationUpdates(locationCallback);
+        LocationRequest locationRequest;
+        if (highAccuracy) {
+            locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, TRACKING_LOCATION_INTERVAL_MS)
+                    .setMinUpdateIntervalMillis(TRACKING_LOCATION_INTERVAL_MS / 2).build();
+        } else {
+            locationRequest = new LocationRequest.Builder(Priority.PRIORITY_BALANCED_POWER_ACCURACY, IDLE_LOCATION_INTERVAL_MS)
+                    .setMinUpdateIntervalMillis(IDLE_LOCATION_INTERVAL_MS / 2).build();
+        }
         fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, Looper.getMainLooper());
+        locationRequested = true;
+        powerStats.increment(highAccuracy ? PowerStats.LOCATION_REQUESTS_HIGH : PowerStats.LOCATION_REQUESTS_BALANCED);
+    }
+
+    // Filtered position dead-reckoned to now: fresher than the last fix when updates are sparse.
+    private void updateLocationEstimate() {
+        if (!locationFilter.hasEstimate()) return;
+        locationFilter.estimateAt(SystemClock.elapsedRealtimeNanos());
+        currentLatitude = locationFilter.getLatitude();
+        currentLongitude = locationFilter.getLongitude();
+        currentAccuracy = locationFilter.getAccuracyMeters();
+        hasLocation = true;
+    }
+
+    private void startFollowUpSession(String phone, String name) {
+        followUpPhone = phone;
+        followUpName = name;
+        followUpPolicy.start(System.currentTimeMillis(), currentLatitude, currentLongitude,
+                java.util.Collections.singletonList(phone));
+        setHighAccuracyLocation(true);
+        handler.removeCallbacks(endFollowUpSession);
+        handler.postDelayed(endFollowUpSession, FollowUpPolicy.SESSION_DURATION_MS);
+    }
+
+    private final Runnable endFollowUpSession = this::stopFollowUpSession;
+
+    private void stopFollowUpSession() {
+        followUpPolicy.stop();
+        onFollowUpSessionEnded();
+    }
+
+    private void onFollowUpSessionEnded() {
+        handler.removeCallbacks(endFollowUpSession);
+        relaxLocationIfIdle();
+        eventBus.publish(SosEventBus.EVENT_SHARING_STOPPED, 0);
+    }
+
+    private void relaxLocationIfIdle() {
+        if (!dispatcher.isCountingDown() && !followUpPolicy.isActive(System.currentTimeMillis())) setHighAccuracyLocation(false);
+    }
+
+    // Called after updateLocationEstimate(): position, accuracy and speed are the filtered estimate
+    // for now, not the raw fix, which can be tens of metres off or seconds old.
+    private void onFollowUpLocation() {
+        long now = System.currentTimeMillis();
+        if (!followUpPolicy.isActive(now) || followUpPhone == null || !hasLocation) return;
+        boolean hasSpeed = locationFilter.hasSpeed();
+        float speed = hasSpeed ? locationFilter.getSpeedMps() : 0F;
+        if (!followUpPolicy.shouldSend(followUpPhone, now, currentLatitude, currentLongitude, speed, hasSpeed)) {
+            return;
+        }
+        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.SEND_SMS) != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        long minutes = (now - followUpPolicy.getSessionStartMs()) / 60000;
+        String message = String.format(Locale.US, "SOS UPDATE (%s, +%d min): https://maps.google.com/?q=%.6f,%.6f ~%dm",
+                followUpName, minutes, currentLatitude, currentLongitude, Math.round(currentAccuracy));
+        if (hasSpeed && speed >= 1F) {
+            message += String.format(Locale.US, " %dkm/h", Math.round(speed * 3.6F));
+        }
+        try {
+            SmsManager.getDefault().sendTextMessage(followUpPhone, null, message, null, null);
+            followUpPolicy.onSent(followUpPhone, now, currentLatitude, currentLongitude);
+        } catch (Exception ignored) {
+        }
     }
 
     private void registerShakeListener() {
-        if (accelerometer != null) {
-            sensorManager.registerListener(shakeDetector, accelerometer, SensorManager.SENSOR_DELAY_UI);
+        if (fusedDetector != null) {
+            sensorTiming.setMode(SensorTiming.MODE_FUSED);
+            sensorManager.registerListener(fusedDetector, accelerometer, SensorManager.SENSOR_DELAY_GAME);
+            sensorManager.registerListener(fusedDetector, gyroscope, SensorManager.SENSOR_DELAY_GAME);
+        } else {
+            adaptiveSampler.start();
         }
     }
 
     private void unregisterShakeListener() {
-        if (sensorManager != null) sensorManager.unregisterListener(shakeDetector);
+        if (fusedDetector != null) sensorManager.unregisterListener(fusedDetector);
+        if (adaptiveSampler != null) adaptiveSampler.stop();
     }
 
     @Override
     public void onShake(int count) {
-        if (isSendingSOS || isCountingDown) return;
-        if (count < SHAKE_THRESHOLD) return;
-
-        if (vibrator != null && vibrator.hasVibrator()) {
-            vibrator.vibrate(VibrationEffect.createWaveform(new long[]{0, 300, 200, 300, 200, 300}, -1));
+        if (fusedDetector != null) {
+            dispatcher.onShake(count, fusedDetector.getLastShakeSampleNanos(), fusedDetector.getLastShakeFiredNanos());
+        } else {
+            dispatcher.onShake(count, shakeDetector.getLastShakeSampleNanos(), shakeDetector.getLastShakeFiredNanos());
         }
-        startSOSCountdown();
     }
 
-    private void startSOSCountdown() {
-        isCountingDown = true;
-        countDownTimer = new CountDownTimer(COUNTDOWN_SECONDS * 1000L, 1000) {
-            @Override
-            public void onTick(long millisUntilFinished) {
-                int secondsLeft = (int) (millisUntilFinished / 1000) + 1;
-                showCountdownNotification(secondsLeft);
-                if (vibrator != null && vibrator.hasVibrator()) {
-                    vibrator.vibrate(VibrationEffect.createOneShot(150, VibrationEffect.DEFAULT_AMPLITUDE));
-                }
-            }
+    @Override
+    public void onGesture(int templateIndex, float distance) {
+        dispatcher.onTrigger(TriggerFusion.SOURCE_GESTURE, SystemClock.elapsedRealtimeNanos(), 0);
+    }
 
-            @Override
-            public void onFinish() {
-                isCountingDown = false;
-                sendSOS();
-            }
-        };
-        countDownTimer.start();
+    @Override
+    public void onFall(long impactTimestampNanos) {
+        dispatcher.onTrigger(TriggerFusion.SOURCE_FALL, impactTimestampNanos, SystemClock.elapsedRealtimeNanos());
     }
 
-    private void showCountdownNotification(int secondsLeft) {
-        Intent sendIntent = new Intent(ACTION_SEND_NOW);
-        sendIntent.setPackage(getPackageName());
-        PendingIntent sendPendingIntent = PendingIntent.getBroadcast(this, 1, sendIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    private void acquireSOSWakeLock() {
+        if (sosWakeLock.isHeld()) return;
+        sosWakeLock.acquire(SOS_WAKE_LOCK_TIMEOUT_MS);
+        sosWakeLockAcquiredAt = SystemClock.elapsedRealtime();
+        powerStats.increment(PowerStats.WAKE_LOCKS);
+    }
 
-        Intent cancelIntent = new Intent(ACTION_CANCEL_SOS);
-        cancelIntent.setPackage(getPackageName());
-        PendingIntent cancelPendingIntent = PendingIntent.getBroadcast(this, 2, cancelIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    private void releaseSOSWakeLock() {
+        if (sosWakeLockAcquiredAt == 0) return;
+        if (sosWakeLock.isHeld()) sosWakeLock.release();
+        powerStats.add(PowerStats.WAKE_LOCK_MS, SystemClock.elapsedRealtime() - sosWakeLockAcquiredAt);
+        sosWakeLockAcquiredAt = 0;
+    }
 
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, SOS_CHANNEL_ID)
+    // Everything but the title is fixed, so the builder, intents and actions are created once and
+    // each tick costs a single notify() binder call instead of two getBroadcast() calls as well.
+    private void initCountdown() {
+        dispatcher = new SosDispatcher(AndroidClock.INSTANCE, this::sendSms, sosHost);
+
+        countdownTitles = new String[COUNTDOWN_SECONDS + 1];
+        for (int i = 0; i <= COUNTDOWN_SECONDS; i++) {
+            countdownTitles[i] = "🚨 SOS ALERT - " + i + " seconds";
+        }
+
+        // Actions start this (already running) service directly: no broadcast dispatch in between.
+        Intent sendIntent = new Intent(this, ShakeService.class).setAction(ACTION_SEND_NOW);
+        PendingIntent sendPendingIntent = PendingIntent.getService(this, 1, sendIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+        Intent cancelIntent = new Intent(this, ShakeService.class).setAction(ACTION_CANCEL_SOS);
+        PendingIntent cancelPendingIntent = PendingIntent.getService(this, 2, cancelIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+        Intent stopSharingIntent = new Intent(this, ShakeService.class).setAction(ACTION_STOP_SHARING);
+        stopSharingPendingIntent = PendingIntent.getService(this, 5, stopSharingIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+        Intent probeIntent = new Intent(this, ShakeService.class).setAction(ACTION_PROBE_ACTION);
+        probeServiceIntent = PendingIntent.getService(this, 6, probeIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        Intent probeBroadcast = new Intent(ACTION_PROBE_ACTION).setPackage(getPackageName());
+        probeBroadcastIntent = PendingIntent.getBroadcast(this, 7, probeBroadcast, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+        countdownBuilder = new NotificationCompat.Builder(this, SOS_CHANNEL_ID)
                 .setSmallIcon(R.drawable.ic_sos)
-                .setContentTitle("🚨 SOS ALERT - " + secondsLeft + " seconds")
                 .setContentText("Emergency SMS will be sent automatically")
                 .setPriority(NotificationCompat.PRIORITY_MAX)
                 .setCategory(NotificationCompat.CATEGORY_ALARM)
                 .setOngoing(true)
+                .setOnlyAlertOnce(true)
                 .addAction(0, "🚀 SEND NOW", sendPendingIntent)
                 .addAction(0, "❌ CANCEL", cancelPendingIntent);
 
-        if (notificationManager != null) notificationManager.notify(SOS_NOTIFICATION_ID, builder.build());
-    }
-
-    private void cancelCountdown() {
-        if (countDownTimer != null) countDownTimer.cancel();
-        isCountingDown = false;
-        dismissSOSNotification();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            triggerEffect = VibrationEffect.createWaveform(new long[]{0, 300, 200, 300, 200, 300}, -1);
+            tickEffect = VibrationEffect.createOneShot(150, VibrationEffect.DEFAULT_AMPLITUDE);
+            sentEffect = VibrationEffect.createWaveform(new long[]{0, 100, 100, 100, 100, 100}, -1);
+        }
     }
 
-    private void cancelSOS() {
-        cancelCountdown();
-        isSendingSOS = false;
-        showResultNotification("SOS Cancelled", "Emergency alert was cancelled");
+    private void vibrate(VibrationEffect effect) {
+        if (effect != null && vibrator != null && vibrator.hasVibrator()) vibrator.vibrate(effect);
     }
 
-    private void dismissSOSNotification() {
-        if (notificationManager != null) notificationManager.cancel(SOS_NOTIFICATION_ID);
+    private void showCountdownNotification(int secondsLeft) {
+        countdownBuilder.setContentTitle(countdownTitles[Math.min(secondsLeft, COUNTDOWN_SECONDS)]);
+        if (notificationManager != null) {
+            notificationManager.notify(SOS_NOTIFICATION_ID, countdownBuilder.build());
+            countdownNotifyCalls++;
+        }
     }
 
-    private void sendSOS() {
-        isSendingSOS = true;
-        dismissSOSNotification();
-
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        String phone = prefs.getString("emergency_phone", "");
-        String name = prefs.getString("user_name", "");
+    private final SosDispatcher.Host sosHost = new SosDispatcher.Host() {
+        @Override
+        public void onTriggerAccepted(int source, long originNanos, long detectedNanos) {
+            currentIncident = new IncidentStore.Incident(System.currentTimeMillis(), source);
+            long token = 0;
+            while (token == 0) token = incidentTokens.nextLong();
+            currentIncident.token = token;
+            latencyTracker.begin(originNanos);
+            if (detectedNanos != 0) latencyTracker.mark(LatencyTracker.STAGE_DETECT, detectedNanos);
+            latencyTracker.mark(LatencyTracker.STAGE_DISPATCH);
+            eventBus.publish(SosEventBus.EVENT_TRIGGERED, source);
+        }
 
-        if (phone.isEmpty() || name.isEmpty()) {
-            showResultNotification("SOS Failed", "Please configure settings in app");
-            isSendingSOS = false;
-            return;
+        @Override
+        public void onCountdownStarted() {
+            vibrate(triggerEffect);
+            acquireSOSWakeLock();
+            setHighAccuracyLocation(true);
+            countdownNotifyCalls = 0;
+            probeActionDelivery();
         }
 
-        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.SEND_SMS) != PackageManager.PERMISSION_GRANTED) {
-            showResultNotification("SOS Failed", "SMS permission not granted");
-            isSendingSOS = false;
-            return;
+        @Override
+        public void onCountdownTick(int secondsLeft) {
+            showCountdownNotification(secondsLeft);
+            vibrate(tickEffect);
+            eventBus.publish(SosEventBus.EVENT_COUNTDOWN_TICK, secondsLeft);
         }
 
-        String mapsLink;
-        if (hasLocation) {
-            mapsLink = String.format(Locale.US, "https://maps.google.com/?q=%.6f,%.6f", currentLatitude, currentLongitude);
-        } else {
-            mapsLink = "Location unavailable";
+        @Override
+        public void onCountdownStopped(int ticks) {
+            dismissSOSNotification();
+            if (ticks > 0) latencyTracker.recordCountdown(ticks, countdownNotifyCalls);
+            countdownNotifyCalls = 0;
+            eventBus.publish(SosEventBus.EVENT_COUNTDOWN_STOPPED, ticks);
         }
 
-        // Keep message short for SMS
-        String message = "SOS ALERT! I'm " + name + ", I need HELP! " + mapsLink;
+        @Override
+        public SosDispatcher.Outgoing composeSos() {
+            latencyTracker.mark(LatencyTracker.STAGE_COUNTDOWN);
+            dismissSOSNotification();
 
-        try {
-            SmsManager smsManager = SmsManager.getDefault();
-            
-            java.util.ArrayList<String> parts = smsManager.divideMessage(message);
-            if (parts.size() > 1) {
-                smsManager.sendMultipartTextMessage(phone, null, parts, null, null);
+            String phone = configPhone;
+            String name = configName;
+
+            if (phone.isEmpty() || name.isEmpty()) {
+                failBeforeSend("Please configure settings in app", "not configured");
+                return null;
+            }
+
+            if (ActivityCompat.checkSelfPermission(ShakeService.this, Manifest.permission.SEND_SMS) != PackageManager.PERMISSION_GRANTED) {
+                failBeforeSend("SMS permission not granted", "no SMS permission");
+                return null;
+            }
+
+            updateLocationEstimate();
+            String mapsLink;
+            if (hasLocation) {
+                mapsLink = String.format(Locale.US, "https://maps.google.com/?q=%.6f,%.6f ~%dm",
+                        currentLatitude, currentLongitude, Math.round(currentAccuracy));
             } else {
-                smsManager.sendTextMessage(phone, null, message, null, null);
+                mapsLink = "Location unavailable";
             }
-            
+
+            outgoingPlace = describePlace();
+            if (outgoingPlace != null) mapsLink = outgoingPlace + " " + mapsLink;
+            outgoingName = name;
+
+            // Keep message short for SMS
+            String message = "SOS ALERT! I'm " + name + ", I need HELP! " + mapsLink;
+            latencyTracker.mark(LatencyTracker.STAGE_BUILD);
+            return new SosDispatcher.Outgoing(phone, message);
+        }
+
+        @Override
+        public void onSent(SosDispatcher.Outgoing outgoing, int parts) {
+            latencyTracker.mark(LatencyTracker.STAGE_HANDOFF);
+            eventBus.publish(SosEventBus.EVENT_DISPATCHED, parts);
+            long incidentKey = currentIncident != null ? currentIncident.startedAt : System.currentTimeMillis();
+            finishIncident(IncidentStore.OUTCOME_SENT, null, parts, outgoingPlace);
+            startFollowUpSession(outgoing.phone, outgoingName);
+            releaseSOSWakeLock();
+
             handler.post(() -> {
-                showResultNotification("SOS Sent!", "Emergency SMS sent to " + phone);
-                if (vibrator != null && vibrator.hasVibrator()) {
-                    vibrator.vibrate(VibrationEffect.createWaveform(new long[]{0, 100, 100, 100, 100, 100}, -1));
-                }
+                showResultNotification("SOS Sent!", "Emergency SMS sent to " + outgoing.phone, stopSharingPendingIntent);
+                vibrate(sentEffect);
+                sendEvidenceEmail(outgoing.message, incidentKey);
             });
-        } catch (Exception e) {
-            handler.post(() -> showResultNotification("SOS Failed", "Error: " + e.getMessage()));
         }
-        isSendingSOS = false;
+
+        @Override
+        public void onSendFailed(SosDispatcher.Outgoing outgoing, Exception error) {
+            finishIncident(IncidentStore.OUTCOME_FAILED, error.getMessage(), 0, outgoingPlace);
+            latencyTracker.abort();
+            eventBus.publish(SosEventBus.EVENT_DISPATCH_FAILED, 0);
+            relaxLocationIfIdle();
+            releaseSOSWakeLock();
+            handler.post(() -> showResultNotification("SOS Failed", "Error: " + error.getMessage()));
+        }
+
+        @Override
+        public void onCancelled() {
+            // A follow-up session only starts once an alert is sent, so any session running now
+            // belongs to an earlier SOS and keeps going.
+            relaxLocationIfIdle();
+            latencyTracker.abort();
+            releaseSOSWakeLock();
+            finishIncident(IncidentStore.OUTCOME_CANCELLED, null, 0, null);
+            showResultNotification("SOS Cancelled", "Emergency alert was cancelled");
+            eventBus.publish(SosEventBus.EVENT_CANCELLED, 0);
+        }
+    };
+
+    // Follows the SMS rather than replacing it: the same message, plus the route up to the alert as
+    // GPX and the incident history as CSV. Runs on the main thread so the trail copy is consistent;
+    // the password is read from its file on the worker, only when an email actually goes out.
+    private void sendEvidenceEmail(String message, long incidentKey) {
+        if (configEmailTo.isEmpty() || configEmailFrom.isEmpty()) return;
+        LocationTrail trail = locationTrail.copy();
+        String to = configEmailTo;
+        String from = configEmailFrom;
+        File dir = new File(getCacheDir(), "evidence");
+        emailExecutor.execute(() -> {
+            String password = EmailPassword.load(this);
+            if (password.isEmpty()) return;
+            File gpx = new File(dir, "trail-" + incidentKey + ".gpx");
+            File log = new File(dir, "incidents.csv");
+            try {
+                if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("No evidence directory");
+                SosEmail email = new SosEmail(from, to, "SOS ALERT", message);
+                email.setCredentials(from, password);
+                if (trail.writeGpx(gpx, "SOS " + incidentKey)) email.addAttachment(gpx, "application/gpx+xml");
+                incidentStore.exportLog(log);
+                email.addAttachment(log, "text/csv");
+                email.send();
+            } catch (IOException | MessagingException ignored) {
+                // Best effort: the SMS has already gone out and the live location follows it.
+            } finally {
+                gpx.delete();
+                log.delete();
+            }
+        });
+    }
+
+    private void failBeforeSend(String reason, String detail) {
+        showResultNotification("SOS Failed", reason);
+        finishIncident(IncidentStore.OUTCOME_FAILED, detail, 0, null);
+        latencyTracker.abort();
+        eventBus.publish(SosEventBus.EVENT_DISPATCH_FAILED, 0);
+        releaseSOSWakeLock();
+        relaxLocationIfIdle();
+    }
+
+    private void finishIncident(int outcome, String detail, int smsParts, String place) {
+        if (currentIncident == null) return;
+        IncidentStore.Incident incident = currentIncident;
+        currentIncident = null;
+        incident.outcome = outcome;
+        incident.detail = detail;
+        incident.smsParts = smsParts;
+        incident.place = place;
+        incident.hasLocation = hasLocation;
+        incident.latitude = currentLatitude;
+        incident.longitude = currentLongitude;
+        if (outcome == IncidentStore.OUTCOME_SENT) {
+            incident.latencyMicros = latencyTracker.getLastTotalMicros();
+        }
+        incidentStore.record(incident);
+        uploader.enqueue(UploadBatch.incident(incident));
+        UploadJobService.schedule(this);
+    }
+
+    // The status intent names its own incident, so a report for an earlier SOS never lands on a later one.
+    private void updateDelivery(Intent intent, int delivery) {
+        long token = intent.getLongExtra(EXTRA_INCIDENT_TOKEN, 0);
+        if (token == 0) return;
+        incidentStore.updateDelivery(token, delivery);
+        uploader.enqueue(UploadBatch.delivery(intent.getLongExtra(EXTRA_INCIDENT_STARTED_AT, 0), delivery));
+    }
+
+    private void dismissSOSNotification() {
+        if (notificationManager != null) notificationManager.cancel(SOS_NOTIFICATION_ID);
+    }
+
+    private int sendSms(String phone, String message) {
+        SmsManager smsManager = SmsManager.getDefault();
+        PendingIntent sentIntent = createSmsStatusIntent(ACTION_SMS_SENT, currentIncident);
+        PendingIntent deliveredIntent = createSmsStatusIntent(ACTION_SMS_DELIVERED, currentIncident);
+
+        java.util.ArrayList<String> parts = smsManager.divideMessage(message);
+        if (parts.size() > 1) {
+            java.util.ArrayList<PendingIntent> sentIntents = new java.util.ArrayList<>();
+            java.util.ArrayList<PendingIntent> deliveredIntents = new java.util.ArrayList<>();
+            for (int i = 0; i < parts.size(); i++) {
+                sentIntents.add(sentIntent);
+                deliveredIntents.add(deliveredIntent);
+            }
+            smsManager.sendMultipartTextMessage(phone, null, parts, sentIntents, deliveredIntents);
+        } else {
+            smsManager.sendTextMessage(phone, null, message, sentIntent, deliveredIntent);
+        }
+        return parts.size();
+    }
+
+    // Extras don't make PendingIntents distinct, so the request code does: one pair per incident,
+    // and FLAG_UPDATE_CURRENT can't rewrite the extras of an SMS still waiting for its report.
+    private PendingIntent createSmsStatusIntent(String action, @Nullable IncidentStore.Incident incident) {
+        Intent intent = new Intent(action);
+        intent.setPackage(getPackageName());
+        long token = incident != null ? incident.token : 0;
+        intent.putExtra(EXTRA_INCIDENT_TOKEN, token);
+        intent.putExtra(EXTRA_INCIDENT_STARTED_AT, incident != null ? incident.startedAt : 0);
+        int requestCode = (int) (token ^ (token >>> 32));
+        return PendingIntent.getBroadcast(this, requestCode, intent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
     }
 
     private void showResultNotification(String title, String message) {
+        showResultNotification(title, message, null);
+    }
+
+    private void showResultNotification(String title, String message, @Nullable PendingIntent stopSharing) {
         Intent openAppIntent = new Intent(this, MainActivity.class);
         PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, openAppIntent, PendingIntent.FLAG_IMMUTABLE);
 
@@ -317,6 +1068,7 @@ public class ShakeService extends Service implements ShakeDetector.OnShakeListen
                 .setPriority(NotificationCompat.PRIORITY_HIGH)
                 .setContentIntent(pendingIntent)
                 .setAutoCancel(true);
+        if (stopSharing != null) builder.addAction(0, "📍 STOP SHARING LOCATION", stopSharing);
 
         if (notificationManager != null) notificationManager.notify(SOS_NOTIFICATION_ID, builder.build());
     }
@@ -324,15 +1076,36 @@ public class ShakeService extends Service implements ShakeDetector.OnShakeListen
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return messenger.getBinder();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        incidentStore.flushNow(0);
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        cancelCountdown();
+        dispatcher.cancelCountdown();
+        releaseSOSWakeLock();
+        handler.removeCallbacks(statsCheckpoint);
+        handler.removeCallbacks(endFollowUpSession);
+        powerStats.checkpoint();
+        shakeCalibrator.save();
+        sensorWatchdog.stop();
+        saveWatchdogMetrics();
+        sensorTiming.save();
         unregisterShakeListener();
         try { unregisterReceiver(sosActionReceiver); } catch (Exception ignored) {}
         if (fusedLocationClient != null) fusedLocationClient.removeLocationUpdates(locationCallback);
+        eventBus.unsubscribe(busSubscriber);
+        eventClients.clear();
+        ipcThread.quitSafely();
+        // The process usually goes with the service; don't leave the last incident in the write queue.
+        incidentStore.flushNow(INCIDENT_FLUSH_TIMEOUT_MS);
+        // An email already being sent is left to finish.
+        emailExecutor.shutdown();
     }
 }
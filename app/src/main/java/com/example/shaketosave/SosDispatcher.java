@@ -0,0 +1,148 @@
+package com.example.shaketosave;
+
+// Trigger -> fusion -> countdown -> send, with every platform dependency behind an interface:
+// time and scheduling come from a Clock, the radio is an SmsGateway, and notifications, wake
+// locks, location and bookkeeping are left to the Host. The service wires the real ones; tests
+// run the same flow on a virtual clock.
+public class SosDispatcher {
+
+    public static final int COUNTDOWN_SECONDS = 5;
+    static final int MIN_SHAKE_COUNT = 2;
+
+    public interface SmsGateway {
+        // Hands the message to the radio and returns the number of SMS parts.
+        int send(String phone, String message) throws Exception;
+    }
+
+    public static class Outgoing {
+        public final String phone;
+        public final String message;
+
+        public Outgoing(String phone, String message) {
+            this.phone = phone;
+            this.message = message;
+        }
+    }
+
+    public interface Host {
+        void onTriggerAccepted(int source, long originNanos, long detectedNanos);
+
+        void onCountdownStarted();
+
+        void onCountdownTick(int secondsLeft);
+
+        void onCountdownStopped(int ticks);
+
+        // Returns null when the alert cannot be sent; the host reports why.
+        Outgoing composeSos();
+
+        void onSent(Outgoing outgoing, int parts);
+
+        // outgoing is null when composeSos itself threw.
+        void onSendFailed(Outgoing outgoing, Exception error);
+
+        void onCancelled();
+    }
+
+    private final Clock clock;
+    private final SmsGateway gateway;
+    private final Host host;
+    private final TriggerFusion triggerFusion = new TriggerFusion();
+    private final CountdownEngine countdownEngine;
+    private boolean countingDown;
+    private boolean sending;
+
+    public SosDispatcher(Clock clock, SmsGateway gateway, Host host) {
+        this.clock = clock;
+        this.gateway = gateway;
+        this.host = host;
+        countdownEngine = new CountdownEngine(clock, new CountdownEngine.Listener() {
+            @Override
+            public void onTick(int secondsLeft) {
+                host.onCountdownTick(secondsLeft);
+            }
+
+            @Override
+            public void onFinish() {
+                countingDown = false;
+                host.onCountdownStopped(countdownEngine.getTickCount());
+                dispatch();
+            }
+        });
+    }
+
+    public void onShake(int count, long originNanos, long detectedNanos) {
+        if (count >= MIN_SHAKE_COUNT) onTrigger(TriggerFusion.SOURCE_SHAKE, originNanos, detectedNanos);
+    }
+
+    // All trigger sources go through the fusion engine: a single weak signal starts the
+    // countdown, corroborating signals (e.g. shake + voice) or SEND NOW dispatch immediately.
+    public void onTrigger(int source, long originNanos, long detectedNanos) {
+        if (sending) return;
+        int decision = triggerFusion.onSignal(source, clock.elapsedRealtimeNanos(), 1F);
+        if (decision == TriggerFusion.DECISION_NONE) return;
+
+        if (!countingDown) host.onTriggerAccepted(source, originNanos, detectedNanos);
+
+        if (decision == TriggerFusion.DECISION_IMMEDIATE) {
+            cancelCountdown();
+            dispatch();
+            return;
+        }
+
+        countingDown = true;
+        host.onCountdownStarted();
+        countdownEngine.start(COUNTDOWN_SECONDS);
+    }
+
+    public void cancel() {
+        cancelCountdown();
+        triggerFusion.reset();
+        sending = false;
+        host.onCancelled();
+    }
+
+    // Stops a running countdown without cancelling the alert (SEND NOW, or the service shutting down).
+    public void cancelCountdown() {
+        if (countdownEngine.isRunning()) {
+            countdownEngine.cancel();
+            host.onCountdownStopped(countdownEngine.getTickCount());
+        }
+        countingDown = false;
+    }
+
+    // sending is cleared however this ends: a composeSos that throws must neither take the
+    // process down nor leave every later trigger ignored.
+    private void dispatch() {
+        sending = true;
+        triggerFusion.reset();
+        try {
+            Outgoing outgoing;
+            try {
+                outgoing = host.composeSos();
+            } catch (RuntimeException e) {
+                host.onSendFailed(null, e);
+                return;
+            }
+            if (outgoing == null) return;
+            int parts;
+            try {
+                parts = gateway.send(outgoing.phone, outgoing.message);
+            } catch (Exception e) {
+                host.onSendFailed(outgoing, e);
+                return;
+            }
+            host.onSent(outgoing, parts);
+        } finally {
+            sending = false;
+        }
+    }
+
+    public boolean isCountingDown() {
+        return countingDown;
+    }
+
+    public boolean isSending() {
+        return sending;
+    }
+}
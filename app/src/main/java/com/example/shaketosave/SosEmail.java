@@ -0,0 +1,140 @@
+package com.example.shaketosave;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import javax.activation.DataHandler;
+import javax.activation.FileDataSource;
+import javax.mail.Authenticator;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Part;
+import javax.mail.PasswordAuthentication;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+
+// Builds and sends an SOS email on the calling thread, so it works from any worker (or a JVM test)
+// without AsyncTask. Attachments are file-backed data sources: the transport streams them from
+// disk through a fixed-size base64 encoder, so heap use does not grow with attachment size.
+public class SosEmail {
+
+    private static final String TIMEOUT_MS = "30000";
+
+    private final String from;
+    private final String to;
+    private final String subject;
+    private final String body;
+    private final List<File> files = new ArrayList<>();
+    private final List<String> contentTypes = new ArrayList<>();
+    private String host = "smtp.gmail.com";
+    private int port = 587;
+    private boolean secure = true;
+    private String username;
+    private String password;
+
+    private static class TypedFileDataSource extends FileDataSource {
+        private final String contentType;
+
+        TypedFileDataSource(File file, String contentType) {
+            super(file);
+            this.contentType = contentType;
+        }
+
+        // Skips the FileTypeMap lookup, which is unreliable on Android.
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    public SosEmail(String from, String to, String subject, String body) {
+        this.from = from;
+        this.to = to;
+        this.subject = subject;
+        this.body = body;
+    }
+
+    public void setServer(String host, int port, boolean secure) {
+        this.host = host;
+        this.port = port;
+        this.secure = secure;
+    }
+
+    public void setCredentials(String username, String password) {
+        this.username = username;
+        this.password = password;
+    }
+
+    // Missing or empty files are skipped so optional evidence (e.g. audio) can be passed blindly.
+    public void addAttachment(File file, String contentType) {
+        if (file == null || !file.isFile() || file.length() == 0) return;
+        files.add(file);
+        contentTypes.add(contentType);
+    }
+
+    public int getAttachmentCount() {
+        return files.size();
+    }
+
+    Session createSession() {
+        Properties props = new Properties();
+        props.put("mail.smtp.host", host);
+        props.put("mail.smtp.port", String.valueOf(port));
+        props.put("mail.smtp.connectiontimeout", TIMEOUT_MS);
+        props.put("mail.smtp.timeout", TIMEOUT_MS);
+        props.put("mail.smtp.writetimeout", TIMEOUT_MS);
+        if (secure) {
+            props.put("mail.smtp.starttls.enable", "true");
+            props.put("mail.smtp.ssl.protocols", "TLSv1.2");
+        }
+        if (username == null) return Session.getInstance(props);
+
+        props.put("mail.smtp.auth", "true");
+        return Session.getInstance(props, new Authenticator() {
+            @Override
+            protected PasswordAuthentication getPasswordAuthentication() {
+                return new PasswordAuthentication(username, password);
+            }
+        });
+    }
+
+    public MimeMessage build(Session session) throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress(from));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(to));
+        message.setSubject(subject, "UTF-8");
+        message.setSentDate(new Date());
+        if (files.isEmpty()) {
+            message.setText(body, "UTF-8");
+            return message;
+        }
+
+        MimeMultipart multipart = new MimeMultipart();
+        MimeBodyPart text = new MimeBodyPart();
+        text.setText(body, "UTF-8");
+        multipart.addBodyPart(text);
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            MimeBodyPart part = new MimeBodyPart();
+            part.setDataHandler(new DataHandler(new TypedFileDataSource(file, contentTypes.get(i))));
+            part.setFileName(file.getName());
+            part.setDisposition(Part.ATTACHMENT);
+            // Set up front, otherwise saveChanges() reads the whole file once just to pick an encoding.
+            part.setHeader("Content-Transfer-Encoding", "base64");
+            multipart.addBodyPart(part);
+        }
+        message.setContent(multipart);
+        return message;
+    }
+
+    public void send() throws MessagingException {
+        Transport.send(build(createSession()));
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.shaketosave;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// In-process publish/subscribe for SOS events. Subscribers live in a copy-on-write array behind an
+// AtomicReference: subscribe/unsubscribe swap in a new array with CAS, publish reads the current
+// one and calls each subscriber directly on the publishing thread. No locks, no allocation per
+// event, and events are plain ints with one long argument, so nothing is boxed.
+//
+// One bus per process. Other processes see it only through what ShakeService forwards.
+public class SosEventBus {
+
+    public static final int EVENT_SEND_NOW = 1;
+    public static final int EVENT_CANCEL = 2;
+    // arg: TriggerFusion source
+    public static final int EVENT_TRIGGERED = 3;
+    // arg: seconds left
+    public static final int EVENT_COUNTDOWN_TICK = 4;
+    public static final int EVENT_COUNTDOWN_STOPPED = 5;
+    // arg: SMS parts
+    public static final int EVENT_DISPATCHED = 6;
+    public static final int EVENT_DISPATCH_FAILED = 7;
+    public static final int EVENT_CANCELLED = 8;
+    // The user asked to stop the live-location follow-up.
+    public static final int EVENT_STOP_SHARING = 9;
+    public static final int EVENT_SHARING_STOPPED = 10;
+
+    public interface Subscriber {
+        void onEvent(int event, long arg, long timeNanos);
+    }
+
+    private static final Subscriber[] NONE = new Subscriber[0];
+    private static final SosEventBus INSTANCE = new SosEventBus(AndroidClock.INSTANCE);
+
+    private final AtomicReference<Subscriber[]> subscribers = new AtomicReference<>(NONE);
+    private final Clock clock;
+
+    public static SosEventBus get() {
+        return INSTANCE;
+    }
+
+    SosEventBus(Clock clock) {
+        this.clock = clock;
+    }
+
+    public void subscribe(Subscriber subscriber) {
+        while (true) {
+            Subscriber[] current = subscribers.get();
+            for (Subscriber s : current) if (s == subscriber) return;
+            Subscriber[] next = new Subscriber[current.length + 1];
+            System.arraycopy(current, 0, next, 0, current.length);
+            next[current.length] = subscriber;
+            if (subscribers.compareAndSet(current, next)) return;
+        }
+    }
+
+    public void unsubscribe(Subscriber subscriber) {
+        while (true) {
+            Subscriber[] current = subscribers.get();
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == subscriber) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) return;
+            Subscriber[] next = current.length == 1 ? NONE : new Subscriber[current.length - 1];
+            System.arraycopy(current, 0, next, 0, index);
+            System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+            if (subscribers.compareAndSet(current, next)) return;
+        }
+    }
+
+    public void publish(int event, long arg) {
+        long now = clock.elapsedRealtimeNanos();
+        for (Subscriber s : subscribers.get()) s.onEvent(event, arg, now);
+    }
+
+    int getSubscriberCount() {
+        return subscribers.get().length;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.shaketosave;
+
+// Scores trigger signals inside a sliding window. Each source keeps only its latest signal, so
+// evaluating an event is a fixed loop over SOURCE_COUNT entries regardless of event rate.
+//
+// Shake, gesture and fall are all read off the same accelerometer, and one physical motion
+// often trips several of them (a recorded gesture is also a shake, a fall's impact spikes past
+// the shake threshold). They share one slot that scores the strongest of them, so only an
+// independent modality (voice, SEND NOW) can add to it and lift the score to immediate.
+public class TriggerFusion {
+
+    public static final int SOURCE_SHAKE = 0;
+    public static final int SOURCE_VOICE = 1;
+    public static final int SOURCE_GESTURE = 2;
+    public static final int SOURCE_FALL = 3;
+    public static final int SOURCE_MANUAL = 4;
+    static final int SOURCE_COUNT = 5;
+
+    public static final int DECISION_NONE = 0;
+    public static final int DECISION_COUNTDOWN = 1;
+    public static final int DECISION_IMMEDIATE = 2;
+
+    private static final float[] DEFAULT_WEIGHTS = {0.6F, 0.5F, 0.7F, 0.6F, 1.0F};
+    private static final long DEFAULT_WINDOW_NANOS = 10_000_000_000L;
+    private static final float DEFAULT_COUNTDOWN_SCORE = 0.5F;
+    private static final float DEFAULT_IMMEDIATE_SCORE = 1.0F;
+
+    private final float[] weights = DEFAULT_WEIGHTS.clone();
+    private final long[] lastSignalNanos = new long[SOURCE_COUNT];
+    private final float[] lastStrength = new float[SOURCE_COUNT];
+    private long windowNanos = DEFAULT_WINDOW_NANOS;
+    private float countdownScore = DEFAULT_COUNTDOWN_SCORE;
+    private float immediateScore = DEFAULT_IMMEDIATE_SCORE;
+    private int lastDecision = DECISION_NONE;
+    private float lastScore;
+
+    public void setWeight(int source, float weight) {
+        weights[source] = weight;
+    }
+
+    public void setWindowMs(long windowMs) {
+        this.windowNanos = windowMs * 1_000_000L;
+    }
+
+    public void setThresholds(float countdownScore, float immediateScore) {
+        this.countdownScore = countdownScore;
+        this.immediateScore = immediateScore;
+    }
+
+    // Returns a decision only when it escalates past the previous one; repeats of the same
+    // signal inside the window do not restart a countdown that is already running.
+    public int onSignal(int source, long timestampNanos, float strength) {
+        lastSignalNanos[source] = timestampNanos;
+        lastStrength[source] = Math.max(0F, Math.min(1F, strength));
+
+        float motion = 0F;
+        float independent = 0F;
+        for (int i = 0; i < SOURCE_COUNT; i++) {
+            if (lastStrength[i] > 0F && timestampNanos - lastSignalNanos[i] <= windowNanos) {
+                float contribution = weights[i] * lastStrength[i];
+                if (isMotion(i)) {
+                    motion = Math.max(motion, contribution);
+                } else {
+                    independent += contribution;
+                }
+            }
+        }
+        float score = motion + independent;
+        lastScore = score;
+
+        int decision;
+        if (score >= immediateScore) {
+            decision = DECISION_IMMEDIATE;
+        } else if (score >= countdownScore) {
+            decision = DECISION_COUNTDOWN;
+        } else {
+            decision = DECISION_NONE;
+        }
+        if (decision <= lastDecision) return DECISION_NONE;
+        lastDecision = decision;
+        return decision;
+    }
+
+    static boolean isMotion(int source) {
+        return source == SOURCE_SHAKE || source == SOURCE_GESTURE || source == SOURCE_FALL;
+    }
+
+    public float getLastScore() {
+        return lastScore;
+    }
+
+    // Called once the alert is sent or cancelled so the next incident starts from zero.
+    public void reset() {
+        for (int i = 0; i < SOURCE_COUNT; i++) {
+            lastSignalNanos[i] = 0;
+            lastStrength[i] = 0F;
+        }
+        lastDecision = DECISION_NONE;
+        lastScore = 0F;
+    }
+}
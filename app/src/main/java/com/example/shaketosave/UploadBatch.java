@@ -0,0 +1,203 @@
+package com.example.shaketosave;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Wire format for uploaded records. Every record is a type, a millisecond timestamp, a row of
+// integers and a few strings. A batch stores each timestamp as the delta to the previous record
+// and each integer as the delta to the same column of the previous record of that type, all as
+// zigzag varints, then gzips the lot: consecutive incidents from one phone differ in a few digits
+// of latitude/longitude and hourly counters barely move, so most columns shrink to one byte.
+//
+// Batch (inside gzip): int magic, varint version, varint count, then per record:
+//   varint type, zigzag time delta, varint valueCount, zigzag value deltas, varint textCount,
+//   per text: varint (byteLength + 1, 0 for null), UTF-8 bytes
+public class UploadBatch {
+
+    static final int MAGIC = 0x53535542;
+    static final int VERSION = 1;
+
+    public static final int TYPE_INCIDENT = 1;
+    public static final int TYPE_DELIVERY = 2;
+    public static final int TYPE_METRICS = 3;
+    private static final int TYPE_LIMIT = 16;
+    private static final int MAX_TEXT_CHARS = 1000;
+
+    public static final class Record {
+        public final int type;
+        public final long time;
+        public final long[] values;
+        public final String[] texts;
+
+        public Record(int type, long time, long[] values, String... texts) {
+            this.type = type;
+            this.time = time;
+            this.values = values;
+            this.texts = texts;
+        }
+    }
+
+    // values: source, hasLocation, latitudeE7, longitudeE7, outcome, delivery, smsParts, latencyMicros;
+    // texts: place, detail.
+    public static Record incident(IncidentStore.Incident incident) {
+        return new Record(TYPE_INCIDENT, incident.startedAt, new long[]{
+                incident.source,
+                incident.hasLocation ? 1 : 0,
+                Math.round(incident.latitude * 1e7),
+                Math.round(incident.longitude * 1e7),
+                incident.outcome,
+                incident.delivery,
+                incident.smsParts,
+                incident.latencyMicros
+        }, incident.place, incident.detail);
+    }
+
+    public static Record delivery(long startedAt, int delivery) {
+        return new Record(TYPE_DELIVERY, startedAt, new long[]{delivery});
+    }
+
+    // values: detectorMode, locationMode, then the PowerStats counters of that hour in that mode.
+    public static Record metrics(long hourStartMillis, int detectorMode, int locationMode, long[] counters) {
+        long[] values = new long[2 + counters.length];
+        values[0] = detectorMode;
+        values[1] = locationMode;
+        System.arraycopy(counters, 0, values, 2, counters.length);
+        return new Record(TYPE_METRICS, hourStartMillis, values);
+    }
+
+    public static byte[] encode(List<Record> records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(MAGIC);
+            writeVarint(out, VERSION);
+            writeVarint(out, records.size());
+            long prevTime = 0;
+            long[][] prevValues = new long[TYPE_LIMIT][];
+            for (Record record : records) {
+                int type = record.type & (TYPE_LIMIT - 1);
+                writeVarint(out, record.type);
+                writeVarint(out, zigzag(record.time - prevTime));
+                prevTime = record.time;
+                long[] prev = prevValues[type];
+                writeVarint(out, record.values.length);
+                for (int i = 0; i < record.values.length; i++) {
+                    long base = prev != null && i < prev.length ? prev[i] : 0;
+                    writeVarint(out, zigzag(record.values[i] - base));
+                }
+                prevValues[type] = record.values;
+                writeVarint(out, record.texts.length);
+                for (String text : record.texts) {
+                    if (text == null) {
+                        writeVarint(out, 0);
+                        continue;
+                    }
+                    byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+                    writeVarint(out, utf8.length + 1);
+                    out.write(utf8);
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<Record> decode(byte[] batch) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(batch)))) {
+            if (in.readInt() != MAGIC || readVarint(in) != VERSION) throw new IOException("not an upload batch");
+            int count = (int) readVarint(in);
+            List<Record> records = new ArrayList<>(count);
+            long prevTime = 0;
+            long[][] prevValues = new long[TYPE_LIMIT][];
+            for (int r = 0; r < count; r++) {
+                int type = (int) readVarint(in);
+                long time = prevTime + unzigzag(readVarint(in));
+                prevTime = time;
+                long[] prev = prevValues[type & (TYPE_LIMIT - 1)];
+                long[] values = new long[(int) readVarint(in)];
+                for (int i = 0; i < values.length; i++) {
+                    long base = prev != null && i < prev.length ? prev[i] : 0;
+                    values[i] = base + unzigzag(readVarint(in));
+                }
+                prevValues[type & (TYPE_LIMIT - 1)] = values;
+                String[] texts = new String[(int) readVarint(in)];
+                for (int i = 0; i < texts.length; i++) {
+                    int length = (int) readVarint(in);
+                    if (length == 0) continue;
+                    byte[] utf8 = new byte[length - 1];
+                    in.readFully(utf8);
+                    texts[i] = new String(utf8, StandardCharsets.UTF_8);
+                }
+                records.add(new Record(type, time, values, texts));
+            }
+            return records;
+        }
+    }
+
+    // Spool format: fixed-width and appendable, so a record can be written the moment it happens
+    // and a torn last record after a crash is simply dropped.
+    static void writeRaw(DataOutputStream out, Record record) throws IOException {
+        out.writeByte(record.type);
+        out.writeLong(record.time);
+        out.writeShort(record.values.length);
+        for (long v : record.values) out.writeLong(v);
+        out.writeByte(record.texts.length);
+        for (String text : record.texts) {
+            out.writeBoolean(text != null);
+            if (text != null) {
+                out.writeUTF(text.length() > MAX_TEXT_CHARS ? text.substring(0, MAX_TEXT_CHARS) : text);
+            }
+        }
+    }
+
+    // Null at a clean end of stream or a torn record.
+    static Record readRaw(DataInputStream in) throws IOException {
+        try {
+            int type = in.readUnsignedByte();
+            long time = in.readLong();
+            long[] values = new long[in.readUnsignedShort()];
+            for (int i = 0; i < values.length; i++) values[i] = in.readLong();
+            String[] texts = new String[in.readUnsignedByte()];
+            for (int i = 0; i < texts.length; i++) texts[i] = in.readBoolean() ? in.readUTF() : null;
+            return new Record(type, time, values, texts);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarint(OutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarint(InputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IOException("varint too long");
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.shaketosave;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Process;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Drains IncidentUploader on unmetered networks only. The job waits out a batching window first so
+// one radio wake-up carries everything recorded meanwhile; failed runs are rescheduled by
+// JobScheduler with exponential backoff, and resume from the persisted chunk offset.
+public class UploadJobService extends JobService {
+
+    private static final int JOB_ID = 4501;
+    private static final long BATCH_WINDOW_MS = 15 * 60 * 1000L;
+    private static final long INITIAL_BACKOFF_MS = 60 * 1000L;
+
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    // A pending job already covers new records; rescheduling it would only push the window back.
+    public static void schedule(Context context) {
+        if (IncidentUploader.get(context).getEndpoint().isEmpty()) return;
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler == null || scheduler.getPendingJob(JOB_ID) != null) return;
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, UploadJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setMinimumLatency(BATCH_WINDOW_MS)
+                .setBackoffCriteria(INITIAL_BACKOFF_MS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .setPersisted(true)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        stopped.set(false);
+        new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            IncidentUploader uploader = IncidentUploader.get(this);
+            boolean done = uploader.upload(stopped);
+            if (done) DataFiles.refresh(this, uploader.getEndpoint(), stopped);
+            if (!stopped.get()) jobFinished(params, !done);
+        }, "SafeShake:upload").start();
+        return true;
+    }
+
+    // Network lost or constraints no longer met: stop between chunks and let the scheduler retry.
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        stopped.set(true);
+        return true;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.shaketosave;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+// Carries upload records from the UI process into :detector, the only process that writes the
+// upload spool. An SOS sent from MainActivity is recorded there but uploaded through here, the same
+// way as one dispatched by ShakeService, without starting detection.
+public class UploadReceiver extends BroadcastReceiver {
+
+    private static final String ACTION_ENQUEUE = "com.example.shaketosave.ENQUEUE_UPLOAD";
+    private static final String EXTRA_RECORDS = "com.example.shaketosave.extra.RECORDS";
+
+    public static void enqueue(Context context, UploadBatch.Record record) {
+        byte[] encoded;
+        try {
+            encoded = UploadBatch.encode(Collections.singletonList(record));
+        } catch (IOException e) {
+            return;
+        }
+        context.sendBroadcast(new Intent(context, UploadReceiver.class)
+                .setAction(ACTION_ENQUEUE)
+                .putExtra(EXTRA_RECORDS, encoded));
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        byte[] encoded = intent.getByteArrayExtra(EXTRA_RECORDS);
+        if (!ACTION_ENQUEUE.equals(intent.getAction()) || encoded == null) return;
+        List<UploadBatch.Record> records;
+        try {
+            records = UploadBatch.decode(encoded);
+        } catch (IOException e) {
+            return;
+        }
+        IncidentUploader uploader = IncidentUploader.get(context);
+        for (UploadBatch.Record record : records) uploader.enqueue(record);
+        UploadJobService.schedule(context);
+        // :detector may have no service running; keep it alive until the records are spooled.
+        PendingResult result = goAsync();
+        uploader.afterEnqueued(result::finish);
+    }
+}
@@ -7,7 +7,6 @@ import android.os.IBinder;
 import android.speech.RecognitionListener;
 import android.speech.RecognizerIntent;
 import android.speech.SpeechRecognizer;
-import android.widget.Toast;
 
 import java.util.ArrayList;
 
@@ -15,10 +14,12 @@ public class VoiceRecognitionService extends Service {
 
     private SpeechRecognizer speechRecognizer;
     private int helpCount = 0;
+    private PowerStats powerStats;
 
     @Override
     public void onCreate() {
         super.onCreate();
+        powerStats = PowerStats.get(this);
         speechRecognizer = SpeechRecognizer.createSpeechRecognizer(this);
         speechRecognizer.setRecognitionListener(new RecognitionListener() {
             @Override
@@ -54,13 +55,15 @@ public class VoiceRecognitionService extends Service {
                         if (match.equalsIgnoreCase("help")) {
                             helpCount++;
                             if (helpCount >= 2) {
-                                // Trigger your app's main functionality here
-                                Toast.makeText(VoiceRecognitionService.this, "Help activated!", Toast.LENGTH_SHORT).show();
+                                Intent trigger = new Intent(VoiceRecognitionService.this, ShakeService.class);
+                                trigger.setAction(ShakeService.ACTION_VOICE_TRIGGER);
+                                startService(trigger);
                                 helpCount = 0;
                             }
                         }
                     }
                 }
+                powerStats.increment(PowerStats.RECOGNIZER_RESTARTS);
                 startListening();
             }
 
@@ -0,0 +1,147 @@
+package com.example.shaketosave;
+
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowSensor;
+import org.robolectric.shadows.ShadowSensorManager;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+// Drives the sampler on a VirtualClock. The fake sensor delivers at whatever period the sampler
+// last registered, so boosts and their decay change the sample rate the way the HAL would.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 35)
+public class AdaptiveSamplerTest {
+
+    private static final long MS = 1_000_000L;
+    // What SENSOR_DELAY_GAME delivers on typical hardware.
+    private static final long GAME_PERIOD_NANOS = 20 * MS;
+
+    private VirtualClock clock;
+    private SensorManager sensorManager;
+    private ShadowSensorManager shadowSensors;
+    private Sensor accelerometer;
+    private AdaptiveSampler sampler;
+
+    @Before
+    public void setUp() {
+        sensorManager = ApplicationProvider.getApplicationContext().getSystemService(SensorManager.class);
+        shadowSensors = shadowOf(sensorManager);
+        accelerometer = ShadowSensor.newInstance(Sensor.TYPE_ACCELEROMETER);
+        shadowSensors.addSensor(accelerometer);
+        clock = new VirtualClock(1000 * MS);
+        ShakeDetector detector = new ShakeDetector();
+        detector.setClock(clock);
+        sampler = new AdaptiveSampler(sensorManager, accelerometer, detector);
+        sampler.setClock(clock);
+    }
+
+    private long periodNanos() {
+        int period = sampler.getPeriodUs();
+        return period == SensorManager.SENSOR_DELAY_GAME ? GAME_PERIOD_NANOS : period * 1000L;
+    }
+
+    // Samples of the given magnitude (in g, straight down) at the registered rate; returns how many.
+    private int feed(float g, long durationMs) {
+        long end = clock.elapsedRealtimeNanos() + durationMs * MS;
+        int samples = 0;
+        while (true) {
+            long t = clock.elapsedRealtimeNanos() + periodNanos();
+            if (t > end) break;
+            clock.advanceTo(t);
+            sampler.onSample(t, 0, 0, g * SensorManager.GRAVITY_EARTH);
+            samples++;
+        }
+        clock.advanceTo(end);
+        return samples;
+    }
+
+    @Test
+    public void idlesAtTenHzWithoutFallDetection() {
+        sampler.start();
+        assertEquals(100_000, sampler.getPeriodUs());
+        assertTrue(shadowSensors.hasListener(sampler, accelerometer));
+        assertEquals(10, feed(1F, 1000));
+        assertFalse(sampler.isBoosted());
+    }
+
+    // Fall detection needs at least 150 ms of free fall to be seen as several samples.
+    @Test
+    public void idlesAtTwentyFiveHzWithFallDetection() {
+        sampler.setFallDetector(new FallDetector());
+        sampler.start();
+        assertEquals(40_000, sampler.getPeriodUs());
+        assertEquals(25, feed(1F, 1000));
+        assertTrue(feed(0.1F, 150) >= 3);
+        // The free fall itself boosts.
+        assertEquals(SensorManager.SENSOR_DELAY_GAME, sampler.getPeriodUs());
+    }
+
+    @Test
+    public void peakBoostsUntilFourQuietSeconds() {
+        sampler.start();
+        feed(1F, 2000);
+
+        sampler.onSample(clock.elapsedRealtimeNanos(), 0, 0, 2.5F * SensorManager.GRAVITY_EARTH);
+        assertTrue(sampler.isBoosted());
+        // Re-registration is posted, not done inside the sensor callback.
+        assertEquals(100_000, sampler.getPeriodUs());
+        clock.advanceByMillis(0);
+        assertEquals(SensorManager.SENSOR_DELAY_GAME, sampler.getPeriodUs());
+
+        assertEquals(195, feed(1F, 3900));
+        assertTrue(sampler.isBoosted());
+        feed(1F, 200);
+        assertFalse(sampler.isBoosted());
+        clock.advanceByMillis(0);
+        assertEquals(100_000, sampler.getPeriodUs());
+        assertEquals(1, shadowSensors.getListeners().size());
+    }
+
+    // Another peak inside the window extends it instead of re-registering.
+    @Test
+    public void peaksInsideWindowExtendTheBoost() {
+        sampler.start();
+        for (int i = 0; i < 3; i++) {
+            feed(1F, 3000);
+            sampler.onSample(clock.elapsedRealtimeNanos(), 0, 0, 2.5F * SensorManager.GRAVITY_EARTH);
+            assertTrue(sampler.isBoosted());
+        }
+        feed(1F, 3900);
+        assertTrue(sampler.isBoosted());
+        feed(1F, 200);
+        assertFalse(sampler.isBoosted());
+    }
+
+    @Test
+    public void requestedBoostDecaysAfterItsDuration() {
+        sampler.start();
+        sampler.requestBoost(10_000);
+        clock.advanceByMillis(0);
+        assertEquals(SensorManager.SENSOR_DELAY_GAME, sampler.getPeriodUs());
+        feed(1F, 9900);
+        assertTrue(sampler.isBoosted());
+        feed(1F, 200);
+        clock.advanceByMillis(0);
+        assertEquals(100_000, sampler.getPeriodUs());
+    }
+
+    @Test
+    public void stopCancelsPendingRegistration() {
+        sampler.start();
+        sampler.onSample(clock.elapsedRealtimeNanos(), 0, 0, 2.5F * SensorManager.GRAVITY_EARTH);
+        sampler.stop();
+        clock.advanceByMillis(100);
+        assertEquals(0, sampler.getPeriodUs());
+        assertFalse(shadowSensors.hasListener(sampler));
+    }
+}
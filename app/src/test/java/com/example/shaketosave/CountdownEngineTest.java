@@ -0,0 +1,124 @@
+package com.example.shaketosave;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CountdownEngineTest {
+
+    private static final long START_NANOS = 10_000_000_000L;
+
+    // Stands in for the service's countdown host: every tick is one notify() of the prebuilt
+    // notification, so notifies per tick is exactly what the service pays in binder calls.
+    private static class Host implements CountdownEngine.Listener {
+        final VirtualClock clock;
+        final long[] tickAtMs = new long[1024];
+        final int[] secondsLeft = new int[1024];
+        int notifies;
+        int finishes;
+        long finishedAtMs;
+
+        Host(VirtualClock clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public void onTick(int left) {
+            tickAtMs[notifies] = clock.uptimeMillis();
+            secondsLeft[notifies] = left;
+            notifies++;
+        }
+
+        @Override
+        public void onFinish() {
+            finishes++;
+            finishedAtMs = clock.uptimeMillis();
+        }
+    }
+
+    @Test
+    public void ticksOncePerSecondOnTheStartGrid() {
+        VirtualClock clock = new VirtualClock(START_NANOS);
+        Host host = new Host(clock);
+        CountdownEngine engine = new CountdownEngine(clock, host);
+        long startMs = clock.uptimeMillis();
+
+        engine.start(5);
+        clock.advanceByMillis(10_000);
+
+        assertEquals(5, host.notifies);
+        assertEquals(5, engine.getTickCount());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(startMs + i * 1000L, host.tickAtMs[i]);
+            assertEquals(5 - i, host.secondsLeft[i]);
+        }
+        assertEquals(1, host.finishes);
+        assertEquals(startMs + 5000, host.finishedAtMs);
+        assertFalse(engine.isRunning());
+    }
+
+    // A main-thread stall does not push the remaining ticks back, and missed ticks are not replayed.
+    @Test
+    public void stallSkipsMissedTicks() {
+        VirtualClock clock = new VirtualClock(START_NANOS);
+        Host host = new Host(clock);
+        CountdownEngine engine = new CountdownEngine(clock, host);
+        long startMs = clock.uptimeMillis();
+
+        engine.start(5);
+        clock.advanceByMillis(500);
+        clock.stallForMillis(2000);
+        clock.advanceByMillis(10_000);
+
+        // 5 at the start, the overdue tick runs late as 3, then back on the grid.
+        assertEquals(4, host.notifies);
+        assertArrayEquals(new int[]{5, 3, 2, 1}, Arrays.copyOf(host.secondsLeft, 4));
+        assertEquals(startMs + 2500, host.tickAtMs[1]);
+        assertEquals(startMs + 3000, host.tickAtMs[2]);
+        assertEquals(1, host.finishes);
+        assertEquals(startMs + 5000, host.finishedAtMs);
+    }
+
+    @Test
+    public void cancelStopsTicks() {
+        VirtualClock clock = new VirtualClock(START_NANOS);
+        Host host = new Host(clock);
+        CountdownEngine engine = new CountdownEngine(clock, host);
+
+        engine.start(5);
+        clock.advanceByMillis(2500);
+        engine.cancel();
+        clock.advanceByMillis(10_000);
+
+        assertEquals(3, host.notifies);
+        assertEquals(0, host.finishes);
+        assertFalse(engine.isRunning());
+    }
+
+    // Each tick reposts the same Runnable; nothing is allocated and the host is called exactly once.
+    @Test
+    public void ticksDoNotAllocate() {
+        VirtualClock clock = new VirtualClock(START_NANOS);
+        Host host = new Host(clock);
+        CountdownEngine engine = new CountdownEngine(clock, host);
+        int seconds = host.tickAtMs.length;
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int round = 0; round < 3; round++) {
+            host.notifies = 0;
+            engine.start(seconds);
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < seconds; i++) clock.advanceByMillis(1000);
+            long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+            assertEquals(seconds, host.notifies);
+            assertEquals(seconds, engine.getTickCount());
+            // The first round loads classes and warms up.
+            if (round > 0) assertTrue(allocated + " bytes for " + seconds + " ticks", allocated < 1024);
+        }
+    }
+}
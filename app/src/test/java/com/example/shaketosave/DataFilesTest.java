@@ -0,0 +1,136 @@
+package com.example.shaketosave;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+// Fetches a place index and a motion model from a local HttpServer that serves them next to the
+// upload endpoint.
+public class DataFilesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String endpoint;
+    private byte[] served;
+    private long servedModified;
+    private final List<String> requests = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/", this::handle);
+        server.start();
+        endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/incidents";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private synchronized void handle(HttpExchange exchange) throws IOException {
+        String since = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        requests.add(exchange.getRequestURI().getPath() + (since != null ? " conditional" : ""));
+        if (served == null) {
+            exchange.sendResponseHeaders(404, -1);
+        } else if (since != null && servedModified > 0) {
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            exchange.getResponseHeaders().set("Last-Modified", "Tue, 14 Nov 2023 22:13:20 GMT");
+            exchange.sendResponseHeaders(200, served.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(served);
+            }
+        }
+        exchange.close();
+    }
+
+    private byte[] placeIndexBytes(String street) throws IOException {
+        File file = folder.newFile();
+        PlaceIndex.write(Collections.singletonList(new PlaceIndex.Place(51.5007, -0.1246, street, "")), file);
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private int fetch(File target) {
+        return DataFiles.fetch(endpoint, target, PlaceIndex::open, new AtomicBoolean());
+    }
+
+    @Test
+    public void downloadsNextToTheUploadEndpoint() throws IOException {
+        served = placeIndexBytes("Bridge St");
+        File target = new File(folder.getRoot(), PlaceIndex.FILE_NAME);
+
+        assertEquals(DataFiles.FETCH_UPDATED, fetch(target));
+        assertEquals(Collections.singletonList("/api/places.idx"), requests);
+        assertEquals("near Bridge St", PlaceIndex.open(target).describe(51.5010, -0.1250));
+        assertEquals(1_700_000_000_000L, target.lastModified());
+        assertFalse(new File(folder.getRoot(), PlaceIndex.FILE_NAME + ".download").exists());
+
+        // Next check asks only for changes.
+        servedModified = target.lastModified();
+        assertEquals(DataFiles.FETCH_UNCHANGED, fetch(target));
+        assertEquals("/api/places.idx conditional", requests.get(1));
+    }
+
+    @Test
+    public void corruptDownloadKeepsTheWorkingFile() throws IOException {
+        File target = new File(folder.getRoot(), PlaceIndex.FILE_NAME);
+        Files.write(target.toPath(), placeIndexBytes("Bridge St"));
+        target.setLastModified(0);
+
+        byte[] good = placeIndexBytes("Other St");
+        served = new byte[good.length / 2];
+        System.arraycopy(good, 0, served, 0, served.length);
+        assertEquals(DataFiles.FETCH_FAILED, fetch(target));
+        assertEquals("near Bridge St", PlaceIndex.open(target).describe(51.5010, -0.1250));
+    }
+
+    @Test
+    public void motionModelIsValidatedBeforeReplacing() throws IOException {
+        File model = folder.newFile();
+        MotionClassifier.Layer layer = new MotionClassifier.Layer(MotionClassifier.FEATURE_COUNT, 2, 0.01F, 1F,
+                new byte[MotionClassifier.FEATURE_COUNT * 2], new int[2]);
+        float[] ones = new float[MotionClassifier.FEATURE_COUNT];
+        Arrays.fill(ones, 1F);
+        MotionClassifier.write(model, new float[MotionClassifier.FEATURE_COUNT], ones, 0.03F, new MotionClassifier.Layer[]{layer});
+        byte[] good = Files.readAllBytes(model.toPath());
+        File target = new File(folder.getRoot(), MotionClassifier.FILE_NAME);
+
+        served = new byte[good.length - 4];
+        System.arraycopy(good, 0, served, 0, served.length);
+        assertEquals(DataFiles.FETCH_FAILED, DataFiles.fetch(endpoint, target, MotionClassifier::load, new AtomicBoolean()));
+        assertFalse(target.exists());
+
+        served = good;
+        assertEquals(DataFiles.FETCH_UPDATED, DataFiles.fetch(endpoint, target, MotionClassifier::load, new AtomicBoolean()));
+        assertEquals("/api/motion_model.bin", requests.get(1));
+        MotionClassifier.load(target);
+    }
+
+    @Test
+    public void nothingPublishedIsNotAFailure() {
+        File target = new File(folder.getRoot(), PlaceIndex.FILE_NAME);
+        assertEquals(DataFiles.FETCH_UNCHANGED, fetch(target));
+        assertFalse(target.exists());
+    }
+}
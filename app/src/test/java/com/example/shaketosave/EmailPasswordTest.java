@@ -0,0 +1,45 @@
+package com.example.shaketosave;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 35)
+public class EmailPasswordTest {
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+
+    @Test
+    public void storedOutsideBackedUpPreferences() {
+        EmailPassword.save(context, "app-password");
+        assertEquals("app-password", EmailPassword.load(context));
+        assertTrue(new File(context.getNoBackupFilesDir(), "email_password").exists());
+        assertFalse(context.getSharedPreferences("SafeShakePrefs", Context.MODE_PRIVATE).contains("email_password"));
+
+        EmailPassword.save(context, "");
+        assertEquals("", EmailPassword.load(context));
+        assertFalse(new File(context.getNoBackupFilesDir(), "email_password").exists());
+    }
+
+    @Test
+    public void migrationMovesTheLegacyPassword() {
+        SharedPreferences prefs = context.getSharedPreferences("SafeShakePrefs", Context.MODE_PRIVATE);
+        prefs.edit().putString("email_password", "old-password").putString("email_to", "a@example.com").commit();
+
+        EmailPassword.migrate(context);
+        assertEquals("old-password", EmailPassword.load(context));
+        assertFalse(prefs.contains("email_password"));
+        assertEquals("a@example.com", prefs.getString("email_to", ""));
+    }
+}
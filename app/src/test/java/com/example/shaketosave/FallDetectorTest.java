@@ -0,0 +1,70 @@
+package com.example.shaketosave;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class FallDetectorTest {
+
+    private static final long MAX_LATENCY_MS = 3000;
+
+    private long firedAtMs;
+    private long impactAtMs;
+    private int falls;
+
+    private void replay(String trace) throws IOException {
+        firedAtMs = -1;
+        falls = 0;
+        FallDetector detector = new FallDetector();
+        long[] now = new long[1];
+        detector.setOnFallListener(impactNanos -> {
+            falls++;
+            firedAtMs = now[0];
+            impactAtMs = impactNanos / 1_000_000L;
+        });
+
+        InputStream in = getClass().getClassLoader().getResourceAsStream("traces/" + trace);
+        assertNotNull("missing trace " + trace, in);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.isEmpty()) continue;
+                int comma = line.indexOf(',');
+                now[0] = Long.parseLong(line.substring(0, comma));
+                detector.onSample(now[0] * 1_000_000L, Float.parseFloat(line.substring(comma + 1)));
+            }
+        }
+    }
+
+    private void assertFall(String trace) throws IOException {
+        replay(trace);
+        assertEquals(trace, 1, falls);
+        assertTrue(trace + " latency " + (firedAtMs - impactAtMs) + "ms", firedAtMs - impactAtMs <= MAX_LATENCY_MS);
+    }
+
+    private void assertNoFall(String trace) throws IOException {
+        replay(trace);
+        assertEquals(trace, 0, falls);
+    }
+
+    @Test
+    public void detectsFalls() throws IOException {
+        assertFall("fall_forward.csv");
+        assertFall("fall_onto_bed.csv");
+        assertFall("fall_slow_rate.csv");
+    }
+
+    @Test
+    public void ignoresEverydayMotion() throws IOException {
+        assertNoFall("walking.csv");
+        assertNoFall("running.csv");
+        assertNoFall("sit_down_hard.csv");
+        assertNoFall("phone_drop_pickup.csv");
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.shaketosave;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class FollowUpPolicyTest {
+
+    private static final long MINUTE_MS = 60 * 1000L;
+    private static final long T0 = 1_700_000_000_000L;
+    private static final String PHONE = "+15550100";
+    private static final double LAT = 52.5200;
+    private static final double LNG = 13.4050;
+    // Roughly one metre of latitude.
+    private static final double METRE = 1.0 / 111_195;
+
+    private static FollowUpPolicy started() {
+        FollowUpPolicy policy = new FollowUpPolicy();
+        policy.start(T0, LAT, LNG, Collections.singletonList(PHONE));
+        return policy;
+    }
+
+    @Test
+    public void stopSharingEndsAnySession() {
+        FollowUpPolicy policy = started();
+        policy.stop();
+        assertFalse(policy.isActive(T0));
+        assertFalse(policy.shouldSend(PHONE, T0 + 10 * MINUTE_MS, LAT + 500 * METRE, LNG, 10F, true));
+    }
+
+    @Test
+    public void sessionExpires() {
+        FollowUpPolicy policy = started();
+        assertTrue(policy.isActive(T0 + FollowUpPolicy.SESSION_DURATION_MS - 1));
+        assertFalse(policy.isActive(T0 + FollowUpPolicy.SESSION_DURATION_MS));
+    }
+
+    @Test
+    public void stationarySenderOnlyGetsHeartbeats() {
+        FollowUpPolicy policy = started();
+        assertFalse(policy.shouldSend(PHONE, T0 + 9 * MINUTE_MS, LAT + 10 * METRE, LNG, 0F, true));
+        assertTrue(policy.shouldSend(PHONE, T0 + 10 * MINUTE_MS, LAT + 10 * METRE, LNG, 0F, true));
+    }
+
+    @Test
+    public void intervalShrinksWithSpeed() {
+        double moved = LAT + 100 * METRE;
+        FollowUpPolicy policy = started();
+        // Walking: every two minutes.
+        assertFalse(policy.shouldSend(PHONE, T0 + 90_000, moved, LNG, 1.5F, true));
+        assertTrue(policy.shouldSend(PHONE, T0 + 2 * MINUTE_MS, moved, LNG, 1.5F, true));
+        // In a vehicle: every minute.
+        assertFalse(policy.shouldSend(PHONE, T0 + 50_000, moved, LNG, 15F, true));
+        assertTrue(policy.shouldSend(PHONE, T0 + MINUTE_MS, moved, LNG, 15F, true));
+        // Without a reported speed it is derived from the distance: 100 m in 40 s is walking pace.
+        assertFalse(policy.shouldSend(PHONE, T0 + 40_000, moved, LNG, 0F, false));
+    }
+
+    @Test
+    public void farMoveSendsAfterMinimumGap() {
+        double far = LAT + 300 * METRE;
+        FollowUpPolicy policy = started();
+        assertFalse(policy.shouldSend(PHONE, T0 + 20_000, far, LNG, 0F, true));
+        assertTrue(policy.shouldSend(PHONE, T0 + 30_000, far, LNG, 0F, true));
+    }
+
+    @Test
+    public void recipientsAreRateLimitedIndependently() {
+        FollowUpPolicy policy = started();
+        String other = "+15550199";
+        // Not notified at the start, so the first update goes out immediately.
+        assertTrue(policy.shouldSend(other, T0 + 1000, LAT, LNG, 0F, true));
+        assertFalse(policy.shouldSend(PHONE, T0 + 1000, LAT, LNG, 0F, true));
+
+        long now = T0;
+        double lat = LAT;
+        // Far moves every 30 s until the per-recipient cap (the start message counts as the first).
+        for (int i = 1; i < 40; i++) {
+            now += 30_000;
+            lat += 300 * METRE;
+            assertTrue("message " + i, policy.shouldSend(PHONE, now, lat, LNG, 20F, true));
+            policy.onSent(PHONE, now, lat, LNG);
+        }
+        assertFalse(policy.shouldSend(PHONE, now + 30_000, lat + 300 * METRE, LNG, 20F, true));
+        assertTrue(policy.shouldSend(other, now + 30_000, lat + 300 * METRE, LNG, 20F, true));
+    }
+}
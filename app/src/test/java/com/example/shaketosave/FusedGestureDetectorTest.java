@@ -0,0 +1,242 @@
+package com.example.shaketosave;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FusedGestureDetectorTest {
+
+    private static final int RATE_HZ = 50;
+    private static final long START_NANOS = 10_000_000_000L;
+    private static final long MS = 1_000_000L;
+    private static final float G = 9.80665F;
+
+    private static final int[] EVERYDAY = {
+            MotionGenerator.STILL, MotionGenerator.WALKING, MotionGenerator.RUNNING,
+            MotionGenerator.DRIVING, MotionGenerator.DROP, MotionGenerator.JOGGING
+    };
+
+    // Counts full triggers (the shake count reaching what the dispatcher acts on).
+    private static class Triggers implements ShakeDetector.OnShakeListener {
+        int shakes;
+        int triggers;
+
+        @Override
+        public void onShake(int count) {
+            shakes++;
+            if (count >= SosDispatcher.MIN_SHAKE_COUNT) triggers++;
+        }
+    }
+
+    // Synthetic angular rate to go with MotionGenerator's accelerometer stream: a deliberate shake
+    // swings the wrist, so rotation follows the linear acceleration; steps and impacts barely turn
+    // the phone. Gyro samples arrive 5 ms after the accelerometer and in batches of four, so the
+    // detector has to merge both streams by timestamp.
+    private static class Pair implements MotionGenerator.Sink {
+        private final VirtualClock clock;
+        private final Random random;
+        private final FusedGestureDetector fused;
+        private final ShakeDetector magnitude;
+        private final long[] gyroTimes = new long[4];
+        private final float[] gyroRates = new float[4];
+        private int pending;
+        private float base;
+        private float gain;
+
+        Pair(long seed, FusedGestureDetector fused, ShakeDetector magnitude) {
+            this.clock = new VirtualClock(START_NANOS);
+            this.random = new Random(seed);
+            this.fused = fused;
+            this.magnitude = magnitude;
+            fused.setClock(clock);
+            magnitude.setClock(clock);
+        }
+
+        void activity(int activity) {
+            switch (activity) {
+                case MotionGenerator.SHAKE:
+                    base = 2.0F;
+                    gain = 2.5F;
+                    break;
+                case MotionGenerator.WALKING:
+                    base = 0.4F;
+                    gain = 0.3F;
+                    break;
+                case MotionGenerator.RUNNING:
+                case MotionGenerator.JOGGING:
+                    base = 0.9F;
+                    gain = 0.3F;
+                    break;
+                case MotionGenerator.DROP:
+                    // Tumbling during the fall, then stopped by the floor.
+                    base = 2.5F;
+                    gain = 0.2F;
+                    break;
+                default:
+                    base = 0.02F;
+                    gain = 0.05F;
+            }
+        }
+
+        @Override
+        public void onSample(long t, float x, float y, float z) {
+            clock.advanceTo(t);
+            float gForce = (float) Math.sqrt(x * x + y * y + z * z) / G;
+            if (fused != null) fused.onAccelSample(t, gForce);
+            if (magnitude != null) magnitude.onSample(t, x, y, z);
+
+            gyroTimes[pending] = t + 5 * MS;
+            gyroRates[pending] = Math.max(0F, base + gain * Math.abs(gForce - 1F) + (float) random.nextGaussian() * 0.05F);
+            if (++pending == gyroTimes.length) {
+                if (fused != null) for (int i = 0; i < pending; i++) fused.onGyroSample(gyroTimes[i], gyroRates[i]);
+                pending = 0;
+            }
+        }
+    }
+
+    private static void feed(MotionGenerator motion, Pair pair, int activity, long durationMs) {
+        pair.activity(activity);
+        motion.generate(activity, durationMs, pair);
+    }
+
+    @Test
+    public void accelWaitsForGyroAndPairsWithLatestEarlierSample() {
+        FusedGestureDetector detector = new FusedGestureDetector();
+        detector.setClock(new VirtualClock(START_NANOS));
+        Triggers listener = new Triggers();
+        detector.setOnShakeListener(listener);
+
+        // A strong swing, but the gyro sample that covers it has not arrived yet.
+        detector.onAccelSample(1000 * MS, 3F);
+        assertEquals(0, listener.shakes);
+        detector.onGyroSample(990 * MS, 6F);
+        assertEquals(0, listener.shakes);
+        // The next gyro sample is later, so the accelerometer sample is scored against the one at 990 ms.
+        detector.onGyroSample(1010 * MS, 0F);
+        assertEquals(1, listener.shakes);
+        assertEquals(2F / 1.7F + 1F, detector.getLastScore(), 1e-4);
+    }
+
+    @Test
+    public void staleGyroSampleIsNotPaired() {
+        FusedGestureDetector detector = new FusedGestureDetector();
+        detector.setClock(new VirtualClock(START_NANOS));
+        Triggers listener = new Triggers();
+        detector.setOnShakeListener(listener);
+
+        detector.onGyroSample(1000 * MS, 8F);
+        detector.onAccelSample(1100 * MS, 3F);
+        detector.onGyroSample(1200 * MS, 8F);
+
+        assertEquals(0, listener.shakes);
+        assertEquals(2F / 1.7F, detector.getLastScore(), 1e-4);
+    }
+
+    @Test
+    public void stalledGyroDelaysAccelByAtMostTheBuffer() {
+        FusedGestureDetector detector = new FusedGestureDetector();
+        detector.setClock(new VirtualClock(START_NANOS));
+        detector.onGyroSample(0, 0F);
+        for (int i = 1; i <= 40; i++) detector.onAccelSample(i * 20 * MS, 1F + i * 0.01F);
+
+        // Sixteen samples stay queued waiting for the gyro; the rest were scored without it.
+        assertEquals(24 * 0.01F / 1.7F, detector.getLastScore(), 1e-4);
+    }
+
+    @Test
+    public void shakeTriggersBothDetectors() {
+        for (int seed = 0; seed < 50; seed++) {
+            Triggers fusedListener = new Triggers();
+            Triggers magnitudeListener = new Triggers();
+            FusedGestureDetector fused = new FusedGestureDetector();
+            fused.setOnShakeListener(fusedListener);
+            ShakeDetector magnitude = new ShakeDetector();
+            magnitude.setOnShakeListener(magnitudeListener);
+            Pair pair = new Pair(seed, fused, magnitude);
+            MotionGenerator motion = new MotionGenerator(seed, RATE_HZ, 0.03F, START_NANOS);
+
+            feed(motion, pair, MotionGenerator.STILL, 2000);
+            feed(motion, pair, MotionGenerator.SHAKE, 2000);
+            feed(motion, pair, MotionGenerator.STILL, 2000);
+
+            assertTrue("seed " + seed, magnitudeListener.triggers > 0);
+            assertTrue("seed " + seed, fusedListener.triggers > 0);
+        }
+    }
+
+    // Same streams into both detectors: the fused one must not false-trigger more often than the
+    // magnitude detector on any activity, and never on the heel strikes that fool the magnitude one.
+    @Test
+    public void fusedFalseTriggersNoMoreThanMagnitude() {
+        for (int activity : EVERYDAY) {
+            Triggers fusedListener = new Triggers();
+            Triggers magnitudeListener = new Triggers();
+            for (int seed = 0; seed < 10; seed++) {
+                FusedGestureDetector fused = new FusedGestureDetector();
+                fused.setOnShakeListener(fusedListener);
+                ShakeDetector magnitude = new ShakeDetector();
+                magnitude.setOnShakeListener(magnitudeListener);
+                Pair pair = new Pair(1000 + seed, fused, magnitude);
+                MotionGenerator motion = new MotionGenerator(1000 + seed, RATE_HZ, 0.03F, START_NANOS);
+                for (int i = 0; i < 6; i++) feed(motion, pair, activity, 10_000);
+            }
+            assertTrue("activity " + activity + ": fused " + fusedListener.triggers + " vs magnitude " + magnitudeListener.triggers,
+                    fusedListener.triggers <= magnitudeListener.triggers);
+            if (activity == MotionGenerator.JOGGING) {
+                assertTrue(magnitudeListener.triggers > 0);
+                assertEquals(0, fusedListener.triggers);
+            }
+        }
+    }
+
+    // Cost per sample is measured as allocation, which does not depend on how loaded the machine is:
+    // neither detector may allocate on the sensor thread.
+    @Test
+    public void neitherDetectorAllocatesPerSample() {
+        FusedGestureDetector fused = new FusedGestureDetector();
+        fused.setOnShakeListener(new Triggers());
+        ShakeDetector magnitude = new ShakeDetector();
+        magnitude.setOnShakeListener(new Triggers());
+
+        int samples = 60 * RATE_HZ;
+        long[] times = new long[samples];
+        float[][] values = new float[samples][];
+        MotionGenerator motion = new MotionGenerator(7, RATE_HZ, 0.03F, START_NANOS);
+        int[] index = new int[1];
+        motion.generate(MotionGenerator.WALKING, samples * 1000L / RATE_HZ, (t, x, y, z) -> {
+            times[index[0]] = t;
+            values[index[0]++] = new float[]{x, y, z};
+        });
+        VirtualClock clock = new VirtualClock(START_NANOS);
+        fused.setClock(clock);
+        magnitude.setClock(clock);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int round = 0; round < 2; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < samples; i++) {
+                float[] v = values[i];
+                magnitude.onSample(times[i], v[0], v[1], v[2]);
+            }
+            long magnitudeBytes = threads.getThreadAllocatedBytes(threadId) - before;
+
+            before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < samples; i++) {
+                float[] v = values[i];
+                fused.onAccelSample(times[i], (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]) / G);
+                fused.onGyroSample(times[i] + 5 * MS, 0.5F);
+            }
+            long fusedBytes = threads.getThreadAllocatedBytes(threadId) - before;
+
+            // The first round loads classes and warms up; only the second one counts.
+            if (round == 1) {
+                assertTrue(magnitudeBytes + " bytes", magnitudeBytes < 1024);
+                assertTrue(fusedBytes + " bytes", fusedBytes < 1024);
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.shaketosave;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GestureMatcherTest {
+
+    private static final int RATE_HZ = 50;
+    private static final long GRID_NANOS = 20_000_000L;
+    private static final long START_NANOS = 10_000_000_000L;
+    private static final long SECOND_NANOS = 1_000_000_000L;
+    private static final float G = 9.80665F;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Three quick flicks, as a user would record them.
+    private static float flicks(float p) {
+        return 1F + 1.5F * (float) Math.sin(2 * Math.PI * 3 * p);
+    }
+
+    // One slow swing: same amplitude, different shape.
+    private static float swing(float p) {
+        return 1F + 1.5F * (float) Math.sin(Math.PI * p);
+    }
+
+    private interface Shape {
+        float at(float p);
+    }
+
+    // A 50 Hz magnitude stream fed sample by sample to one or more consumers, each report tagged
+    // with the index of the sample that produced it.
+    private static class Stream {
+        final List<Float> values = new ArrayList<>();
+        final Random random;
+
+        Stream(long seed) {
+            random = new Random(seed);
+        }
+
+        Stream still(long ms) {
+            for (long i = 0; i < ms * RATE_HZ / 1000; i++) values.add(1F + (float) random.nextGaussian() * 0.02F);
+            return this;
+        }
+
+        // warp > 1 slows the end of the gesture down relative to its start.
+        Stream gesture(Shape shape, long ms, double warp) {
+            int n = (int) (ms * RATE_HZ / 1000);
+            for (int i = 0; i < n; i++) {
+                float p = (float) Math.pow(i / (double) (n - 1), warp);
+                values.add(shape.at(p) + (float) random.nextGaussian() * 0.05F);
+            }
+            return this;
+        }
+
+        Stream motion(int activity, long ms) {
+            new MotionGenerator(random.nextLong(), RATE_HZ, 0.03F, START_NANOS).generate(activity, ms,
+                    (t, x, y, z) -> values.add((float) Math.sqrt(x * x + y * y + z * z) / G));
+            return this;
+        }
+    }
+
+    private static class Reports implements ShakeDetector.OnShakeListener {
+        final List<String> seen = new ArrayList<>();
+        int sample;
+
+        @Override
+        public void onShake(int count) {
+        }
+
+        @Override
+        public void onGesture(int templateIndex, float distance) {
+            seen.add(templateIndex + "@" + sample + ":" + distance);
+        }
+    }
+
+    // Each run starts well after anything the matcher has seen, since its grid only moves forward.
+    private static Reports run(GestureMatcher matcher, Stream stream, long startNanos) {
+        Reports reports = new Reports();
+        matcher.setOnShakeListener(reports);
+        for (int i = 0; i < stream.values.size(); i++) {
+            reports.sample = i;
+            matcher.onSample(startNanos + i * GRID_NANOS, stream.values.get(i));
+        }
+        return reports;
+    }
+
+    private static GestureMatcher recorded(Shape shape, long ms) {
+        GestureMatcher matcher = new GestureMatcher();
+        Stream take = new Stream(1).still(300).gesture(shape, ms, 1.0).still(3000);
+        boolean[] saved = new boolean[1];
+        matcher.startRecording(START_NANOS, 3000, result -> saved[0] = result);
+        for (int i = 0; i < take.values.size(); i++) matcher.onSample(START_NANOS + i * GRID_NANOS, take.values.get(i));
+        assertTrue(saved[0]);
+        assertEquals(1, matcher.getTemplateCount());
+        return matcher;
+    }
+
+    @Test
+    public void recordedTemplateMatchesTimeWarpedReplay() {
+        GestureMatcher matcher = recorded(GestureMatcherTest::flicks, 1200);
+
+        // Slower overall and unevenly so: the last flick takes noticeably longer than the first.
+        Reports reports = run(matcher, new Stream(2).still(2000).gesture(GestureMatcherTest::flicks, 1500, 1.3).still(2000),
+                START_NANOS + 60 * SECOND_NANOS);
+        assertEquals(reports.seen.toString(), 1, reports.seen.size());
+        assertTrue(reports.seen.get(0), reports.seen.get(0).startsWith("0@"));
+
+        reports = run(matcher, new Stream(3).still(2000).gesture(GestureMatcherTest::flicks, 1000, 0.8).still(2000),
+                START_NANOS + 120 * SECOND_NANOS);
+        assertEquals(reports.seen.toString(), 1, reports.seen.size());
+    }
+
+    @Test
+    public void unrelatedMotionDoesNotMatch() {
+        GestureMatcher matcher = recorded(GestureMatcherTest::flicks, 1200);
+        Stream everyday = new Stream(4)
+                .motion(MotionGenerator.STILL, 30_000)
+                .motion(MotionGenerator.WALKING, 60_000)
+                .motion(MotionGenerator.RUNNING, 60_000)
+                .motion(MotionGenerator.DRIVING, 60_000)
+                .motion(MotionGenerator.DROP, 10_000)
+                .still(2000).gesture(GestureMatcherTest::swing, 1200, 1.0).still(2000);
+
+        assertEquals(Arrays.asList(), run(matcher, everyday, START_NANOS + 60 * SECOND_NANOS).seen);
+    }
+
+    // The skipped columns and abandoned cells must not change what is reported: a plain SPRING over
+    // full columns reports the same matches, at the same samples, with the same distances.
+    @Test
+    public void pruningMatchesUnprunedDtw() {
+        float[][] templates = {templateOf(GestureMatcherTest::flicks, 1200), templateOf(GestureMatcherTest::swing, 800)};
+        GestureMatcher matcher = new GestureMatcher();
+        for (float[] t : templates) matcher.addTemplate(t);
+
+        Random random = new Random(5);
+        Stream stream = new Stream(6);
+        for (int i = 0; i < 12; i++) {
+            stream.still(500 + random.nextInt(2000));
+            switch (i % 4) {
+                case 0:
+                    stream.gesture(GestureMatcherTest::flicks, 900 + random.nextInt(700), 0.7 + random.nextDouble() * 0.6);
+                    break;
+                case 1:
+                    stream.gesture(GestureMatcherTest::swing, 600 + random.nextInt(500), 0.8 + random.nextDouble() * 0.4);
+                    break;
+                case 2:
+                    stream.motion(MotionGenerator.WALKING, 10_000);
+                    break;
+                default:
+                    stream.motion(MotionGenerator.SHAKE, 2_000);
+            }
+        }
+
+        List<String> pruned = run(matcher, stream, START_NANOS).seen;
+        List<String> reference = new ArrayList<>();
+        for (int k = 0; k < templates.length; k++) {
+            Spring spring = new Spring(templates[k], k, reference);
+            for (int i = 0; i < stream.values.size(); i++) spring.step(i, stream.values.get(i) - 1F);
+        }
+        // The matcher interleaves templates per sample; order the reference the same way.
+        reference.sort((a, b) -> Integer.compare(sampleOf(a), sampleOf(b)) != 0
+                ? Integer.compare(sampleOf(a), sampleOf(b)) : a.compareTo(b));
+
+        assertTrue(pruned.toString(), pruned.size() >= 6);
+        assertEquals(reference, pruned);
+    }
+
+    private static int sampleOf(String report) {
+        return Integer.parseInt(report.substring(report.indexOf('@') + 1, report.indexOf(':')));
+    }
+
+    private static float[] templateOf(Shape shape, long ms) {
+        Stream stream = new Stream(7).gesture(shape, ms, 1.0);
+        float[] values = new float[stream.values.size()];
+        for (int i = 0; i < values.length; i++) values[i] = stream.values.get(i) - 1F;
+        return values;
+    }
+
+    // Textbook SPRING with star padding and no pruning: every cell of every column, real costs.
+    private static class Spring {
+        private final float[] y;
+        private final float eps;
+        private final int index;
+        private final List<String> out;
+        private float[] d;
+        private int[] s;
+        private float dmin = Float.MAX_VALUE;
+        private int te;
+
+        Spring(float[] y, int index, List<String> out) {
+            this.y = y;
+            this.index = index;
+            this.out = out;
+            float sum = 0;
+            for (float v : y) sum += Math.abs(v);
+            eps = 0.35F * sum;
+            d = new float[y.length];
+            s = new int[y.length];
+            Arrays.fill(d, Float.MAX_VALUE);
+        }
+
+        void step(int t, float x) {
+            float[] nd = new float[y.length];
+            int[] ns = new int[y.length];
+            for (int i = 0; i < y.length; i++) {
+                float best;
+                int start;
+                if (i == 0) {
+                    best = 0F;
+                    start = t;
+                } else {
+                    best = nd[i - 1];
+                    start = ns[i - 1];
+                    if (d[i - 1] < best) {
+                        best = d[i - 1];
+                        start = s[i - 1];
+                    }
+                    if (d[i] < best) {
+                        best = d[i];
+                        start = s[i];
+                    }
+                }
+                nd[i] = best == Float.MAX_VALUE ? Float.MAX_VALUE : best + Math.abs(x - y[i]);
+                ns[i] = start;
+            }
+            d = nd;
+            s = ns;
+            int m = y.length - 1;
+            if (d[m] <= eps && d[m] < dmin) {
+                dmin = d[m];
+                te = t;
+            }
+            if (dmin == Float.MAX_VALUE) return;
+            for (int i = 0; i <= m; i++) {
+                if (d[i] < dmin && s[i] <= te) return;
+            }
+            out.add(index + "@" + t + ":" + dmin / eps);
+            for (int i = 0; i <= m; i++) {
+                if (s[i] <= te) d[i] = Float.MAX_VALUE;
+            }
+            dmin = Float.MAX_VALUE;
+        }
+    }
+
+    @Test
+    public void templatesSurviveSaveAndLoad() throws IOException {
+        GestureMatcher matcher = recorded(GestureMatcherTest::flicks, 1200);
+        matcher.addTemplate(templateOf(GestureMatcherTest::swing, 800));
+        File file = new File(folder.getRoot(), "gestures.bin");
+        matcher.save(file);
+
+        GestureMatcher loaded = new GestureMatcher();
+        loaded.load(file);
+        assertEquals(2, loaded.getTemplateCount());
+
+        Stream stream = new Stream(8).still(1000).gesture(GestureMatcherTest::flicks, 1400, 1.2)
+                .still(1000).gesture(GestureMatcherTest::swing, 900, 0.9).still(1000);
+        List<String> expected = run(matcher, stream, START_NANOS + 60 * SECOND_NANOS).seen;
+        // The swing also fits inside a single flick, so only require that both templates fire.
+        assertTrue(expected.toString(), expected.stream().anyMatch(r -> r.startsWith("0@")));
+        assertTrue(expected.toString(), expected.stream().anyMatch(r -> r.startsWith("1@")));
+        assertEquals(expected, run(loaded, stream, START_NANOS).seen);
+
+        loaded.load(new File(folder.getRoot(), "missing.bin"));
+        assertEquals(0, loaded.getTemplateCount());
+    }
+
+    // Per-sample cost with the full four templates under noisy motion. Measured as allocation so the
+    // check holds on any machine: the matcher runs on the sensor thread and must not allocate there.
+    @Test
+    public void fourTemplatesDoNotAllocatePerSample() {
+        GestureMatcher matcher = new GestureMatcher();
+        for (int k = 0; k < GestureMatcher.MAX_TEMPLATES; k++) {
+            matcher.addTemplate(templateOf(k % 2 == 0 ? GestureMatcherTest::flicks : GestureMatcherTest::swing, 1200));
+        }
+        int[] matches = new int[1];
+        matcher.setOnShakeListener(new ShakeDetector.OnShakeListener() {
+            @Override
+            public void onShake(int count) {
+            }
+
+            @Override
+            public void onGesture(int templateIndex, float distance) {
+                matches[0]++;
+            }
+        });
+        Stream stream = new Stream(9).motion(MotionGenerator.RUNNING, 30_000).motion(MotionGenerator.SHAKE, 5_000);
+        float[] values = new float[stream.values.size()];
+        for (int i = 0; i < values.length; i++) values[i] = stream.values.get(i);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long t = START_NANOS;
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (float v : values) {
+                matcher.onSample(t, v);
+                t += GRID_NANOS;
+            }
+            long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+            // The first round loads classes and warms up.
+            if (round > 0) assertTrue(allocated + " bytes", allocated < 1024);
+        }
+    }
+}
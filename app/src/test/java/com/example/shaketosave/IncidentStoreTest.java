@@ -0,0 +1,128 @@
+package com.example.shaketosave;
+
+import android.database.Cursor;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 35)
+public class IncidentStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private IncidentStore store;
+
+    @Before
+    public void setUp() {
+        IncidentStore.resetForTest();
+        store = IncidentStore.get(ApplicationProvider.getApplicationContext());
+    }
+
+    @After
+    public void tearDown() {
+        IncidentStore.resetForTest();
+    }
+
+    private static IncidentStore.Incident sent(long startedAt, long token) {
+        IncidentStore.Incident incident = new IncidentStore.Incident(startedAt, TriggerFusion.SOURCE_SHAKE);
+        incident.outcome = IncidentStore.OUTCOME_SENT;
+        incident.token = token;
+        return incident;
+    }
+
+    private List<IncidentStore.Incident> newestFirst() throws InterruptedException {
+        AtomicReference<List<IncidentStore.Incident>> page = new AtomicReference<>();
+        CountDownLatch loaded = new CountDownLatch(1);
+        store.loadPage(null, 10, (incidents, counts) -> {
+            page.set(incidents);
+            loaded.countDown();
+        });
+        assertTrue(loaded.await(5, TimeUnit.SECONDS));
+        return page.get();
+    }
+
+    // Two alerts in the same millisecond used to be indistinguishable; and a late report for the
+    // first used to land on whichever incident was dispatched last.
+    @Test
+    public void deliveryReportsFindTheirOwnIncident() throws InterruptedException {
+        store.record(sent(1_000, 11));
+        store.record(sent(1_000, 22));
+        store.updateDelivery(22, IncidentStore.DELIVERY_SENT);
+        store.updateDelivery(11, IncidentStore.DELIVERY_DELIVERED);
+        // Never downgraded by a late "sent".
+        store.updateDelivery(11, IncidentStore.DELIVERY_SENT);
+        store.updateDelivery(33, IncidentStore.DELIVERY_ERROR);
+
+        List<IncidentStore.Incident> incidents = newestFirst();
+        assertEquals(2, incidents.size());
+        assertEquals(22, incidents.get(0).token);
+        assertEquals(IncidentStore.DELIVERY_SENT, incidents.get(0).delivery);
+        assertEquals(11, incidents.get(1).token);
+        assertEquals(IncidentStore.DELIVERY_DELIVERED, incidents.get(1).delivery);
+    }
+
+    @Test
+    public void flushNowWritesWithoutTheBatchingDelay() {
+        store.record(sent(2_000, 44));
+        store.flushNow(1000);
+        try (Cursor cursor = store.getReadableDatabase().rawQuery("SELECT COUNT(*) FROM incidents", null)) {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(1, cursor.getInt(0));
+        }
+    }
+
+    // After a process restart the token is no longer cached and is resolved through its index.
+    @Test
+    public void reportAfterRestartFindsTheRow() throws InterruptedException {
+        store.record(sent(2_000, 44));
+        IncidentStore.resetForTest();
+        store = IncidentStore.get(ApplicationProvider.getApplicationContext());
+        store.updateDelivery(44, IncidentStore.DELIVERY_DELIVERED);
+
+        List<IncidentStore.Incident> incidents = newestFirst();
+        assertEquals(1, incidents.size());
+        assertEquals(IncidentStore.DELIVERY_DELIVERED, incidents.get(0).delivery);
+    }
+
+    // The export runs after queued writes, so an incident recorded just before the SOS email is in it.
+    @Test
+    public void exportLogIncludesQueuedIncidents() throws IOException {
+        IncidentStore.Incident placed = sent(3_000, 55);
+        placed.hasLocation = true;
+        placed.latitude = 52.52;
+        placed.longitude = 13.405;
+        placed.place = "Mitte, \"Berlin\"";
+        store.record(sent(1_000, 11));
+        store.record(placed);
+
+        File file = folder.newFile("incidents.csv");
+        store.exportLog(file);
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0), lines.get(0).startsWith("started_at,"));
+        assertEquals("3000,0,0,0,0,0,52.520000,13.405000,\"Mitte, \"\"Berlin\"\"\",", lines.get(1));
+        assertTrue(lines.get(2), lines.get(2).startsWith("1000,0,0,0,0,0,,,,"));
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.shaketosave;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+// Runs the uploader against a local HttpServer that implements the chunked, resumable protocol.
+public class IncidentUploaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String endpoint;
+    private File dir;
+
+    // Server side: committed bytes per upload id, and a switch to fail requests.
+    private final Map<String, ByteArrayOutputStream> uploads = new HashMap<>();
+    private final List<Long> offsetsSeen = new ArrayList<>();
+    private int failAfterChunks = Integer.MAX_VALUE;
+    // Non-zero: answer every chunk with this code and the unchanged committed offset.
+    private int stuckCode;
+    private int requests;
+    private long bytesReceived;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/incidents", this::handle);
+        server.start();
+        endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/incidents";
+        dir = new File(folder.getRoot(), "uploads");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private synchronized void handle(HttpExchange exchange) throws IOException {
+        String id = exchange.getRequestHeaders().getFirst(IncidentUploader.HEADER_DEVICE)
+                + "/" + exchange.getRequestHeaders().getFirst(IncidentUploader.HEADER_UPLOAD);
+        long offset = Long.parseLong(exchange.getRequestHeaders().getFirst(IncidentUploader.HEADER_OFFSET));
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readAllBytes();
+        }
+        bytesReceived += body.length;
+        requests++;
+        ByteArrayOutputStream committed = uploads.computeIfAbsent(id, k -> new ByteArrayOutputStream());
+        int code;
+        if (stuckCode != 0) {
+            code = stuckCode;
+        } else if (failAfterChunks-- <= 0) {
+            code = 503;
+        } else if (offset != committed.size()) {
+            code = 409;
+        } else {
+            offsetsSeen.add(offset);
+            committed.write(body);
+            code = 200;
+        }
+        exchange.getResponseHeaders().set(IncidentUploader.HEADER_OFFSET, Integer.toString(committed.size()));
+        exchange.sendResponseHeaders(code, -1);
+        exchange.close();
+    }
+
+    private static List<UploadBatch.Record> incidents(int count) {
+        Random random = new Random(45);
+        List<UploadBatch.Record> records = new ArrayList<>();
+        long time = 1_760_000_000_000L;
+        for (int i = 0; i < count; i++) {
+            time += 60_000 + random.nextInt(3_600_000);
+            long lat = 525_200_000L + random.nextInt(20_000);
+            long lng = 134_050_000L + random.nextInt(20_000);
+            records.add(new UploadBatch.Record(UploadBatch.TYPE_INCIDENT, time, new long[]{
+                    random.nextInt(4), 1, lat, lng, random.nextInt(3), 2, 1, 800_000 + random.nextInt(400_000)
+            }, i % 3 == 0 ? "Alexanderplatz, Mitte" : null, "sent to 1 contact"));
+            records.add(UploadBatch.delivery(time, IncidentStore.DELIVERY_DELIVERED));
+            long[] counters = new long[PowerStats.COUNTER_COUNT];
+            for (int c = 0; c < counters.length; c++) counters[c] = 1000 + random.nextInt(100);
+            records.add(UploadBatch.metrics(time / 3_600_000 * 3_600_000, 0, 1, counters));
+        }
+        return records;
+    }
+
+    private static void assertSameRecords(List<UploadBatch.Record> expected, List<UploadBatch.Record> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            UploadBatch.Record e = expected.get(i);
+            UploadBatch.Record a = actual.get(i);
+            assertEquals(e.type, a.type);
+            assertEquals(e.time, a.time);
+            assertArrayEquals(e.values, a.values);
+            assertArrayEquals(e.texts, a.texts);
+        }
+    }
+
+    private List<UploadBatch.Record> received() throws IOException {
+        List<UploadBatch.Record> records = new ArrayList<>();
+        List<String> ids = new ArrayList<>(uploads.keySet());
+        Collections.sort(ids);
+        for (String id : ids) records.addAll(UploadBatch.decode(uploads.get(id).toByteArray()));
+        return records;
+    }
+
+    private IncidentUploader uploader(int chunkBytes) {
+        IncidentUploader uploader = new IncidentUploader(dir, chunkBytes);
+        uploader.setEndpoint(endpoint);
+        return uploader;
+    }
+
+    @Test
+    public void deltaEncodingAndGzipShrinkBatch() throws IOException {
+        List<UploadBatch.Record> records = incidents(100);
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(raw)) {
+            for (UploadBatch.Record r : records) UploadBatch.writeRaw(out, r);
+        }
+        byte[] batch = UploadBatch.encode(records);
+
+        assertSameRecords(records, UploadBatch.decode(batch));
+        assertTrue(batch.length * 4 < raw.size());
+    }
+
+    @Test
+    public void uploadsBatchesInChunks() throws IOException {
+        List<UploadBatch.Record> records = incidents(300);
+        IncidentUploader uploader = uploader(512);
+        for (UploadBatch.Record r : records) uploader.enqueue(r);
+
+        assertTrue(uploader.upload(new AtomicBoolean()));
+        // 900 records seal into two batches of at most MAX_BATCH_RECORDS.
+        assertEquals(2, uploads.size());
+        assertTrue(offsetsSeen.size() > uploads.size());
+        assertSameRecords(records, received());
+        assertEquals(bytesReceived, uploader.getUploadedBytes());
+        // Only the device id and the batch sequence stay behind.
+        String[] left = dir.list();
+        Arrays.sort(left);
+        assertArrayEquals(new String[]{"device.id", "sequence.bin"}, left);
+
+        // Nothing left: a second run sends nothing.
+        assertTrue(uploader.upload(new AtomicBoolean()));
+        assertEquals(bytesReceived, uploader.getUploadedBytes());
+    }
+
+    // Every batch was uploaded and deleted, so the next one must not reuse the first one's name:
+    // the server would answer 409 at the old length and the new records would be dropped.
+    @Test
+    public void batchAfterEmptyQueueGetsNewId() throws IOException {
+        List<UploadBatch.Record> records = incidents(40);
+        List<UploadBatch.Record> first = records.subList(0, 60);
+        List<UploadBatch.Record> second = records.subList(60, records.size());
+        IncidentUploader uploader = uploader(512);
+        for (UploadBatch.Record r : first) uploader.enqueue(r);
+        assertTrue(uploader.upload(new AtomicBoolean()));
+        assertEquals(1, uploads.size());
+
+        // A new process, as after the job was rescheduled.
+        uploader = uploader(512);
+        for (UploadBatch.Record r : second) uploader.enqueue(r);
+        assertTrue(uploader.upload(new AtomicBoolean()));
+
+        assertEquals(2, uploads.size());
+        assertSameRecords(records, received());
+    }
+
+    @Test
+    public void interruptedBatchResumesFromCommittedOffset() throws IOException {
+        List<UploadBatch.Record> records = incidents(150);
+        IncidentUploader first = uploader(256);
+        for (UploadBatch.Record r : records) first.enqueue(r);
+        failAfterChunks = 3;
+        assertFalse(first.upload(new AtomicBoolean()));
+        long sentBeforeFailure = bytesReceived;
+
+        // A new process picks up the persisted offset and never resends committed bytes.
+        failAfterChunks = Integer.MAX_VALUE;
+        bytesReceived = 0;
+        offsetsSeen.clear();
+        IncidentUploader second = uploader(256);
+        assertTrue(second.upload(new AtomicBoolean()));
+
+        assertEquals(3 * 256L, (long) offsetsSeen.get(0));
+        int batchLength = 0;
+        for (ByteArrayOutputStream upload : uploads.values()) batchLength += upload.size();
+        assertEquals(batchLength, sentBeforeFailure - 256 + bytesReceived);
+        assertSameRecords(records, received());
+    }
+
+    @Test
+    public void serverOffsetWinsAfterServerLosesState() throws IOException {
+        List<UploadBatch.Record> records = incidents(150);
+        IncidentUploader uploader = uploader(256);
+        for (UploadBatch.Record r : records) uploader.enqueue(r);
+        failAfterChunks = 2;
+        assertFalse(uploader.upload(new AtomicBoolean()));
+
+        uploads.clear();
+        failAfterChunks = Integer.MAX_VALUE;
+        assertTrue(uploader.upload(new AtomicBoolean()));
+        assertSameRecords(records, received());
+    }
+
+    // A server that acknowledges chunks without committing them, or keeps answering 409 at the
+    // offset the client already sent, must end the run instead of looping on one chunk.
+    @Test
+    public void serverThatNeverAdvancesEndsTheRun() throws IOException {
+        List<UploadBatch.Record> records = incidents(50);
+        for (int code : new int[]{200, 409}) {
+            uploads.clear();
+            requests = 0;
+            stuckCode = code;
+            IncidentUploader uploader = uploader(256);
+            if (code == 200) for (UploadBatch.Record r : records) uploader.enqueue(r);
+            assertFalse(code + "", uploader.upload(new AtomicBoolean()));
+            assertEquals(code + "", IncidentUploader.MAX_STALLED_CHUNKS, requests);
+        }
+
+        // The batch is still there for a well-behaved server.
+        stuckCode = 0;
+        uploads.clear();
+        assertTrue(uploader(256).upload(new AtomicBoolean()));
+        assertSameRecords(records, received());
+    }
+
+    // The second of two batches cannot be sealed: the first must leave the pending file at once,
+    // or the retry seals and uploads its records again.
+    @Test
+    public void failedSealDoesNotDuplicateSealedBatches() throws IOException {
+        List<UploadBatch.Record> records = incidents(200);
+        assertTrue(dir.mkdirs());
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(dir, "pending.bin")))) {
+            for (UploadBatch.Record r : records) UploadBatch.writeRaw(out, r);
+        }
+        // A non-empty directory where the second batch would be renamed to.
+        File blocker = new File(dir, "batch-000000000002.bin");
+        assertTrue(blocker.mkdir());
+        assertTrue(new File(blocker, "x").createNewFile());
+
+        IncidentUploader uploader = uploader(4096);
+        assertTrue(uploader.upload(new AtomicBoolean()));
+        assertEquals(1, uploads.size());
+
+        assertTrue(new File(blocker, "x").delete());
+        assertTrue(blocker.delete());
+        assertTrue(uploader.upload(new AtomicBoolean()));
+        assertEquals(2, uploads.size());
+        assertSameRecords(records, received());
+    }
+
+    @Test
+    public void stoppedJobLeavesBatchForNextRun() throws IOException {
+        IncidentUploader uploader = uploader(256);
+        for (UploadBatch.Record r : incidents(50)) uploader.enqueue(r);
+        assertFalse(uploader.upload(new AtomicBoolean(true)));
+        assertTrue(uploads.isEmpty());
+        assertTrue(uploader.upload(new AtomicBoolean()));
+        assertEquals(150, received().size());
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.shaketosave;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesHaveTheirOwnBuckets() {
+        for (int v = 0; v < 8; v++) {
+            assertEquals(v, LatencyHistogram.bucketIndex(v));
+            assertEquals(v, LatencyHistogram.bucketUpperBound(v));
+        }
+    }
+
+    // Every value lands in a bucket whose range contains it, and bucket widths stay within one
+    // eighth of the value.
+    @Test
+    public void bucketsCoverValuesWithBoundedError() {
+        Random random = new Random(26);
+        int previous = 0;
+        for (long v = 0; v < 100_000; v++) {
+            int index = LatencyHistogram.bucketIndex(v);
+            assertTrue(v + " went back to bucket " + index, index >= previous);
+            previous = index;
+            assertBucketContains(v);
+        }
+        for (int i = 0; i < 10_000; i++) assertBucketContains(random.nextLong() >>> (24 + random.nextInt(40)));
+    }
+
+    private static void assertBucketContains(long v) {
+        int index = LatencyHistogram.bucketIndex(v);
+        long upper = LatencyHistogram.bucketUpperBound(index);
+        long lower = index == 0 ? 0 : LatencyHistogram.bucketUpperBound(index - 1) + 1;
+        assertTrue(v + " not in [" + lower + ", " + upper + "]", lower <= v && v <= upper);
+        assertTrue(v + " in a bucket " + (upper - lower + 1) + " wide", upper - lower <= Math.max(0, v / 8));
+    }
+
+    @Test
+    public void hugeValuesClampToLastBucket() {
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(Long.MAX_VALUE);
+        h.record(-5);
+        assertEquals(2, h.getCount());
+        assertEquals(0, h.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, h.getPercentile(100));
+    }
+
+    @Test
+    public void percentilesMatchExactValuesWithinBucketError() {
+        Random random = new Random(7);
+        long[] values = new long[20_000];
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal around 2 ms, the shape of the pipeline stages.
+            values[i] = (long) Math.exp(7.6 + random.nextGaussian());
+            h.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double p : new double[]{1, 50, 90, 95, 99, 100}) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long estimate = h.getPercentile(p);
+            assertTrue(p + "th: " + estimate + " vs " + exact, estimate >= exact && estimate <= exact + exact / 8);
+        }
+        assertEquals(values[values.length - 1], h.getMax());
+    }
+
+    @Test
+    public void encodeDecodeRoundTrip() {
+        Random random = new Random(3);
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < 5000; i++) h.record(random.nextInt(2_000_000));
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.decode(h.encode());
+
+        assertEquals(h.getCount(), copy.getCount());
+        assertEquals(h.getMax(), copy.getMax());
+        for (int p = 0; p <= 100; p += 5) assertEquals(h.getPercentile(p), copy.getPercentile(p));
+        assertEquals(h.encode(), copy.encode());
+    }
+
+    @Test
+    public void corruptEncodingDecodesEmpty() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(42);
+        h.decode("17,3:2,x:1");
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+        h.decode(null);
+        assertEquals(0, h.getCount());
+    }
+}
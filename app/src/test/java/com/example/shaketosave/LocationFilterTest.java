@@ -0,0 +1,150 @@
+package com.example.shaketosave;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+// Replays synthetic walking and driving trails with noisy fixes at a low-power interval and
+// compares the filtered, dead-reckoned position with the last raw fix at random SOS moments.
+public class LocationFilterTest {
+
+    private static final double METERS_PER_DEGREE = 6_371_000.0 * Math.PI / 180.0;
+    private static final double START_LAT = 19.0760;
+    private static final double START_LNG = 72.8777;
+
+    private static class Result {
+        double rawError;
+        double filteredError;
+        double withinClaimed;
+    }
+
+    // speed in m/s; heading drifts smoothly so the trail curves.
+    private static Result replay(long seed, double speed, double turnRate, long fixIntervalMs, float accuracy) {
+        Random random = new Random(seed);
+        LocationFilter filter = new LocationFilter();
+        double cosLat = Math.cos(Math.toRadians(START_LAT));
+        double x = 0, y = 0, heading = random.nextDouble() * 2 * Math.PI;
+        double sigma = accuracy / 1.51;
+        long stepMs = 100;
+        long durationMs = 60 * 60 * 1000L;
+
+        double lastFixLat = 0, lastFixLng = 0;
+        boolean haveFix = false;
+        double rawSum = 0, filteredSum = 0;
+        int samples = 0, within = 0;
+
+        for (long t = 0; t <= durationMs; t += stepMs) {
+            heading += turnRate * Math.sin(t / 40_000.0) * stepMs / 1000.0;
+            x += speed * Math.sin(heading) * stepMs / 1000.0;
+            y += speed * Math.cos(heading) * stepMs / 1000.0;
+            double lat = START_LAT + y / METERS_PER_DEGREE;
+            double lng = START_LNG + x / (METERS_PER_DEGREE * cosLat);
+            long nanos = t * 1_000_000L;
+
+            if (t % fixIntervalMs == 0) {
+                double fixLat = lat + random.nextGaussian() * sigma / METERS_PER_DEGREE;
+                double fixLng = lng + random.nextGaussian() * sigma / (METERS_PER_DEGREE * cosLat);
+                // Like a phone's fix: speed is always reported, bearing is noise when standing still.
+                float reportedSpeed = (float) Math.abs(speed + random.nextGaussian() * 0.5);
+                float bearing = (float) Math.toDegrees(speed > 0.5 ? heading + random.nextGaussian() * 0.1
+                        : random.nextDouble() * 2 * Math.PI);
+                filter.onFix(nanos, fixLat, fixLng, accuracy, true, reportedSpeed, bearing);
+                lastFixLat = fixLat;
+                lastFixLng = fixLng;
+                haveFix = true;
+            } else if (haveFix && t > 60_000 && random.nextInt(50) == 0) {
+                // An SOS at an arbitrary moment between fixes.
+                filter.estimateAt(nanos);
+                double raw = distance(lastFixLat, lastFixLng, lat, lng);
+                double filtered = distance(filter.getLatitude(), filter.getLongitude(), lat, lng);
+                rawSum += raw;
+                filteredSum += filtered;
+                if (filtered <= filter.getAccuracyMeters()) within++;
+                samples++;
+            }
+        }
+        Result result = new Result();
+        result.rawError = rawSum / samples;
+        result.filteredError = filteredSum / samples;
+        result.withinClaimed = within / (double) samples;
+        return result;
+    }
+
+    private static double distance(double lat1, double lng1, double lat2, double lng2) {
+        double dy = (lat1 - lat2) * METERS_PER_DEGREE;
+        double dx = (lng1 - lng2) * METERS_PER_DEGREE * Math.cos(Math.toRadians(lat1));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static void check(String name, Result r, double minImprovement) {
+        assertTrue(name + " filtered " + r.filteredError + " vs raw " + r.rawError,
+                r.filteredError < r.rawError * (1 - minImprovement));
+        // The reported accuracy should mean roughly what Location.getAccuracy() means (68%).
+        assertTrue(name + " calibration " + r.withinClaimed, r.withinClaimed > 0.5 && r.withinClaimed < 0.95);
+    }
+
+    @Test
+    public void walkingWithBalancedPowerFixes() {
+        check("walk", replay(1, 1.4, 0.05, 10_000, 25F), 0.3);
+    }
+
+    @Test
+    public void drivingWithBalancedPowerFixes() {
+        // Between 10 s fixes a car covers ~150 m; dead reckoning makes up most of that.
+        check("drive", replay(2, 14.0, 0.08, 10_000, 20F), 0.5);
+    }
+
+    @Test
+    public void standingStillAveragesNoise() {
+        check("still", replay(3, 0, 0, 5_000, 30F), 0.4);
+    }
+
+    // Fixes arrive on the main thread, next to sensor events: measured as allocation, not time.
+    @Test
+    public void updateDoesNotAllocate() {
+        LocationFilter filter = new LocationFilter();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long nanos = 0;
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 10_000; i++) {
+                nanos += 1_000_000_000L;
+                filter.onFix(nanos, START_LAT + i * 1e-5, START_LNG, 10F, true, 1.1F, 0F);
+                filter.estimateAt(nanos + 500_000_000L);
+            }
+            long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+            // The first round loads classes and warms up.
+            if (round > 0) assertTrue(allocated + " bytes", allocated < 1024);
+        }
+    }
+
+    // Follow-up messages report the filtered speed rather than the last fix's.
+    @Test
+    public void speedComesFromFilteredVelocity() {
+        LocationFilter filter = new LocationFilter();
+        filter.onFix(0, START_LAT, START_LNG, 10F, false, 0F, 0F);
+        assertFalse(filter.hasSpeed());
+        double metresPerDegreeLng = METERS_PER_DEGREE * Math.cos(Math.toRadians(START_LAT));
+        for (int i = 1; i <= 30; i++) {
+            filter.onFix(i * 1_000_000_000L, START_LAT, START_LNG + i * 10.0 / metresPerDegreeLng, 5F, false, 0F, 0F);
+        }
+        assertTrue(filter.hasSpeed());
+        assertEquals(10F, filter.getSpeedMps(), 0.5F);
+    }
+
+    @Test
+    public void longGapRestartsFromNextFix() {
+        LocationFilter filter = new LocationFilter();
+        filter.onFix(0, START_LAT, START_LNG, 10F, true, 10F, 90F);
+        long later = 20 * 60 * 1_000_000_000L;
+        filter.onFix(later, START_LAT + 0.1, START_LNG, 10F, false, 0F, 0F);
+        filter.estimateAt(later);
+        assertEquals(START_LAT + 0.1, filter.getLatitude(), 1e-9);
+        assertEquals(START_LNG, filter.getLongitude(), 1e-9);
+        assertEquals(10F, filter.getAccuracyMeters(), 0.5F);
+    }
+}
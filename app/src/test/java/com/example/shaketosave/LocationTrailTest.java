@@ -0,0 +1,76 @@
+package com.example.shaketosave;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LocationTrailTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<String> points(LocationTrail trail) throws IOException {
+        File file = new File(folder.getRoot(), "trail.gpx");
+        assertTrue(trail.writeGpx(file, "SOS <1>"));
+        List<String> points = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (line.startsWith("<trkpt")) points.add(line);
+        }
+        return points;
+    }
+
+    @Test
+    public void writesFixesOldestFirst() throws IOException {
+        LocationTrail trail = new LocationTrail();
+        trail.add(T0, 52.52, 13.405, 12.4F);
+        trail.add(T0 + 5000, 52.5205, 13.4055, 8F);
+
+        List<String> points = points(trail);
+        assertEquals(2, points.size());
+        assertEquals("<trkpt lat=\"52.520000\" lon=\"13.405000\"><time>2023-11-14T22:13:20Z</time><desc>~12 m</desc></trkpt>",
+                points.get(0));
+        assertTrue(points.get(1), points.get(1).contains("<time>2023-11-14T22:13:25Z</time>"));
+    }
+
+    @Test
+    public void keepsOnlyTheLatestFixes() throws IOException {
+        LocationTrail trail = new LocationTrail();
+        for (int i = 0; i < LocationTrail.CAPACITY + 10; i++) trail.add(T0 + i * 1000L, i, 0, 5F);
+        assertEquals(LocationTrail.CAPACITY, trail.size());
+
+        List<String> points = points(trail);
+        assertEquals(LocationTrail.CAPACITY, points.size());
+        assertTrue(points.get(0), points.get(0).startsWith("<trkpt lat=\"10.000000\""));
+        assertTrue(points.get(LocationTrail.CAPACITY - 1).startsWith("<trkpt lat=\"369.000000\""));
+    }
+
+    // The copy handed to the email thread does not see fixes added afterwards.
+    @Test
+    public void copyIsIndependent() throws IOException {
+        LocationTrail trail = new LocationTrail();
+        trail.add(T0, 1, 2, 3F);
+        LocationTrail copy = trail.copy();
+        trail.add(T0 + 1000, 4, 5, 6F);
+
+        assertEquals(1, copy.size());
+        assertEquals(1, points(copy).size());
+    }
+
+    @Test
+    public void emptyTrailWritesNothing() throws IOException {
+        File file = new File(folder.getRoot(), "empty.gpx");
+        assertFalse(new LocationTrail().writeGpx(file, "SOS"));
+        assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.shaketosave;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MagnitudeStatsTest {
+
+    private static final int N = 200_000;
+
+    private interface Distribution {
+        double next(Random random);
+    }
+
+    // Where the estimate falls in the exact sorted sample, as a fraction of it.
+    private static double rankOf(double[] sorted, double value) {
+        int i = Arrays.binarySearch(sorted, value);
+        return (i < 0 ? -i - 1 : i) / (double) sorted.length;
+    }
+
+    private static void assertQuantiles(String name, Distribution distribution) {
+        Random random = new Random(29);
+        double[] values = new double[N];
+        MagnitudeStats stats = new MagnitudeStats();
+        for (int i = 0; i < N; i++) {
+            values[i] = distribution.next(random);
+            stats.add(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(name + " p99", 0.99, rankOf(values, stats.getP99()), 0.0005);
+        assertEquals(name + " p99.9", 0.999, rankOf(values, stats.getP999()), 0.0002);
+    }
+
+    @Test
+    public void p2MatchesExactQuantiles() {
+        assertQuantiles("uniform", Random::nextDouble);
+        assertQuantiles("normal", r -> 1 + 0.1 * r.nextGaussian());
+        assertQuantiles("exponential", r -> -Math.log(1 - r.nextDouble()));
+        // Resting at 1 g with occasional handling peaks: the shape the calibrator sees.
+        assertQuantiles("everyday", r -> r.nextDouble() < 0.02 ? 1.5 + r.nextDouble() : 1 + 0.03 * r.nextGaussian());
+    }
+
+    @Test
+    public void fewSamplesUseExactOrderStatistic() {
+        MagnitudeStats stats = new MagnitudeStats();
+        assertEquals(0, stats.getP99(), 0);
+        for (double x : new double[]{3, 1, 2}) stats.add(x);
+        assertEquals(3, stats.getP99(), 0);
+        assertEquals(3, stats.getP999(), 0);
+    }
+
+    @Test
+    public void meanAndStdDevMatchDirectComputation() {
+        Random random = new Random(5);
+        double[] values = new double[10_000];
+        MagnitudeStats stats = new MagnitudeStats();
+        double sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1 + 0.2 * random.nextGaussian();
+            sum += values[i];
+            stats.add(values[i]);
+        }
+        double mean = sum / values.length;
+        double squares = 0;
+        for (double v : values) squares += (v - mean) * (v - mean);
+        assertEquals(mean, stats.getMean(), 1e-12);
+        assertEquals(Math.sqrt(squares / (values.length - 1)), stats.getStdDev(), 1e-12);
+    }
+
+    // A decoded copy continues exactly where the original was.
+    @Test
+    public void encodeDecodeRoundTrip() {
+        Random random = new Random(11);
+        MagnitudeStats original = new MagnitudeStats();
+        for (int i = 0; i < 50_000; i++) original.add(1 + 0.05 * random.nextGaussian());
+        MagnitudeStats copy = new MagnitudeStats();
+        copy.decode(original.encode());
+        for (int i = 0; i < 50_000; i++) {
+            double x = 1 + 0.05 * random.nextGaussian();
+            original.add(x);
+            copy.add(x);
+        }
+        assertEquals(original.encode(), copy.encode());
+    }
+
+    @Test
+    public void corruptEncodingLeavesStateUntouched() {
+        MagnitudeStats stats = new MagnitudeStats();
+        for (int i = 0; i < 100; i++) stats.add(i);
+        String before = stats.encode();
+
+        MagnitudeStats other = new MagnitudeStats();
+        for (int i = 0; i < 100; i++) other.add(1000 + i);
+        String[] parts = other.encode().split(";");
+        // The p99 estimator parses, the p99.9 one does not.
+        stats.decode(parts[0] + ";" + parts[1] + ";" + parts[2] + ";" + parts[3] + ";" + "x");
+        assertEquals(before, stats.encode());
+        stats.decode("1;2;3");
+        assertEquals(before, stats.encode());
+    }
+}
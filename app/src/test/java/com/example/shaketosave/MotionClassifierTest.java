@@ -0,0 +1,157 @@
+package com.example.shaketosave;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+// Trains the model once with MotionModelTrainer on mixed-rate windows, round-trips it through the
+// model file, then checks accuracy on unseen seeds at every detector rate. Each test loads its own
+// instance: the classifier keeps a sample ring and counters, so a shared one makes results
+// depend on test order.
+public class MotionClassifierTest {
+
+    private static final long START_NANOS = 1_000_000_000L;
+    // Relative to the module directory, where Gradle runs unit tests.
+    private static final File BUNDLED_MODEL = new File("src/main/assets", MotionClassifier.FILE_NAME);
+    // One candidate window, features plus inference. Measured at ~1-3 us with the JIT and ~19 us
+    // interpreted on a desktop JVM; the budget leaves room for a slow CI machine and is still
+    // 0.5% of the 20 ms between samples at the boosted rate.
+    private static final double BUDGET_MICROS_PER_WINDOW = 100;
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static File modelFile;
+    private MotionClassifier model;
+
+    @BeforeClass
+    public static void train() throws Exception {
+        modelFile = folder.newFile(MotionClassifier.FILE_NAME);
+        MotionModelTrainer.train(MotionModelTrainer.collectAllRates(0, MotionModelTrainer.TRAINING_SEEDS), modelFile);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        model = MotionClassifier.load(modelFile);
+    }
+
+    private boolean predict(float[] features) {
+        model.classify(features);
+        float[] logits = model.getLogits();
+        return logits[MotionClassifier.CLASS_CONFIRM] >= logits[MotionClassifier.CLASS_REJECT];
+    }
+
+    @Test
+    public void separatesShakesFromJoggingOnUnseenSeedsAtEveryRate() {
+        for (int rate : MotionModelTrainer.RATES_HZ) {
+            List<MotionModelTrainer.Window> test = MotionModelTrainer.collect(1000, 1200, rate);
+            int shakes = 0, shakesConfirmed = 0, jogs = 0, jogsRejected = 0;
+            for (MotionModelTrainer.Window w : test) {
+                boolean confirmed = predict(w.features);
+                if (w.label == MotionClassifier.CLASS_CONFIRM) {
+                    shakes++;
+                    if (confirmed) shakesConfirmed++;
+                } else {
+                    jogs++;
+                    if (!confirmed) jogsRejected++;
+                }
+            }
+            assertTrue(rate + " Hz: shakes confirmed " + shakesConfirmed + "/" + shakes, shakesConfirmed >= shakes * 0.98);
+            assertTrue(rate + " Hz: jogging rejected " + jogsRejected + "/" + jogs, jogsRejected >= jogs * 0.95);
+        }
+    }
+
+    @Test
+    public void detectorStopsCountingRejectedCandidates() {
+        int[] triggers = new int[1];
+        VirtualClock clock = new VirtualClock(START_NANOS);
+        ShakeDetector detector = new ShakeDetector();
+        detector.setClock(clock);
+        detector.setClassifier(model);
+        detector.setOnShakeListener(count -> {
+            if (count >= SosDispatcher.MIN_SHAKE_COUNT) triggers[0]++;
+        });
+        MotionGenerator.Sink sink = (t, x, y, z) -> {
+            clock.advanceTo(t);
+            detector.onSample(t, x, y, z);
+        };
+        MotionGenerator motion = new MotionGenerator(77, 50, 0.03F, START_NANOS);
+        motion.generate(MotionGenerator.JOGGING, 60_000, sink);
+        int joggingTriggers = triggers[0];
+        motion.generate(MotionGenerator.STILL, 4000, sink);
+        motion.generate(MotionGenerator.SHAKE, 2000, sink);
+
+        assertTrue("jogging raised " + joggingTriggers + " triggers", joggingTriggers <= 1);
+        assertTrue(triggers[0] > joggingTriggers);
+        assertTrue(model.getRejections() > 0);
+    }
+
+    // A rate switch inside the window (idle 10 Hz until the boost lands) is still a shake.
+    @Test
+    public void confirmsShakeAcrossBoostSwitch() {
+        MotionGenerator idle = new MotionGenerator(9, 10, 0.03F, START_NANOS);
+        MotionGenerator.Sink sink = (t, x, y, z) -> model.onSample(t, x / 9.80665F, y / 9.80665F, z / 9.80665F);
+        idle.generate(MotionGenerator.STILL, 2000, sink);
+        idle.generate(MotionGenerator.SHAKE, 400, sink);
+        MotionGenerator boosted = new MotionGenerator(10, 50, 0.03F, idle.getTimeNanos());
+        boosted.generate(MotionGenerator.SHAKE, 800, sink);
+
+        assertTrue(model.confirm(boosted.getTimeNanos()));
+    }
+
+    // The asset is what MotionModelTrainer writes; retraining without updating it fails here.
+    @Test
+    public void bundledModelIsTheTrainedModel() throws Exception {
+        assertArrayEquals(Files.readAllBytes(modelFile.toPath()), Files.readAllBytes(BUNDLED_MODEL.toPath()));
+        MotionClassifier.load(BUNDLED_MODEL);
+    }
+
+    // Warmed up, then the median of 15 runs of 2000 evaluations against a generous budget.
+    @Test
+    public void inferenceStaysWithinBudget() {
+        MotionGenerator motion = new MotionGenerator(5, 50, 0.03F, START_NANOS);
+        motion.generate(MotionGenerator.SHAKE, 3000, (t, x, y, z) -> model.onSample(t, x / 9.80665F, y / 9.80665F, z / 9.80665F));
+        long now = motion.getTimeNanos();
+        for (int i = 0; i < 20_000; i++) model.confirm(now);
+
+        int windows = 2000;
+        long[] runs = new long[15];
+        for (int r = 0; r < runs.length; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < windows; i++) model.confirm(now);
+            runs[r] = System.nanoTime() - start;
+        }
+        Arrays.sort(runs);
+        double medianMicros = runs[runs.length / 2] / 1000.0 / windows;
+        assertTrue(medianMicros + " us per window", medianMicros < BUDGET_MICROS_PER_WINDOW);
+    }
+
+    // Candidates are evaluated on the sensor thread: features and inference must not allocate.
+    @Test
+    public void inferenceDoesNotAllocate() {
+        MotionGenerator motion = new MotionGenerator(5, 50, 0.03F, START_NANOS);
+        motion.generate(MotionGenerator.SHAKE, 3000, (t, x, y, z) -> model.onSample(t, x / 9.80665F, y / 9.80665F, z / 9.80665F));
+        long now = motion.getTimeNanos();
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 10_000; i++) model.confirm(now);
+            long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+            // The first round loads classes and warms up.
+            if (round > 0) assertTrue(allocated + " bytes", allocated < 1024);
+        }
+        assertEquals(30_000, model.getEvaluations());
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.shaketosave;
+
+import java.util.Random;
+
+// Seeded synthetic accelerometer stream in m/s^2. Each segment picks a random phone orientation,
+// then adds an activity-specific acceleration along gravity and across it, plus Gaussian noise.
+class MotionGenerator {
+
+    static final int STILL = 0;
+    static final int WALKING = 1;
+    static final int RUNNING = 2;
+    static final int DRIVING = 3;
+    static final int DROP = 4;
+    static final int SHAKE = 5;
+    // Running with hard heel strikes: short vertical spikes that do cross the shake threshold.
+    static final int JOGGING = 6;
+
+    private static final float G = 9.80665F;
+
+    interface Sink {
+        void onSample(long timestampNanos, float x, float y, float z);
+    }
+
+    private final Random random;
+    private final long periodNanos;
+    private final float noiseGravity;
+    private long nowNanos;
+
+    private final float[] up = new float[3];
+    private final float[] side = new float[3];
+
+    MotionGenerator(long seed, int rateHz, float noiseGravity, long startNanos) {
+        this.random = new Random(seed);
+        this.periodNanos = 1_000_000_000L / rateHz;
+        this.noiseGravity = noiseGravity;
+        this.nowNanos = startNanos;
+    }
+
+    long getTimeNanos() {
+        return nowNanos;
+    }
+
+    Random getRandom() {
+        return random;
+    }
+
+    void generate(int activity, long durationMs, Sink sink) {
+        pickOrientation();
+        long samples = durationMs * 1_000_000L / periodNanos;
+        double frequency;
+        double amplitude;
+        switch (activity) {
+            case WALKING:
+                frequency = 1.6 + random.nextDouble() * 0.6;
+                amplitude = 0.25 + random.nextDouble() * 0.2;
+                break;
+            case RUNNING:
+                frequency = 2.5 + random.nextDouble() * 0.7;
+                amplitude = 0.6 + random.nextDouble() * 0.4;
+                break;
+            case DRIVING:
+                frequency = 0.3 + random.nextDouble() * 0.5;
+                amplitude = 0.05 + random.nextDouble() * 0.1;
+                break;
+            case JOGGING:
+                frequency = 2.4 + random.nextDouble() * 0.6;
+                amplitude = 2.0 + random.nextDouble() * 1.2;
+                break;
+            case SHAKE:
+                frequency = 3.0 + random.nextDouble() * 1.0;
+                amplitude = 3.2 + random.nextDouble() * 1.3;
+                break;
+            default:
+                frequency = 0;
+                amplitude = 0;
+        }
+        double phase = random.nextDouble() * Math.PI * 2;
+        long freeFallSamples = 350_000_000L / periodNanos;
+
+        for (long i = 0; i < samples; i++) {
+            double t = i * periodNanos / 1e9;
+            double along = 0;
+            double across = 0;
+            double gravity = 1;
+            switch (activity) {
+                case WALKING:
+                case RUNNING:
+                    along = amplitude * (Math.sin(2 * Math.PI * frequency * t + phase)
+                            + 0.25 * Math.sin(4 * Math.PI * frequency * t));
+                    across = 0.3 * amplitude * Math.sin(Math.PI * frequency * t);
+                    break;
+                case DRIVING:
+                    along = amplitude * Math.sin(2 * Math.PI * frequency * t + phase)
+                            + (random.nextDouble() - 0.5) * 0.2;
+                    across = 0.15 * Math.sin(2 * Math.PI * 0.1 * t);
+                    break;
+                case DROP:
+                    if (i < freeFallSamples) {
+                        gravity = 0.05;
+                    } else if (i == freeFallSamples) {
+                        along = 3.5 + random.nextDouble() * 1.5;
+                    } else if (i == freeFallSamples + 3) {
+                        along = 0.5;
+                    }
+                    break;
+                case JOGGING:
+                    // ~40 ms impact at each step, a softer flight phase, and some body sway.
+                    double step = frequency * t + phase;
+                    double sinceStrike = (step - Math.floor(step)) / frequency;
+                    along = amplitude * Math.exp(-sinceStrike * sinceStrike / (2 * 0.02 * 0.02))
+                            - 0.4 * Math.sin(2 * Math.PI * frequency * t + phase);
+                    across = 0.3 * Math.sin(Math.PI * frequency * t);
+                    break;
+                case SHAKE:
+                    // Deliberate strokes: a half-sine pulse each half period, alternating direction.
+                    double cycle = frequency * t * 2;
+                    double within = cycle - Math.floor(cycle);
+                    double pulse = Math.sin(Math.PI * within);
+                    across = ((long) cycle % 2 == 0 ? 1 : -1) * amplitude * pulse * pulse * pulse;
+                    break;
+            }
+            float ax = (float) (up[0] * (gravity + along) + side[0] * across + random.nextGaussian() * noiseGravity);
+            float ay = (float) (up[1] * (gravity + along) + side[1] * across + random.nextGaussian() * noiseGravity);
+            float az = (float) (up[2] * (gravity + along) + side[2] * across + random.nextGaussian() * noiseGravity);
+            sink.onSample(nowNanos, ax * G, ay * G, az * G);
+            nowNanos += periodNanos;
+        }
+    }
+
+    private void pickOrientation() {
+        // Mostly upright or flat, but any direction is possible.
+        double theta = random.nextDouble() * Math.PI;
+        double phi = random.nextDouble() * Math.PI * 2;
+        up[0] = (float) (Math.sin(theta) * Math.cos(phi));
+        up[1] = (float) (Math.sin(theta) * Math.sin(phi));
+        up[2] = (float) Math.cos(theta);
+        // Any unit vector perpendicular to up.
+        float[] helper = Math.abs(up[2]) < 0.9F ? new float[]{0, 0, 1} : new float[]{1, 0, 0};
+        side[0] = up[1] * helper[2] - up[2] * helper[1];
+        side[1] = up[2] * helper[0] - up[0] * helper[2];
+        side[2] = up[0] * helper[1] - up[1] * helper[0];
+        float norm = (float) Math.sqrt(side[0] * side[0] + side[1] * side[1] + side[2] * side[2]);
+        for (int i = 0; i < 3; i++) side[i] /= norm;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.shaketosave;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Generates motion_model.bin: trains a small MLP on candidate windows from synthetic shakes and
+// hard-stepping jogs, then quantizes it to int8. Windows are collected at every rate the detector
+// runs at (AdaptiveSampler idles at 10 Hz, boosts to SENSOR_DELAY_GAME, devices deliver that at
+// 50-100 Hz), so the rate-dependent features are learned across rates instead of at one.
+// The file is published next to the upload endpoint, where DataFiles picks it up:
+//   java -cp <test classes> com.example.shaketosave.MotionModelTrainer motion_model.bin
+class MotionModelTrainer {
+
+    static final int[] RATES_HZ = {10, 25, 50, 100};
+    static final int TRAINING_SEEDS = 300;
+    private static final int HIDDEN = 12;
+    private static final long START_NANOS = 1_000_000_000L;
+
+    static class Window {
+        final float[] features;
+        final int label;
+        final int rateHz;
+
+        Window(float[] features, int label, int rateHz) {
+            this.features = features;
+            this.label = label;
+            this.rateHz = rateHz;
+        }
+    }
+
+    // Every shake candidate (count >= 2) the threshold detector raises, with the window's features.
+    static List<Window> collect(int fromSeed, int toSeed, int rateHz) {
+        List<Window> windows = new ArrayList<>();
+        for (int seed = fromSeed; seed < toSeed; seed++) {
+            for (int label = 0; label < 2; label++) {
+                VirtualClock clock = new VirtualClock(START_NANOS);
+                MotionClassifier extractor = new MotionClassifier();
+                ShakeDetector detector = new ShakeDetector();
+                detector.setClock(clock);
+                detector.setClassifier(extractor);
+                final int windowLabel = label;
+                detector.setOnShakeListener(count -> {
+                    if (count < SosDispatcher.MIN_SHAKE_COUNT) return;
+                    float[] features = new float[MotionClassifier.FEATURE_COUNT];
+                    if (extractor.extractFeatures(detector.getLastShakeSampleNanos(), features)) {
+                        windows.add(new Window(features, windowLabel, rateHz));
+                    }
+                });
+                MotionGenerator motion = new MotionGenerator(seed * 2L + label, rateHz, 0.03F, START_NANOS);
+                Random random = motion.getRandom();
+                MotionGenerator.Sink sink = (t, x, y, z) -> {
+                    clock.advanceTo(t);
+                    detector.onSample(t, x, y, z);
+                };
+                motion.generate(MotionGenerator.STILL, 2000 + random.nextInt(3000), sink);
+                if (label == MotionClassifier.CLASS_CONFIRM) {
+                    motion.generate(MotionGenerator.SHAKE, 1500 + random.nextInt(1500), sink);
+                } else {
+                    motion.generate(MotionGenerator.JOGGING, 10_000 + random.nextInt(10_000), sink);
+                }
+                motion.generate(MotionGenerator.STILL, 3000, sink);
+            }
+        }
+        return windows;
+    }
+
+    static List<Window> collectAllRates(int fromSeed, int toSeed) {
+        List<Window> windows = new ArrayList<>();
+        for (int rate : RATES_HZ) windows.addAll(collect(fromSeed, toSeed, rate));
+        return windows;
+    }
+
+    static void train(List<Window> data, File file) throws IOException {
+        int n = MotionClassifier.FEATURE_COUNT;
+
+        float[] means = new float[n];
+        float[] scales = new float[n];
+        for (Window w : data) for (int i = 0; i < n; i++) means[i] += w.features[i] / data.size();
+        for (Window w : data) {
+            for (int i = 0; i < n; i++) scales[i] += (w.features[i] - means[i]) * (w.features[i] - means[i]) / data.size();
+        }
+        for (int i = 0; i < n; i++) scales[i] = (float) Math.max(1e-3, Math.sqrt(scales[i]));
+
+        // Float training: 8 -> HIDDEN (ReLU) -> 2, softmax cross-entropy, plain SGD.
+        Random random = new Random(42);
+        float[][] w1 = new float[HIDDEN][n];
+        float[] b1 = new float[HIDDEN];
+        float[][] w2 = new float[2][HIDDEN];
+        float[] b2 = new float[2];
+        for (float[] row : w1) for (int i = 0; i < n; i++) row[i] = (float) (random.nextGaussian() * 0.4);
+        for (float[] row : w2) for (int i = 0; i < HIDDEN; i++) row[i] = (float) (random.nextGaussian() * 0.4);
+        int positives = 0;
+        for (Window w : data) positives += w.label;
+        float positiveWeight = (data.size() - positives) / (float) Math.max(1, positives);
+
+        float[] x = new float[n];
+        float[] h = new float[HIDDEN];
+        float[] dh = new float[HIDDEN];
+        for (int epoch = 0; epoch < 200; epoch++) {
+            float lr = 0.05F / (1 + epoch / 50F);
+            for (int k = 0; k < data.size(); k++) {
+                Window win = data.get(random.nextInt(data.size()));
+                for (int i = 0; i < n; i++) x[i] = (win.features[i] - means[i]) / scales[i];
+                for (int j = 0; j < HIDDEN; j++) {
+                    float a = b1[j];
+                    for (int i = 0; i < n; i++) a += w1[j][i] * x[i];
+                    h[j] = Math.max(0, a);
+                }
+                float z0 = b2[0], z1 = b2[1];
+                for (int j = 0; j < HIDDEN; j++) {
+                    z0 += w2[0][j] * h[j];
+                    z1 += w2[1][j] * h[j];
+                }
+                float p1 = (float) (1 / (1 + Math.exp(z0 - z1)));
+                float weight = win.label == 1 ? positiveWeight : 1;
+                float g1 = (p1 - win.label) * weight;
+                float[] g = {-g1, g1};
+                for (int j = 0; j < HIDDEN; j++) dh[j] = h[j] > 0 ? g[0] * w2[0][j] + g[1] * w2[1][j] : 0;
+                for (int c = 0; c < 2; c++) {
+                    for (int j = 0; j < HIDDEN; j++) w2[c][j] -= lr * g[c] * h[j];
+                    b2[c] -= lr * g[c];
+                }
+                for (int j = 0; j < HIDDEN; j++) {
+                    for (int i = 0; i < n; i++) w1[j][i] -= lr * dh[j] * x[i];
+                    b1[j] -= lr * dh[j];
+                }
+            }
+        }
+
+        // Quantize: inputs cover +-4 sigma, weights symmetric per layer, hidden scale from the
+        // largest activation seen on the training set.
+        float inputScale = 4F / 127;
+        float w1Scale = maxAbs(w1) / 127;
+        float hiddenMax = 1e-3F;
+        for (Window win : data) {
+            for (int j = 0; j < HIDDEN; j++) {
+                float a = b1[j];
+                for (int i = 0; i < n; i++) a += w1[j][i] * (win.features[i] - means[i]) / scales[i];
+                hiddenMax = Math.max(hiddenMax, a);
+            }
+        }
+        float hiddenScale = hiddenMax / 127;
+        float w2Scale = maxAbs(w2) / 127;
+        MotionClassifier.Layer[] layers = {
+                quantize(w1, b1, w1Scale, inputScale, hiddenScale),
+                quantize(w2, b2, w2Scale, hiddenScale, 1F)
+        };
+        MotionClassifier.write(file, means, scales, inputScale, layers);
+    }
+
+    private static float maxAbs(float[][] m) {
+        float max = 1e-6F;
+        for (float[] row : m) for (float v : row) max = Math.max(max, Math.abs(v));
+        return max;
+    }
+
+    private static MotionClassifier.Layer quantize(float[][] w, float[] b, float wScale, float xScale, float outScale) {
+        int out = w.length, in = w[0].length;
+        byte[] weights = new byte[out * in];
+        int[] bias = new int[out];
+        for (int o = 0; o < out; o++) {
+            for (int i = 0; i < in; i++) weights[o * in + i] = (byte) Math.round(w[o][i] / wScale);
+            bias[o] = Math.round(b[o] / (wScale * xScale));
+        }
+        return new MotionClassifier.Layer(in, out, wScale, outScale, weights, bias);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: MotionModelTrainer <output file>");
+            System.exit(2);
+        }
+        File file = new File(args[0]);
+        List<Window> data = collectAllRates(0, TRAINING_SEEDS);
+        train(data, file);
+        MotionClassifier.load(file);
+        System.out.println(data.size() + " training windows, wrote " + file + " (" + file.length() + " bytes)");
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.shaketosave;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PlaceIndexTest {
+
+    private static final int PLACES = 200_000;
+    private static final double BASE_LAT = 28.40;
+    private static final double BASE_LNG = 76.90;
+    private static final double SPAN = 0.5;
+
+    private final List<PlaceIndex.Place> places = new ArrayList<>();
+    private File file;
+    private PlaceIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < PLACES; i++) {
+            places.add(new PlaceIndex.Place(
+                    BASE_LAT + random.nextDouble() * SPAN,
+                    BASE_LNG + random.nextDouble() * SPAN,
+                    "Street " + i,
+                    "District " + (i % 300)));
+        }
+        file = File.createTempFile("places", ".idx");
+        PlaceIndex.write(places, file);
+        index = PlaceIndex.open(file);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void findsNearestPlace() {
+        Random random = new Random(7);
+        for (int q = 0; q < 500; q++) {
+            double lat = BASE_LAT + 0.01 + random.nextDouble() * (SPAN - 0.02);
+            double lng = BASE_LNG + 0.01 + random.nextDouble() * (SPAN - 0.02);
+            PlaceIndex.Place nearest = null;
+            double best = Double.MAX_VALUE;
+            for (PlaceIndex.Place place : places) {
+                double d = FollowUpPolicy.distanceMeters(lat, lng, place.latitude, place.longitude);
+                if (d < best) {
+                    best = d;
+                    nearest = place;
+                }
+            }
+            assertEquals("near " + nearest.street + ", " + nearest.district, index.describe(lat, lng));
+        }
+    }
+
+    @Test
+    public void returnsNullFarFromAnyPlace() {
+        assertNull(index.describe(0, 0));
+        assertNull(index.describe(BASE_LAT - 1, BASE_LNG));
+    }
+
+    @Test
+    public void omitsEmptyDistrict() throws IOException {
+        List<PlaceIndex.Place> single = new ArrayList<>();
+        single.add(new PlaceIndex.Place(51.5007, -0.1246, "Bridge St", ""));
+        File small = File.createTempFile("places", ".idx");
+        try {
+            PlaceIndex.write(single, small);
+            assertEquals("near Bridge St", PlaceIndex.open(small).describe(51.5010, -0.1250));
+        } finally {
+            small.delete();
+        }
+    }
+
+    // A valid header over damaged records must fail to open, not throw later from describe().
+    @Test
+    public void damagedRecordsFailToOpen() throws IOException {
+        List<PlaceIndex.Place> two = new ArrayList<>();
+        two.add(new PlaceIndex.Place(51.5007, -0.1246, "Bridge St", "Westminster"));
+        two.add(new PlaceIndex.Place(48.8584, 2.2945, "Av. Gustave Eiffel", "Paris"));
+        File small = File.createTempFile("places", ".idx");
+        try {
+            PlaceIndex.write(two, small);
+            byte[] good = Files.readAllBytes(small.toPath());
+            // Record layout: cell, lat, lng, street, district; the header is 16 bytes.
+            int[][] damage = {
+                    {16 + 12, 0x7FFFFFF0},     // street name offset past the end
+                    {16 + 20 + 16, -4},        // negative district name offset
+                    {16, Integer.MAX_VALUE},   // first cell above the second: unsorted
+                    {8, -1},                   // negative record count
+            };
+            for (int[] d : damage) {
+                ByteBuffer bytes = ByteBuffer.wrap(good.clone());
+                bytes.putInt(d[0], d[1]);
+                Files.write(small.toPath(), bytes.array());
+                try {
+                    PlaceIndex.open(small);
+                    fail("opened with " + d[1] + " at " + d[0]);
+                } catch (IOException expected) {
+                }
+            }
+            // A name whose length runs past the end of the file.
+            byte[] truncated = Arrays.copyOf(good, good.length - 3);
+            Files.write(small.toPath(), truncated);
+            try {
+                PlaceIndex.open(small);
+                fail("opened a truncated name table");
+            } catch (IOException expected) {
+            }
+        } finally {
+            small.delete();
+        }
+    }
+
+    @Test
+    public void everyQueryInsideTheCoveredAreaFindsAPlace() {
+        Random random = new Random(3);
+        for (int i = 0; i < 100_000; i++) {
+            assertNotNull(index.describe(BASE_LAT + random.nextDouble() * SPAN, BASE_LNG + random.nextDouble() * SPAN));
+        }
+    }
+
+    // At 69.6 N a longitude cell is ~420 m wide, so a street 480 m east can sit two cells away.
+    @Test
+    public void findsPlacesTwoCellsAwayAtHighLatitude() throws IOException {
+        double lat = 69.6496;
+        double cellWidth = 360.0 / (1 << 15);
+        double cellStart = Math.floor((18.9560 + 180.0) / cellWidth) * cellWidth - 180.0;
+        // Query near the east edge of its cell; the place is past the next cell entirely.
+        double queryLng = cellStart + cellWidth * 0.99;
+        double placeLng = queryLng + 480 / (111_195 * Math.cos(Math.toRadians(lat)));
+        assertEquals(PlaceIndex.cellOf(lat, queryLng), PlaceIndex.cellOf(lat, cellStart + cellWidth * 0.5));
+        assertTrue(placeLng > cellStart + 2 * cellWidth);
+        assertTrue(FollowUpPolicy.distanceMeters(lat, queryLng, lat, placeLng) < 500);
+
+        List<PlaceIndex.Place> single = new ArrayList<>();
+        single.add(new PlaceIndex.Place(lat, placeLng, "Storgata", "Tromsø"));
+        File small = File.createTempFile("places", ".idx");
+        try {
+            PlaceIndex.write(single, small);
+            assertEquals("near Storgata, Tromsø", PlaceIndex.open(small).describe(lat, queryLng));
+        } finally {
+            small.delete();
+        }
+        assertEquals(1, PlaceIndex.lngRing(Math.cos(Math.toRadians(28.4))));
+        assertEquals(2, PlaceIndex.lngRing(Math.cos(Math.toRadians(lat))));
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.shaketosave;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class PowerStatsTest {
+
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+    private static final long MINUTE_MS = 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file() throws IOException {
+        return new File(folder.newFolder(), "power_stats.bin");
+    }
+
+    private static String block(String summary, String header) {
+        int start = summary.indexOf(header);
+        assertTrue(summary, start >= 0);
+        int end = summary.indexOf("\ndetector=", start + 1);
+        return end < 0 ? summary.substring(start) : summary.substring(start, end);
+    }
+
+    // An hour spent mostly on balanced location with a short high-accuracy countdown: each mode keeps
+    // its own counters, instead of the whole hour landing on whichever mode was active last.
+    @Test
+    public void modeChangesSplitTheHour() throws IOException {
+        long hourStart = (System.currentTimeMillis() / HOUR_MS - 2) * HOUR_MS;
+        PowerStats stats = new PowerStats(file(), hourStart);
+        stats.setModes(PowerStats.MODE_DETECTOR_MAGNITUDE, PowerStats.MODE_LOCATION_BALANCED, hourStart);
+        stats.add(PowerStats.LOCATION_FIXES_BALANCED, 45);
+
+        stats.setModes(PowerStats.MODE_DETECTOR_MAGNITUDE, PowerStats.MODE_LOCATION_HIGH, hourStart + 45 * MINUTE_MS);
+        stats.add(PowerStats.LOCATION_FIXES_HIGH, 300);
+        stats.setModes(PowerStats.MODE_DETECTOR_MAGNITUDE, PowerStats.MODE_LOCATION_BALANCED, hourStart + 60 * MINUTE_MS - 1);
+        stats.checkpoint(hourStart + HOUR_MS + 1);
+
+        String summary = stats.formatSummary(24, hourStart + HOUR_MS + 1);
+        String balanced = block(summary, "detector=magnitude location=balanced");
+        String high = block(summary, "detector=magnitude location=high");
+        assertTrue(balanced, balanced.contains("hours=0.75"));
+        assertTrue(balanced, balanced.contains("fixBal        60/h"));
+        assertTrue(balanced, balanced.contains("fixHigh       0/h"));
+        assertTrue(high, high.contains("hours=0.25"));
+        assertTrue(high, high.contains("fixHigh       1200/h"));
+        assertTrue(high, high.contains("fixBal        0/h"));
+    }
+
+    @Test
+    public void hoursSurviveRestart() throws IOException {
+        File file = file();
+        long hourStart = (System.currentTimeMillis() / HOUR_MS - 3) * HOUR_MS;
+        PowerStats first = new PowerStats(file, hourStart);
+        first.setModes(PowerStats.MODE_DETECTOR_FUSED, PowerStats.MODE_LOCATION_BALANCED, hourStart);
+        for (int i = 0; i < 1000; i++) first.onSensorEvent(i * 20_000_000L);
+        first.checkpoint(hourStart + HOUR_MS);
+
+        PowerStats second = new PowerStats(file, hourStart + 2 * HOUR_MS);
+        String summary = second.formatSummary(24, hourStart + 2 * HOUR_MS);
+        String fused = block(summary, "detector=fused location=balanced");
+        assertTrue(fused, fused.contains("hours=1.00"));
+        assertTrue(fused, fused.contains("sensorEvents  1000/h"));
+        // The new process has not been running long enough in its own mode to report a rate.
+        assertFalse(summary, summary.contains("detector=magnitude"));
+    }
+
+    // A :detector restart halfway through an hour: the new process continues the hour's slots
+    // instead of overwriting them with its own half.
+    @Test
+    public void restartWithinHourKeepsCheckpointedCounters() throws IOException {
+        File file = file();
+        long hourStart = (System.currentTimeMillis() / HOUR_MS - 3) * HOUR_MS;
+        PowerStats first = new PowerStats(file, hourStart);
+        first.setModes(PowerStats.MODE_DETECTOR_MAGNITUDE, PowerStats.MODE_LOCATION_BALANCED, hourStart);
+        for (int i = 0; i < 600; i++) first.onSensorEvent((i + 1) * 100_000_000L);
+        first.increment(PowerStats.WAKE_LOCKS);
+        first.checkpoint(hourStart + 30 * MINUTE_MS);
+
+        PowerStats second = new PowerStats(file, hourStart + 30 * MINUTE_MS);
+        second.setModes(PowerStats.MODE_DETECTOR_MAGNITUDE, PowerStats.MODE_LOCATION_BALANCED, hourStart + 30 * MINUTE_MS);
+        for (int i = 0; i < 400; i++) second.onSensorEvent((i + 1) * 100_000_000L);
+        second.increment(PowerStats.WAKE_LOCKS);
+        second.checkpoint(hourStart + HOUR_MS);
+
+        PowerStats third = new PowerStats(file, hourStart + 2 * HOUR_MS);
+        String balanced = block(third.formatSummary(24, hourStart + 2 * HOUR_MS), "detector=magnitude location=balanced");
+        assertTrue(balanced, balanced.contains("hours=1.00"));
+        assertTrue(balanced, balanced.contains("sensorEvents  1000/h"));
+        assertTrue(balanced, balanced.contains("batches       1000/h"));
+        assertTrue(balanced, balanced.contains("wakeLocks     2/h"));
+    }
+
+    // Samples are counted without the lock and charged to the mode they arrived in.
+    @Test
+    public void sensorEventsFollowModeChanges() throws IOException {
+        long hourStart = (System.currentTimeMillis() / HOUR_MS - 2) * HOUR_MS;
+        PowerStats stats = new PowerStats(file(), hourStart);
+        stats.setModes(PowerStats.MODE_DETECTOR_MAGNITUDE, PowerStats.MODE_LOCATION_BALANCED, hourStart);
+        for (int i = 0; i < 300; i++) stats.onSensorEvent(i * 100_000_000L);
+        stats.setModes(PowerStats.MODE_DETECTOR_FUSED, PowerStats.MODE_LOCATION_BALANCED, hourStart + 30 * MINUTE_MS);
+        for (int i = 0; i < 900; i++) stats.onSensorEvent(i * 100_000_000L);
+        stats.checkpoint(hourStart + HOUR_MS);
+
+        String summary = stats.formatSummary(24, hourStart + HOUR_MS);
+        assertTrue(summary, block(summary, "detector=magnitude location=balanced").contains("sensorEvents  600/h"));
+        assertTrue(summary, block(summary, "detector=fused location=balanced").contains("sensorEvents  1800/h"));
+    }
+
+    @Test
+    public void countersAreConsistentAcrossThreads() throws Exception {
+        long now = System.currentTimeMillis();
+        PowerStats stats = new PowerStats(file(), now - 2 * HOUR_MS);
+        int threads = 4;
+        int perThread = 50_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) stats.increment(PowerStats.WAKE_LOCKS);
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        stats.checkpoint(now - HOUR_MS);
+
+        String summary = stats.formatSummary(24, now - HOUR_MS);
+        assertTrue(summary, summary.contains("wakeLocks     " + threads * perThread + "/h"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.shaketosave;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class SensorTimingTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void steadyStreamHasConstantLatencyAndNoJitter() {
+        SensorTiming timing = new SensorTiming(null, "test");
+        for (int i = 1; i <= 1000; i++) timing.onSample(i * 20 * MS, i * 20 * MS + 3 * MS);
+
+        LatencyHistogram latency = timing.getLatency(SensorTiming.MODE_IDLE);
+        assertEquals(1000, latency.getCount());
+        assertEquals(3000, latency.getPercentile(50), 3000 * 0.13);
+        assertEquals(0, timing.getJitter(SensorTiming.MODE_IDLE).getPercentile(99));
+    }
+
+    @Test
+    public void batchedDeliveryShowsInLatencyNotJitter() {
+        SensorTiming timing = new SensorTiming(null, "test");
+        timing.setMode(SensorTiming.MODE_BOOST);
+        // Ten 20 ms samples held in the FIFO, then delivered together.
+        for (int batch = 1; batch <= 100; batch++) {
+            long deliveredAt = batch * 200 * MS;
+            for (int i = 0; i < 10; i++) timing.onSample(deliveredAt - (10 - i) * 20 * MS, deliveredAt);
+        }
+
+        LatencyHistogram latency = timing.getLatency(SensorTiming.MODE_BOOST);
+        assertTrue(latency.getPercentile(95) >= 180_000);
+        assertTrue(latency.getPercentile(5) <= 25_000);
+        assertEquals(0, timing.getJitter(SensorTiming.MODE_BOOST).getMax());
+        assertEquals(0, timing.getLatency(SensorTiming.MODE_IDLE).getCount());
+    }
+
+    @Test
+    public void irregularSpacingShowsAsJitter() {
+        SensorTiming timing = new SensorTiming(null, "test");
+        long t = 0;
+        for (int i = 0; i < 1000; i++) {
+            t += (i % 2 == 0 ? 15 : 25) * MS;
+            timing.onSample(t, t + MS);
+        }
+        assertEquals(10_000, timing.getJitter(SensorTiming.MODE_IDLE).getPercentile(50), 10_000 * 0.13);
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        SensorTiming timing = new SensorTiming(null, "test");
+        for (int i = 1; i <= 100_000; i++) timing.onSample(i * 10 * MS, i * 10 * MS + (i % 7) * MS);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 1; i <= 1_000_000; i++) timing.onSample(i * 10 * MS, i * 10 * MS + (i % 7) * MS);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        // A few bytes of measurement noise, nowhere near one object per sample.
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
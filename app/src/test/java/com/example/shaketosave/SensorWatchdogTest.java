@@ -0,0 +1,109 @@
+package com.example.shaketosave;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SensorWatchdogTest {
+
+    private VirtualClock clock;
+    private SensorWatchdog watchdog;
+    private final List<String> actions = new ArrayList<>();
+    private final List<Long> actionTimes = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock(1_000_000_000L);
+        actions.clear();
+        actionTimes.clear();
+        watchdog = new SensorWatchdog(clock, new SensorWatchdog.Host() {
+            @Override
+            public void rearm() {
+                actions.add("rearm");
+                actionTimes.add(clock.uptimeMillis());
+            }
+
+            @Override
+            public void restart() {
+                actions.add("restart");
+                actionTimes.add(clock.uptimeMillis());
+            }
+
+            @Override
+            public void onStallChanged(boolean stalled) {
+                actions.add(stalled ? "stalled" : "recovered");
+            }
+        });
+        watchdog.start();
+    }
+
+    // Delivers a sample every periodMs for durationMs.
+    private void deliver(long durationMs, long periodMs) {
+        for (long t = 0; t < durationMs; t += periodMs) {
+            clock.advanceByMillis(periodMs);
+            watchdog.onSample();
+        }
+    }
+
+    @Test
+    public void steadyStreamNeverStalls() {
+        deliver(10 * 60 * 1000, 100);
+        assertTrue(actions.isEmpty());
+        assertEquals(0, watchdog.getStallCount());
+    }
+
+    @Test
+    public void stallIsRearmedAndGapRecorded() {
+        deliver(20_000, 100);
+        long lastSample = clock.uptimeMillis();
+        clock.advanceByMillis(12_000);
+        assertTrue(watchdog.isStalled());
+        assertEquals("stalled", actions.get(0));
+        assertEquals("rearm", actions.get(1));
+
+        deliver(1000, 100);
+        assertFalse(watchdog.isStalled());
+        assertEquals("recovered", actions.get(actions.size() - 1));
+        assertEquals(1, watchdog.getStallCount());
+        long gapMicros = (lastSample + 12_000 + 100 - lastSample) * 1000;
+        assertEquals(gapMicros, watchdog.getGaps().getMax());
+        assertEquals(1, watchdog.getGaps().getCount());
+    }
+
+    @Test
+    public void escalatesToRestartWithBoundedBackoff() {
+        deliver(1000, 100);
+        clock.advanceByMillis(60 * 60 * 1000);
+
+        assertEquals("rearm", actions.get(1));
+        assertEquals("rearm", actions.get(2));
+        assertEquals("restart", actions.get(3));
+        assertEquals("rearm", actions.get(4));
+        assertTrue(watchdog.getRestartCount() > 0);
+        for (int i = 1; i < actionTimes.size(); i++) {
+            long delay = actionTimes.get(i) - actionTimes.get(i - 1);
+            assertEquals(SensorWatchdog.getBackoffMs(i), delay);
+            assertTrue(delay <= SensorWatchdog.MAX_BACKOFF_MS);
+        }
+        // Backoff stays bounded: an hour of silence costs about a dozen attempts, not hundreds.
+        assertTrue(actionTimes.size() < 20);
+    }
+
+    @Test
+    public void openStallIsCountedOnStop() {
+        deliver(1000, 100);
+        clock.advanceByMillis(30_000);
+        watchdog.stop();
+        assertEquals(30_000 * 1000L, watchdog.getGaps().getMax());
+
+        SensorWatchdog restored = new SensorWatchdog(clock, null);
+        restored.decode(watchdog.encode());
+        assertEquals(watchdog.getStallCount(), restored.getStallCount());
+        assertEquals(watchdog.getRearmCount(), restored.getRearmCount());
+        assertEquals(1, restored.getGaps().getCount());
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.shaketosave;
+
+import android.content.SharedPreferences;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ShakeCalibratorTest {
+
+    private static final long MS = 1_000_000L;
+    private static final int N = (int) ShakeCalibrator.MIN_SAMPLES * 2;
+
+    private interface Distribution {
+        double next(Random random);
+    }
+
+    private static float threshold(Distribution distribution, double[] sorted) {
+        Random random = new Random(29);
+        MagnitudeStats stats = new MagnitudeStats();
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = distribution.next(random);
+            stats.add(sorted[i]);
+        }
+        Arrays.sort(sorted);
+        return ShakeCalibrator.computeThreshold(stats);
+    }
+
+    @Test
+    public void defaultUntilEnoughSamples() {
+        MagnitudeStats stats = new MagnitudeStats();
+        for (int i = 0; i < ShakeCalibrator.MIN_SAMPLES - 1; i++) stats.add(i % 2 == 0 ? 1.0 : 1.9);
+        assertEquals(ShakeCalibrator.DEFAULT_THRESHOLD_GRAVITY, ShakeCalibrator.computeThreshold(stats), 0);
+    }
+
+    // Rare hard handling peaks: the 99.9th percentile with 25% headroom decides.
+    @Test
+    public void tailDecidesForRarePeaks() {
+        double[] values = new double[N];
+        float threshold = threshold(r -> r.nextDouble() < 0.004 ? 1.6 + 0.6 * r.nextDouble() : 1 + 0.02 * r.nextGaussian(), values);
+        double exact = 1.25 * values[(int) (0.999 * N)];
+        assertEquals(exact, threshold, exact * 0.01);
+        assertTrue(threshold > 2.2F && threshold < 3.5F);
+    }
+
+    // Wide everyday motion without a separate tail: mean + 8 sigma is the larger bound.
+    @Test
+    public void spreadDecidesForWideMotion() {
+        double[] values = new double[N];
+        float threshold = threshold(r -> 1.1 + 0.17 * r.nextGaussian(), values);
+        double mean = Arrays.stream(values).average().orElse(0);
+        double sd = Math.sqrt(Arrays.stream(values).map(v -> (v - mean) * (v - mean)).sum() / (N - 1));
+        assertTrue(mean + 8 * sd > 1.25 * values[(int) (0.999 * N)]);
+        assertEquals(mean + 8 * sd, threshold, 0.01);
+    }
+
+    @Test
+    public void clampsToRange() {
+        double[] values = new double[N];
+        // A phone lying on a desk would otherwise trigger on a tap.
+        assertEquals(2.2F, threshold(r -> 1 + 0.01 * r.nextGaussian(), values), 0);
+        // A phone in a bouncing vehicle would otherwise never trigger.
+        assertEquals(3.5F, threshold(r -> r.nextDouble() < 0.01 ? 3 + r.nextDouble() : 1 + 0.05 * r.nextGaussian(), values), 0);
+    }
+
+    // Boost windows deliver five times the idle rate; on the fixed grid they count per second, not per event.
+    @Test
+    public void samplesOnFixedGridRegardlessOfRate() {
+        ShakeCalibrator calibrator = new ShakeCalibrator((SharedPreferences) null);
+        long t = 1000 * MS;
+        for (int i = 0; i < 1500; i++, t += 40 * MS) calibrator.addSample(t, 1F);
+        assertEquals(600, calibrator.getSampleCount());
+        for (int i = 0; i < 200; i++, t += 20 * MS) calibrator.addSample(t, 2F);
+        assertEquals(640, calibrator.getSampleCount());
+        assertEquals(40 / 640.0, calibrator.getStats().getMean() - 1, 1e-9);
+
+        // After a gap the grid restarts instead of accepting a burst to catch up.
+        t += 60_000 * MS;
+        for (int i = 0; i < 10; i++, t += 20 * MS) calibrator.addSample(t, 1F);
+        assertEquals(642, calibrator.getSampleCount());
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.shaketosave;
+
+import android.Manifest;
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorManager;
+import android.os.Binder;
+import android.os.IInterface;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.telephony.SmsManager;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowSensor;
+import org.robolectric.shadows.ShadowSensorManager;
+import org.robolectric.shadows.ShadowServiceManager;
+import org.robolectric.shadows.ShadowSmsManager;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+// Starts the real ShakeService under Robolectric, feeds accelerometer events through the shadow
+// SensorManager and lets the countdown run on the paused main looper until the SMS reaches the
+// shadow SmsManager. Allocation and virtual-time checks are exact; the wall-clock budgets only
+// catch order-of-magnitude regressions on the main-thread path and leave room for a slow machine.
+//
+// The service reaches several process-wide singletons (IncidentStore, IncidentUploader,
+// PowerStats, LatencyTracker, SensorTiming, AndroidClock's handler). Each test gets a fresh
+// Robolectric application, so they are reset before and after every test; otherwise the second
+// test would write through the first one's files and main looper. SosEventBus is process-wide
+// too: the service unsubscribes in onDestroy and the recorder here in tearDown.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 35)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ShakeServiceLatencyTest {
+
+    // Budgets are about five times the worst of eight harness runs (sample 7.7 us, trigger 10 ms,
+    // dispatch 48 ms), so a loaded machine does not fail them.
+    // Average main-thread time per accelerometer event while nothing is happening.
+    private static final long SAMPLE_BUDGET_NANOS = 40_000;
+    // Per event, including what Robolectric's own dispatch allocates.
+    private static final long SAMPLE_ALLOCATION_BUDGET_BYTES = 256;
+    // The sensor event that completes the shake, through detection and countdown start.
+    private static final long TRIGGER_BUDGET_NANOS = 50_000_000;
+    // The looper step in which the countdown finishes, the SOS is composed and handed to SmsManager.
+    private static final long DISPATCH_BUDGET_NANOS = 250_000_000;
+    // Virtual time: the SMS leaves exactly one countdown after the trigger, give or take a sample.
+    private static final long COUNTDOWN_SLACK_MS = 100;
+
+    private static final int RATE_HZ = 50;
+    private static final String PHONE = "+15550100";
+
+    private ShadowSensorManager shadowSensors;
+    private ShadowLooper mainLooper;
+    private ServiceController<ShakeService> controller;
+    private SensorEvent event;
+
+    private final SosEventBus.Subscriber recorder = (busEvent, arg, timeNanos) -> onBusEvent(busEvent);
+    private long triggeredAtMs;
+    private long dispatchedAtMs;
+    private boolean eventDuringStep;
+    private int triggers;
+    private int dispatches;
+
+    // Per delivered sample, main thread only.
+    private long sampleCount;
+    private long sampleNanos;
+    private long sampleBytes;
+    private long triggerStepNanos;
+    private long dispatchStepNanos;
+
+    private void onBusEvent(int busEvent) {
+        if (busEvent == SosEventBus.EVENT_TRIGGERED) {
+            triggers++;
+            triggeredAtMs = SystemClock.uptimeMillis();
+            eventDuringStep = true;
+        } else if (busEvent == SosEventBus.EVENT_DISPATCHED) {
+            dispatches++;
+            dispatchedAtMs = SystemClock.uptimeMillis();
+            eventDuringStep = true;
+        }
+    }
+
+    private static void resetSingletons() {
+        IncidentStore.resetForTest();
+        IncidentUploader.resetForTest();
+        PowerStats.resetForTest();
+        LatencyTracker.resetForTest();
+        SensorTiming.resetForTest();
+        AndroidClock.INSTANCE.resetForTest();
+    }
+
+    // SmsManager on SDK 35 refuses to send without the messaging feature, and before the shadow
+    // sees the message it asks the "isms" binder for the preferred subscription and IMS support.
+    // Robolectric registers no such service, so a stub answers: subscription 1, no IMS.
+    @SuppressWarnings("unchecked")
+    private static void installSmsService(Application app) throws ClassNotFoundException {
+        shadowOf(app.getPackageManager()).setSystemFeature(PackageManager.FEATURE_TELEPHONY_MESSAGING, true);
+        Class<? extends IInterface> isms = (Class<? extends IInterface>) Class.forName("com.android.internal.telephony.ISms");
+        Binder binder = new Binder();
+        IInterface stub = (IInterface) Proxy.newProxyInstance(isms.getClassLoader(), new Class<?>[]{isms}, (proxy, method, args) -> {
+            if (method.getName().equals("asBinder")) return binder;
+            Class<?> type = method.getReturnType();
+            if (type == int.class) return 1;
+            if (type == boolean.class) return false;
+            return null;
+        });
+        binder.attachInterface(stub, isms.getName());
+        ShadowServiceManager.addBinderService("isms", isms, stub);
+    }
+
+    @Before
+    public void setUp() throws ClassNotFoundException {
+        resetSingletons();
+        Application app = ApplicationProvider.getApplicationContext();
+        shadowOf(app).grantPermissions(Manifest.permission.SEND_SMS);
+        installSmsService(app);
+        app.getSharedPreferences("SafeShakePrefs", Context.MODE_PRIVATE).edit()
+                .putString("emergency_phone", PHONE)
+                .putString("user_name", "Test")
+                .commit();
+
+        shadowSensors = shadowOf(app.getSystemService(SensorManager.class));
+        shadowSensors.addSensor(ShadowSensor.newInstance(Sensor.TYPE_ACCELEROMETER));
+        event = ShadowSensorManager.createSensorEvent(3, Sensor.TYPE_ACCELEROMETER);
+
+        mainLooper = shadowOf(Looper.getMainLooper());
+        SosEventBus.get().subscribe(recorder);
+        controller = Robolectric.buildService(ShakeService.class).create().startCommand(0, 1);
+        mainLooper.idle();
+        assertFalse("ShakeService did not register for the accelerometer", shadowSensors.getListeners().isEmpty());
+    }
+
+    @After
+    public void tearDown() {
+        controller.destroy();
+        SosEventBus.get().unsubscribe(recorder);
+        resetSingletons();
+    }
+
+    // Delivers synthetic motion sample by sample, running the main looper up to each timestamp.
+    private void feed(int activity, long durationMs, long seed) {
+        List<Long> times = new ArrayList<>();
+        List<float[]> values = new ArrayList<>();
+        MotionGenerator motion = new MotionGenerator(seed, RATE_HZ, 0.03F, SystemClock.elapsedRealtimeNanos());
+        motion.generate(activity, durationMs, (t, x, y, z) -> {
+            times.add(t);
+            values.add(new float[]{x, y, z});
+        });
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < times.size(); i++) {
+            long t = times.get(i);
+            long wait = t - SystemClock.elapsedRealtimeNanos();
+            eventDuringStep = false;
+            long stepStart = System.nanoTime();
+            if (wait > 0) mainLooper.idleFor(Duration.ofNanos(wait));
+            if (eventDuringStep && dispatches > 0 && dispatchStepNanos == 0) {
+                dispatchStepNanos = System.nanoTime() - stepStart;
+            }
+
+            event.timestamp = t;
+            System.arraycopy(values.get(i), 0, event.values, 0, 3);
+            eventDuringStep = false;
+            long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+            long sendStart = System.nanoTime();
+            shadowSensors.sendSensorEventToListeners(event);
+            long sendNanos = System.nanoTime() - sendStart;
+            if (eventDuringStep) {
+                if (triggerStepNanos == 0) triggerStepNanos = sendNanos;
+            } else {
+                sampleNanos += sendNanos;
+                sampleBytes += threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+                sampleCount++;
+            }
+        }
+    }
+
+    private void resetCounters() {
+        sampleCount = 0;
+        sampleNanos = 0;
+        sampleBytes = 0;
+        triggerStepNanos = 0;
+        dispatchStepNanos = 0;
+        triggers = 0;
+        dispatches = 0;
+    }
+
+    @Test
+    public void idleSamplesStayWithinBudget() {
+        // Warm-up: class loading, JIT and first-use allocations are not what the budget is about.
+        feed(MotionGenerator.WALKING, 10_000, 1);
+        resetCounters();
+
+        feed(MotionGenerator.STILL, 20_000, 2);
+        feed(MotionGenerator.WALKING, 20_000, 3);
+
+        assertEquals(0, triggers);
+        long perSample = sampleNanos / sampleCount;
+        long bytesPerSample = sampleBytes / sampleCount;
+        assertTrue(perSample + " ns per sample", perSample < SAMPLE_BUDGET_NANOS);
+        assertTrue(bytesPerSample + " bytes per sample", bytesPerSample < SAMPLE_ALLOCATION_BUDGET_BYTES);
+    }
+
+    @Test
+    public void shakeSendsSmsOneCountdownLaterWithinBudget() {
+        ShadowSmsManager shadowSms = shadowOf(SmsManager.getDefault());
+
+        // First SOS warms up notifications, the incident store and SmsManager.
+        feed(MotionGenerator.STILL, 2_000, 10);
+        feed(MotionGenerator.SHAKE, 2_500, 11);
+        feed(MotionGenerator.STILL, (SosDispatcher.COUNTDOWN_SECONDS + 3) * 1000L, 12);
+        assertEquals(1, dispatches);
+        shadowSms.clearLastSentTextMessageParams();
+        feed(MotionGenerator.STILL, 10_000, 13);
+        resetCounters();
+
+        feed(MotionGenerator.SHAKE, 2_500, 20);
+        assertEquals(1, triggers);
+        feed(MotionGenerator.STILL, (SosDispatcher.COUNTDOWN_SECONDS + 3) * 1000L, 21);
+
+        assertEquals(1, dispatches);
+        ShadowSmsManager.TextSmsParams sms = shadowSms.getLastSentTextMessageParams();
+        assertNotNull("no SMS reached SmsManager", sms);
+        assertEquals(PHONE, sms.getDestinationAddress());
+        assertTrue(sms.getText(), sms.getText().startsWith("SOS ALERT! I'm Test"));
+
+        long countdownMs = dispatchedAtMs - triggeredAtMs;
+        assertEquals(SosDispatcher.COUNTDOWN_SECONDS * 1000L, countdownMs, COUNTDOWN_SLACK_MS);
+        assertTrue(triggerStepNanos + " ns to trigger", triggerStepNanos < TRIGGER_BUDGET_NANOS);
+        assertTrue(dispatchStepNanos + " ns to dispatch", dispatchStepNanos < DISPATCH_BUDGET_NANOS);
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.shaketosave;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class SosEmailTest {
+
+    private static final int ATTACHMENT_BYTES = 16 * 1024 * 1024;
+    // Far below the attachment itself, let alone its base64 form (~21 MB).
+    private static final long MAX_ALLOCATED_BYTES = 4 * 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SmtpStandIn server;
+    private File attachment;
+
+    // Just enough SMTP for javax.mail: counts the DATA bytes instead of keeping them.
+    private static class SmtpStandIn extends Thread {
+        final ServerSocket socket;
+        volatile long dataChars;
+        volatile int messages;
+        final List<String> attachmentNames = new CopyOnWriteArrayList<>();
+
+        SmtpStandIn() throws IOException {
+            socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!socket.isClosed()) {
+                try (Socket client = socket.accept()) {
+                    serve(client);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        private void serve(Socket client) throws IOException {
+            BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.ISO_8859_1));
+            Writer out = new OutputStreamWriter(client.getOutputStream(), StandardCharsets.ISO_8859_1);
+            reply(out, "220 localhost ESMTP");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                if (command.equals("DATA")) {
+                    reply(out, "354 go ahead");
+                    long chars = 0;
+                    while ((line = in.readLine()) != null && !line.equals(".")) {
+                        chars += line.length() + 2;
+                        int name = line.indexOf("filename=");
+                        if (name >= 0) attachmentNames.add(line.substring(name + "filename=".length()));
+                    }
+                    dataChars = chars;
+                    messages++;
+                    reply(out, "250 queued");
+                } else if (command.equals("QUIT")) {
+                    reply(out, "221 bye");
+                    return;
+                } else {
+                    reply(out, "250 OK");
+                }
+            }
+        }
+
+        private static void reply(Writer out, String line) throws IOException {
+            out.write(line);
+            out.write("\r\n");
+            out.flush();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new SmtpStandIn();
+        server.start();
+        attachment = folder.newFile("evidence.bin");
+        byte[] chunk = new byte[64 * 1024];
+        Random random = new Random(1);
+        try (OutputStream out = new FileOutputStream(attachment)) {
+            for (int written = 0; written < ATTACHMENT_BYTES; written += chunk.length) {
+                random.nextBytes(chunk);
+                out.write(chunk);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.socket.close();
+    }
+
+    private SosEmail newEmail() {
+        SosEmail email = new SosEmail("sender@example.com", "contact@example.com", "SOS ALERT", "I need help");
+        email.setServer("127.0.0.1", server.socket.getLocalPort(), false);
+        return email;
+    }
+
+    @Test
+    public void streamsLargeAttachmentWithoutBufferingIt() throws Exception {
+        // Warm up: class loading and mailcap parsing are one-time costs, not per-message.
+        newEmail().send();
+
+        SosEmail email = newEmail();
+        email.addAttachment(attachment, "application/octet-stream");
+        email.addAttachment(new File(attachment.getParentFile(), "missing-audio.m4a"), "audio/mp4");
+        assertEquals(1, email.getAttachmentCount());
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        email.send();
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(2, server.messages);
+        assertEquals(Collections.singletonList("evidence.bin"), server.attachmentNames);
+        assertTrue("only " + server.dataChars + " chars received", server.dataChars > ATTACHMENT_BYTES * 4L / 3);
+        assertTrue("allocated " + allocated + " bytes", allocated < MAX_ALLOCATED_BYTES);
+    }
+
+    @Test
+    public void plainMessageWithoutAttachments() throws Exception {
+        newEmail().send();
+        assertEquals(1, server.messages);
+        assertTrue(server.attachmentNames.isEmpty());
+    }
+
+    // What ShakeService sends after an SOS: the trail up to the alert and the incident history.
+    @Test
+    public void sendsTrailAndIncidentLog() throws Exception {
+        LocationTrail trail = new LocationTrail();
+        trail.add(1_700_000_000_000L, 52.52, 13.405, 8F);
+        File gpx = new File(folder.getRoot(), "trail-1700000000000.gpx");
+        assertTrue(trail.writeGpx(gpx, "SOS"));
+        File log = folder.newFile("incidents.csv");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(log), StandardCharsets.UTF_8)) {
+            out.write("started_at,source\n1700000000000,0\n");
+        }
+
+        SosEmail email = newEmail();
+        email.addAttachment(gpx, "application/gpx+xml");
+        email.addAttachment(log, "text/csv");
+        email.send();
+
+        assertEquals(1, server.messages);
+        assertEquals(Arrays.asList("trail-1700000000000.gpx", "incidents.csv"), server.attachmentNames);
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.shaketosave;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SosEventBusTest {
+
+    @Test
+    public void deliversInSubscriptionOrderUntilUnsubscribed() {
+        VirtualClock clock = new VirtualClock(5_000_000_000L);
+        SosEventBus bus = new SosEventBus(clock);
+        List<String> seen = new ArrayList<>();
+        SosEventBus.Subscriber a = (event, arg, t) -> seen.add("a" + event + ":" + arg + "@" + t);
+        SosEventBus.Subscriber b = (event, arg, t) -> seen.add("b" + event);
+        bus.subscribe(a);
+        bus.subscribe(b);
+        bus.subscribe(a);
+        assertEquals(2, bus.getSubscriberCount());
+
+        bus.publish(SosEventBus.EVENT_COUNTDOWN_TICK, 3);
+        bus.unsubscribe(a);
+        bus.publish(SosEventBus.EVENT_CANCEL, 0);
+        bus.unsubscribe(b);
+        bus.publish(SosEventBus.EVENT_SEND_NOW, 0);
+
+        assertEquals(List.of("a4:3@5000000000", "b4", "b2"), seen);
+        assertEquals(0, bus.getSubscriberCount());
+    }
+
+    @Test
+    public void concurrentSubscribersNeverLoseUpdates() throws Exception {
+        SosEventBus bus = new SosEventBus(new VirtualClock(0));
+        int threads = 8;
+        int perThread = 2_000;
+        AtomicInteger delivered = new AtomicInteger();
+        AtomicBoolean publishing = new AtomicBoolean(true);
+        Thread publisher = new Thread(() -> {
+            while (publishing.get()) bus.publish(SosEventBus.EVENT_COUNTDOWN_TICK, 1);
+        });
+        publisher.start();
+
+        CountDownLatch done = new CountDownLatch(threads);
+        List<SosEventBus.Subscriber> kept = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            SosEventBus.Subscriber keep = (event, arg, time) -> delivered.incrementAndGet();
+            kept.add(keep);
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    SosEventBus.Subscriber temporary = (event, arg, time) -> { };
+                    bus.subscribe(temporary);
+                    bus.unsubscribe(temporary);
+                }
+                bus.subscribe(keep);
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        publishing.set(false);
+        publisher.join();
+
+        assertEquals(threads, bus.getSubscriberCount());
+        delivered.set(0);
+        bus.publish(SosEventBus.EVENT_CANCEL, 0);
+        assertEquals(threads, delivered.get());
+        for (SosEventBus.Subscriber s : kept) bus.unsubscribe(s);
+        assertEquals(0, bus.getSubscriberCount());
+    }
+
+    @Test
+    public void publishDoesNotAllocate() {
+        SosEventBus bus = new SosEventBus(new VirtualClock(0));
+        long[] sum = new long[1];
+        for (int i = 0; i < 4; i++) bus.subscribe((event, arg, t) -> sum[0] += event + arg);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 100_000; i++) bus.publish(SosEventBus.EVENT_COUNTDOWN_TICK, i);
+            long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+            // The first round loads classes and warms up.
+            if (round > 0) assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+        }
+    }
+
+    // SEND NOW during a countdown, routed the way ShakeService does: bus -> dispatcher -> SMS, all
+    // inside the publish call, with no clock time passing.
+    @Test
+    public void sendNowReachesGatewayInsidePublish() {
+        VirtualClock clock = new VirtualClock(10_000_000_000L);
+        SosEventBus bus = new SosEventBus(clock);
+        int[] sent = new int[1];
+        long[] sentAtNanos = new long[1];
+        SosDispatcher dispatcher = new SosDispatcher(clock, (phone, message) -> {
+            sent[0]++;
+            sentAtNanos[0] = clock.elapsedRealtimeNanos();
+            return 1;
+        }, new SosDispatcher.Host() {
+            @Override
+            public void onTriggerAccepted(int source, long originNanos, long detectedNanos) {
+            }
+
+            @Override
+            public void onCountdownStarted() {
+            }
+
+            @Override
+            public void onCountdownTick(int secondsLeft) {
+                bus.publish(SosEventBus.EVENT_COUNTDOWN_TICK, secondsLeft);
+            }
+
+            @Override
+            public void onCountdownStopped(int ticks) {
+            }
+
+            @Override
+            public SosDispatcher.Outgoing composeSos() {
+                return new SosDispatcher.Outgoing("+15550100", "SOS");
+            }
+
+            @Override
+            public void onSent(SosDispatcher.Outgoing outgoing, int parts) {
+                bus.publish(SosEventBus.EVENT_DISPATCHED, parts);
+            }
+
+            @Override
+            public void onSendFailed(SosDispatcher.Outgoing outgoing, Exception error) {
+            }
+
+            @Override
+            public void onCancelled() {
+            }
+        });
+        int[] dispatched = new int[1];
+        bus.subscribe((event, arg, t) -> {
+            if (event == SosEventBus.EVENT_SEND_NOW) dispatcher.onTrigger(TriggerFusion.SOURCE_MANUAL, t, 0);
+            if (event == SosEventBus.EVENT_DISPATCHED) dispatched[0]++;
+        });
+
+        for (int round = 0; round < 200; round++) {
+            dispatcher.onTrigger(TriggerFusion.SOURCE_SHAKE, clock.elapsedRealtimeNanos(), 0);
+            assertTrue(dispatcher.isCountingDown());
+            clock.advanceByMillis(1500);
+            long publishedAtNanos = clock.elapsedRealtimeNanos();
+            bus.publish(SosEventBus.EVENT_SEND_NOW, 0);
+            assertEquals(round + 1, sent[0]);
+            assertEquals(publishedAtNanos, sentAtNanos[0]);
+            assertEquals(round + 1, dispatched[0]);
+            assertFalse(dispatcher.isCountingDown());
+            clock.advanceByMillis(60_000);
+        }
+        assertEquals(200, sent[0]);
+    }
+}
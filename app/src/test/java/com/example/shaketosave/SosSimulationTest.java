@@ -0,0 +1,201 @@
+package com.example.shaketosave;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+// Runs the real detector -> fusion -> countdown -> send path on a virtual clock, fed by synthetic
+// motion, so minutes of sensor data and every countdown finish in milliseconds.
+public class SosSimulationTest {
+
+    private static final int RATE_HZ = 50;
+    private static final long START_NANOS = 10_000_000_000L;
+
+    private VirtualClock clock;
+    private ShakeDetector detector;
+    private SosDispatcher dispatcher;
+    private final List<Long> sentAtMs = new ArrayList<>();
+    private long triggeredAtMs;
+    private int cancelled;
+    private int failures;
+    private boolean failGateway;
+    private boolean failCompose;
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock(START_NANOS);
+        sentAtMs.clear();
+        triggeredAtMs = -1;
+        cancelled = 0;
+        failures = 0;
+        failGateway = false;
+        failCompose = false;
+
+        SosDispatcher.SmsGateway gateway = (phone, message) -> {
+            if (failGateway) throw new IllegalStateException("radio off");
+            sentAtMs.add(clock.uptimeMillis());
+            return 1;
+        };
+        dispatcher = new SosDispatcher(clock, gateway, new SosDispatcher.Host() {
+            @Override
+            public void onTriggerAccepted(int source, long originNanos, long detectedNanos) {
+                triggeredAtMs = clock.uptimeMillis();
+            }
+
+            @Override
+            public void onCountdownStarted() {
+            }
+
+            @Override
+            public void onCountdownTick(int secondsLeft) {
+            }
+
+            @Override
+            public void onCountdownStopped(int ticks) {
+            }
+
+            @Override
+            public SosDispatcher.Outgoing composeSos() {
+                if (failCompose) throw new IllegalStateException("bad place index");
+                return new SosDispatcher.Outgoing("+15550100", "SOS");
+            }
+
+            @Override
+            public void onSent(SosDispatcher.Outgoing outgoing, int parts) {
+            }
+
+            @Override
+            public void onSendFailed(SosDispatcher.Outgoing outgoing, Exception error) {
+                failures++;
+            }
+
+            @Override
+            public void onCancelled() {
+                cancelled++;
+            }
+        });
+
+        detector = new ShakeDetector();
+        detector.setClock(clock);
+        detector.setOnShakeListener(count -> dispatcher.onShake(count,
+                detector.getLastShakeSampleNanos(), detector.getLastShakeFiredNanos()));
+    }
+
+    private final MotionGenerator.Sink sink = (timestampNanos, x, y, z) -> {
+        clock.advanceTo(timestampNanos);
+        detector.onSample(timestampNanos, x, y, z);
+    };
+
+    private MotionGenerator generator(long seed) {
+        return new MotionGenerator(seed, RATE_HZ, 0.03F, START_NANOS);
+    }
+
+    @Test
+    public void deliberateShakeSendsOnceAfterCountdown() {
+        MotionGenerator motion = generator(1);
+        motion.generate(MotionGenerator.STILL, 3000, sink);
+        motion.generate(MotionGenerator.SHAKE, 2000, sink);
+        motion.generate(MotionGenerator.STILL, 10_000, sink);
+
+        assertEquals(1, sentAtMs.size());
+        assertEquals(triggeredAtMs + SosDispatcher.COUNTDOWN_SECONDS * 1000L, (long) sentAtMs.get(0));
+        assertFalse(dispatcher.isCountingDown());
+    }
+
+    @Test
+    public void cancelDuringCountdownSendsNothing() {
+        MotionGenerator motion = generator(2);
+        motion.generate(MotionGenerator.SHAKE, 2000, sink);
+        assertTrue(dispatcher.isCountingDown());
+        dispatcher.cancel();
+        motion.generate(MotionGenerator.STILL, 10_000, sink);
+
+        assertTrue(sentAtMs.isEmpty());
+        assertEquals(1, cancelled);
+    }
+
+    @Test
+    public void sendNowSkipsRemainingCountdown() {
+        MotionGenerator motion = generator(3);
+        motion.generate(MotionGenerator.SHAKE, 2000, sink);
+        long now = clock.elapsedRealtimeNanos();
+        dispatcher.onTrigger(TriggerFusion.SOURCE_MANUAL, now, now);
+        motion.generate(MotionGenerator.STILL, 10_000, sink);
+
+        assertEquals(1, sentAtMs.size());
+        assertEquals(now / 1_000_000L, (long) sentAtMs.get(0));
+    }
+
+    @Test
+    public void failedSendDoesNotBlockNextAlert() {
+        failGateway = true;
+        MotionGenerator motion = generator(4);
+        motion.generate(MotionGenerator.SHAKE, 2000, sink);
+        motion.generate(MotionGenerator.STILL, 8000, sink);
+        assertEquals(1, failures);
+
+        failGateway = false;
+        motion.generate(MotionGenerator.SHAKE, 2000, sink);
+        motion.generate(MotionGenerator.STILL, 8000, sink);
+        assertEquals(1, sentAtMs.size());
+    }
+
+    // A composeSos that throws is reported like a failed send and does not leave the dispatcher
+    // stuck in "sending", which would drop every later trigger.
+    @Test
+    public void failedComposeDoesNotBlockNextAlert() {
+        failCompose = true;
+        MotionGenerator motion = generator(5);
+        motion.generate(MotionGenerator.SHAKE, 2000, sink);
+        motion.generate(MotionGenerator.STILL, 8000, sink);
+        assertEquals(1, failures);
+        assertFalse(dispatcher.isSending());
+
+        failCompose = false;
+        motion.generate(MotionGenerator.SHAKE, 2000, sink);
+        motion.generate(MotionGenerator.STILL, 8000, sink);
+        assertEquals(1, sentAtMs.size());
+    }
+
+    @Test
+    public void everydayMotionNeverTriggers() {
+        int[] activities = {MotionGenerator.WALKING, MotionGenerator.RUNNING, MotionGenerator.DRIVING, MotionGenerator.DROP};
+        for (int activity : activities) {
+            // Every generator starts at START_NANOS, so each activity needs its own clock and detector.
+            setUp();
+            MotionGenerator motion = generator(100 + activity);
+            for (int i = 0; i < 10; i++) motion.generate(activity, 30_000, sink);
+            assertTrue("activity " + activity + " sent an SOS", sentAtMs.isEmpty());
+            assertEquals(-1, triggeredAtMs);
+        }
+    }
+
+    @Test
+    public void randomScenariosMatchExpectation() {
+        int scenarios = 1000;
+        for (int seed = 0; seed < scenarios; seed++) {
+            setUp();
+            MotionGenerator motion = generator(seed);
+            Random random = motion.getRandom();
+            int segments = 3 + random.nextInt(4);
+            int shakeAt = random.nextBoolean() ? random.nextInt(segments) : -1;
+            for (int i = 0; i < segments; i++) {
+                // Everyday activities only; at most one deliberate shake, given time to send.
+                motion.generate(1 + random.nextInt(4), 5000 + random.nextInt(25_000), sink);
+                if (i == shakeAt) {
+                    motion.generate(MotionGenerator.SHAKE, 1500 + random.nextInt(1000), sink);
+                    motion.generate(MotionGenerator.STILL, 6000, sink);
+                }
+            }
+            assertEquals("seed " + seed, shakeAt >= 0 ? 1 : 0, sentAtMs.size());
+            if (shakeAt >= 0) {
+                assertEquals("seed " + seed, triggeredAtMs + SosDispatcher.COUNTDOWN_SECONDS * 1000L, (long) sentAtMs.get(0));
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.shaketosave;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TriggerFusionTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void singleWeakSignalStartsCountdown() {
+        TriggerFusion fusion = new TriggerFusion();
+        assertEquals(TriggerFusion.DECISION_COUNTDOWN, fusion.onSignal(TriggerFusion.SOURCE_SHAKE, SECOND, 1F));
+    }
+
+    @Test
+    public void repeatedSignalDoesNotRestartCountdown() {
+        TriggerFusion fusion = new TriggerFusion();
+        fusion.onSignal(TriggerFusion.SOURCE_SHAKE, SECOND, 1F);
+        assertEquals(TriggerFusion.DECISION_NONE, fusion.onSignal(TriggerFusion.SOURCE_SHAKE, 2 * SECOND, 1F));
+    }
+
+    @Test
+    public void shakePlusVoiceFiresImmediately() {
+        TriggerFusion fusion = new TriggerFusion();
+        assertEquals(TriggerFusion.DECISION_COUNTDOWN, fusion.onSignal(TriggerFusion.SOURCE_SHAKE, SECOND, 1F));
+        assertEquals(TriggerFusion.DECISION_IMMEDIATE, fusion.onSignal(TriggerFusion.SOURCE_VOICE, 4 * SECOND, 1F));
+    }
+
+    // One motion tripping several accelerometer detectors is not corroboration.
+    @Test
+    public void motionSourcesDoNotCorroborateEachOther() {
+        TriggerFusion fusion = new TriggerFusion();
+        assertEquals(TriggerFusion.DECISION_COUNTDOWN, fusion.onSignal(TriggerFusion.SOURCE_GESTURE, SECOND, 1F));
+        assertEquals(TriggerFusion.DECISION_NONE, fusion.onSignal(TriggerFusion.SOURCE_SHAKE, SECOND, 1F));
+        assertEquals(0.7F, fusion.getLastScore(), 1e-6);
+
+        fusion.reset();
+        assertEquals(TriggerFusion.DECISION_COUNTDOWN, fusion.onSignal(TriggerFusion.SOURCE_FALL, SECOND, 1F));
+        assertEquals(TriggerFusion.DECISION_NONE, fusion.onSignal(TriggerFusion.SOURCE_SHAKE, 2 * SECOND, 1F));
+        assertEquals(TriggerFusion.DECISION_NONE, fusion.onSignal(TriggerFusion.SOURCE_GESTURE, 3 * SECOND, 1F));
+        assertEquals(0.7F, fusion.getLastScore(), 1e-6);
+
+        // Voice is a separate modality and still escalates on top of the motion slot.
+        assertEquals(TriggerFusion.DECISION_IMMEDIATE, fusion.onSignal(TriggerFusion.SOURCE_VOICE, 4 * SECOND, 1F));
+    }
+
+    @Test
+    public void signalsOutsideWindowDoNotCombine() {
+        TriggerFusion fusion = new TriggerFusion();
+        fusion.setWindowMs(5000);
+        fusion.onSignal(TriggerFusion.SOURCE_SHAKE, SECOND, 1F);
+        assertEquals(TriggerFusion.DECISION_NONE, fusion.onSignal(TriggerFusion.SOURCE_VOICE, 10 * SECOND, 1F));
+        assertEquals(0.5F, fusion.getLastScore(), 1e-6);
+    }
+
+    @Test
+    public void manualSendIsImmediate() {
+        TriggerFusion fusion = new TriggerFusion();
+        assertEquals(TriggerFusion.DECISION_IMMEDIATE, fusion.onSignal(TriggerFusion.SOURCE_MANUAL, SECOND, 1F));
+    }
+
+    @Test
+    public void weightsAreConfigurable() {
+        TriggerFusion fusion = new TriggerFusion();
+        fusion.setWeight(TriggerFusion.SOURCE_VOICE, 0.2F);
+        assertEquals(TriggerFusion.DECISION_NONE, fusion.onSignal(TriggerFusion.SOURCE_VOICE, SECOND, 1F));
+        fusion.setWeight(TriggerFusion.SOURCE_FALL, 1.2F);
+        assertEquals(TriggerFusion.DECISION_IMMEDIATE, fusion.onSignal(TriggerFusion.SOURCE_FALL, 2 * SECOND, 1F));
+    }
+
+    @Test
+    public void resetStartsNextIncidentFromZero() {
+        TriggerFusion fusion = new TriggerFusion();
+        fusion.onSignal(TriggerFusion.SOURCE_SHAKE, SECOND, 1F);
+        fusion.reset();
+        assertEquals(TriggerFusion.DECISION_COUNTDOWN, fusion.onSignal(TriggerFusion.SOURCE_VOICE, 2 * SECOND, 1F));
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.shaketosave;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+
+// Deterministic Clock for tests: time only moves when the test advances it, and due tasks run on
+// the calling thread in (due time, post order). Tasks are pooled, so posting and running them does
+// not allocate and allocation tests can measure the code under test through it.
+class VirtualClock implements Clock {
+
+    private static class Task {
+        Runnable runnable;
+        long atMillis;
+        long sequence;
+    }
+
+    private final PriorityQueue<Task> queue = new PriorityQueue<>((a, b) -> a.atMillis != b.atMillis
+            ? Long.compare(a.atMillis, b.atMillis) : Long.compare(a.sequence, b.sequence));
+    private final ArrayDeque<Task> free = new ArrayDeque<>();
+    private long nowNanos;
+    private long sequence;
+
+    VirtualClock(long startNanos) {
+        nowNanos = startNanos;
+    }
+
+    @Override
+    public long elapsedRealtimeNanos() {
+        return nowNanos;
+    }
+
+    @Override
+    public long uptimeMillis() {
+        return nowNanos / 1_000_000L;
+    }
+
+    @Override
+    public void postAtTime(Runnable task, long uptimeMillis) {
+        Task t = free.isEmpty() ? new Task() : free.poll();
+        t.runnable = task;
+        t.atMillis = uptimeMillis;
+        t.sequence = sequence++;
+        queue.add(t);
+    }
+
+    @Override
+    public void removeCallbacks(Runnable task) {
+        queue.removeIf(t -> {
+            if (t.runnable != task) return false;
+            t.runnable = null;
+            free.add(t);
+            return true;
+        });
+    }
+
+    void advanceTo(long nanos) {
+        while (!queue.isEmpty() && queue.peek().atMillis * 1_000_000L <= nanos) {
+            Task task = queue.poll();
+            nowNanos = Math.max(nowNanos, task.atMillis * 1_000_000L);
+            Runnable runnable = task.runnable;
+            task.runnable = null;
+            free.add(task);
+            runnable.run();
+        }
+        nowNanos = Math.max(nowNanos, nanos);
+    }
+
+    // Time passes without running anything, as when the main thread is blocked.
+    void stallForMillis(long millis) {
+        nowNanos += millis * 1_000_000L;
+    }
+
+    void advanceByMillis(long millis) {
+        advanceTo(nowNanos + millis * 1_000_000L);
+    }
+}